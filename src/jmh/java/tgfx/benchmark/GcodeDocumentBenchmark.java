@@ -0,0 +1,79 @@
+/*
+ * Copyright (C) 2014 Synthetos LLC. All Rights reserved.
+ * http://www.synthetos.com
+ */
+package tgfx.benchmark;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import tgfx.ui.gcode.EncodedGcode;
+import tgfx.ui.gcode.GcodeDocument;
+import tgfx.ui.gcode.GcodePreprocessor;
+
+/**
+ * The <code>GcodeDocumentBenchmark</code> class times what happens to a
+ * G-code file before its lines go out: indexing it when it is opened, which
+ * also checks every byte for the ones TinyG takes as commands, and encoding
+ * its lines on the GcodePreprocessor's pool.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class GcodeDocumentBenchmark {
+
+    private static final String LINE = "G1 X10.1234 Y-3.4567 Z0.0 F1200\n";
+    @Param({"10000", "100000"})
+    public int lines;
+    private File file;
+    private GcodeDocument document;
+
+    @Setup
+    public void setup() throws IOException {
+        file = File.createTempFile("tgfx-benchmark", ".gcode");
+        byte[] line = LINE.getBytes(StandardCharsets.US_ASCII);
+        try (FileOutputStream out = new FileOutputStream(file)) {
+            for (int i = 0; i < lines; i++) {
+                out.write(line);
+            }
+        }
+        document = GcodeDocument.open(file);
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        document.close();
+        file.delete();
+    }
+
+    @Benchmark
+    public int index() throws IOException {
+        try (GcodeDocument doc = GcodeDocument.open(file)) {
+            return doc.getLineCount();
+        }
+    }
+
+    @Benchmark
+    public int encode() {
+        List<EncodedGcode> chunks = GcodePreprocessor.getInstance().encode(document, 0, document.getLineCount());
+        return chunks.size();
+    }
+}
@@ -0,0 +1,59 @@
+/*
+ * Copyright (C) 2014 Synthetos LLC. All Rights reserved.
+ * http://www.synthetos.com
+ */
+package tgfx.benchmark;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import tgfx.tinyg.TinygCommand;
+import tgfx.ui.gcode.GcodeLine;
+
+/**
+ * The <code>GcodeLineBenchmark</code> class times turning a line of G-code
+ * into {"gc":"..."} as a String or as an encoded TinygCommand, from the text
+ * or from a payload the GcodePreprocessor encoded ahead. Loading and
+ * encoding whole files is in {@link GcodeDocumentBenchmark}.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class GcodeLineBenchmark {
+
+    private static final String LINE = "N1234 G1 X10.1234 Y-3.4567 Z0.0";
+    private final GcodeLine gcodeLine = new GcodeLine(LINE, 1234);
+    private final byte[] encoded = ("{\"gc\":\"" + LINE + "\"}\n").getBytes(StandardCharsets.US_ASCII);
+
+    @Benchmark
+    public String gcodeLineJsonified() {
+        return gcodeLine.getGcodeLineJsonified();
+    }
+
+    @Benchmark
+    public int tinygCommandGcode() {
+        TinygCommand cmd = TinygCommand.gcode(LINE);
+        int length = cmd.length();
+        cmd.release();
+        return length;
+    }
+
+    @Benchmark
+    public int tinygCommandEncoded() {
+        TinygCommand cmd = TinygCommand.gcode(encoded, 0, encoded.length);
+        int length = cmd.length();
+        cmd.release();
+        return length;
+    }
+}
@@ -0,0 +1,71 @@
+/*
+ * Copyright (C) 2014 Synthetos LLC. All Rights reserved.
+ * http://www.synthetos.com
+ */
+package tgfx.benchmark;
+
+import java.nio.charset.Charset;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import tgfx.SerialLineFramer;
+
+/**
+ * The <code>LineFramingBenchmark</code> class times the SerialDriver's line
+ * framing on a stream of responses, status reports and queue reports, read
+ * in chunks the size a serial event hands us.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class LineFramingBenchmark {
+
+    @Param({"16", "64", "512"})
+    public int chunk;
+    private final SerialLineFramer framer = new SerialLineFramer();
+    private byte[] stream;
+    private Blackhole blackhole;
+    private final SerialLineFramer.LineHandler handler = new SerialLineFramer.LineHandler() {
+        @Override
+        public void line(byte[] buf, int offset, int length) {
+            blackhole.consume(length);
+        }
+    };
+
+    @Setup
+    public void setup() {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < 16; i++) {
+            sb.append(ResponseParsingBenchmark.RESPONSE).append('\n');
+            sb.append(ResponseParsingBenchmark.QUEUE_REPORT).append('\n');
+            if (i % 4 == 0) {
+                sb.append(ResponseParsingBenchmark.STATUS_REPORT).append('\n');
+            }
+        }
+        stream = sb.toString().getBytes(Charset.forName("US-ASCII"));
+    }
+
+    /**
+     * Frames the whole stream, one op is about 1.5KB and 36 lines.
+     */
+    @Benchmark
+    public void frame(Blackhole bh) {
+        blackhole = bh;
+        for (int offset = 0; offset < stream.length; offset += chunk) {
+            framer.append(stream, offset, Math.min(chunk, stream.length - offset), handler);
+        }
+    }
+}
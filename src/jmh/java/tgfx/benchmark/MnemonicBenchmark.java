@@ -0,0 +1,62 @@
+/*
+ * Copyright (C) 2014 Synthetos LLC. All Rights reserved.
+ * http://www.synthetos.com
+ */
+package tgfx.benchmark;
+
+import java.nio.charset.Charset;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import tgfx.tinyg.MnemonicManager;
+import tgfx.tinyg.responseCommand;
+
+/**
+ * The <code>MnemonicBenchmark</code> class times the MnemonicManager lookups
+ * the parser does for every key of every line: by bytes in place, by String,
+ * and the older lookupSingleGroup on a setting.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class MnemonicBenchmark {
+
+    private final MnemonicManager mnemonicManager = new MnemonicManager();
+    private byte[] posx;
+
+    @Setup
+    public void setup() {
+        posx = "posx".getBytes(Charset.forName("US-ASCII"));
+    }
+
+    @Benchmark
+    public int mnemonicIdBytes() {
+        return MnemonicManager.mnemonicId(posx, 0, posx.length);
+    }
+
+    @Benchmark
+    public int mnemonicIdString() {
+        return MnemonicManager.mnemonicId("posx");
+    }
+
+    @Benchmark
+    public boolean isStatusMnemonic() {
+        return MnemonicManager.isStatusMnemonic(MnemonicManager.mnemonicId(posx, 0, posx.length));
+    }
+
+    @Benchmark
+    public responseCommand lookupSingleGroup() {
+        return mnemonicManager.lookupSingleGroup("xvm");
+    }
+}
@@ -0,0 +1,86 @@
+/*
+ * Copyright (C) 2014 Synthetos LLC. All Rights reserved.
+ * http://www.synthetos.com
+ */
+package tgfx.benchmark;
+
+import java.nio.charset.Charset;
+import java.util.concurrent.TimeUnit;
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import tgfx.ResponseParser;
+
+/**
+ * The <code>ResponseParsingBenchmark</code> class times parsing the three
+ * lines TinyG sends most while a file streams: status reports, responses
+ * with a footer and queue reports. ResponseParser.parseJSON is what tgFX
+ * runs on them today, new JSONObject(line) is what it used to run.
+ * <p>
+ * The parser updates the TinygDriver's models, so run it from the project
+ * directory where the hardwarePlatforms folder is.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class ResponseParsingBenchmark {
+
+    static final String STATUS_REPORT = "{\"sr\":{\"line\":1234,\"posx\":10.123,\"posy\":-3.456,\"posz\":0.000,\"vel\":800.000,\"stat\":5}}";
+    static final String RESPONSE = "{\"r\":{\"gc\":\"N1234 G1 X10.123 Y-3.456 Z0.0\"},\"f\":[1,0,40,8512]}";
+    static final String QUEUE_REPORT = "{\"qr\":24}";
+    private final ResponseParser parser = new ResponseParser();
+    private byte[] statusReport;
+    private byte[] response;
+    private byte[] queueReport;
+
+    @Setup
+    public void setup() {
+        Charset ascii = Charset.forName("US-ASCII");
+        statusReport = STATUS_REPORT.getBytes(ascii);
+        response = RESPONSE.getBytes(ascii);
+        queueReport = QUEUE_REPORT.getBytes(ascii);
+        //Nothing subscribes to the event bus here, events go nowhere
+    }
+
+    @Benchmark
+    public void parseStatusReport() throws JSONException {
+        parser.parseJSON(statusReport, 0, statusReport.length);
+    }
+
+    @Benchmark
+    public void parseResponse() throws JSONException {
+        parser.parseJSON(response, 0, response.length);
+    }
+
+    @Benchmark
+    public void parseQueueReport() throws JSONException {
+        parser.parseJSON(queueReport, 0, queueReport.length);
+    }
+
+    @Benchmark
+    public JSONObject jsonObjectStatusReport() throws JSONException {
+        return new JSONObject(STATUS_REPORT);
+    }
+
+    @Benchmark
+    public JSONObject jsonObjectResponse() throws JSONException {
+        return new JSONObject(RESPONSE);
+    }
+
+    @Benchmark
+    public JSONObject jsonObjectQueueReport() throws JSONException {
+        return new JSONObject(QUEUE_REPORT);
+    }
+}
@@ -0,0 +1,371 @@
+/*
+ * Copyright (C) 2014 Synthetos LLC. All Rights reserved.
+ * http://www.synthetos.com
+ */
+package tgfx;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+import org.apache.log4j.Logger;
+
+/**
+ * The <code>CreditFlowController</code> class keeps tgFX from overrunning
+ * TinyG's serial RX buffer.
+ * <p>
+ * The controller owns a window of bytes that may be in TinyG's RX buffer at
+ * once. Every line we send takes its length out of the window and is
+ * remembered, oldest first. Every response footer acknowledges the oldest
+ * line still in flight and gives its bytes back. The footer's rx_recvd count
+ * is checked against the length we recorded, and a disagreement is counted
+ * but never leaks credit.
+ * <p>
+ * A writer that does not fit parks in {@link #acquire(int)} until a footer
+ * frees enough of the window, until the writer is released from a hold, or
+ * until {@link #reset()} throws away everything in flight.
+ * <p>
+ * Each line in flight also carries when it was queued and when it was sent,
+ * so its latencies are recorded in {@link #getLatency()} when its footer
+ * comes back. A line counts as sent once the SerialOutput has written its
+ * last byte, see {@link #written(int)}, not when it got its credit.
+ *
+ * @see SerialWriter
+ * @see ResponseFooterScanner
+ */
+public class CreditFlowController {
+
+    private static final Logger logger = Logger.getLogger(CreditFlowController.class);
+    //A safety net, writers are unparked as soon as credit comes back
+    private static final long PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(10);
+    private final int windowSize;
+    private final AtomicInteger available;
+    private volatile Thread waitingWriter;
+    private volatile boolean held = false;
+    private volatile int generation = 0;
+    //Lengths of the lines in flight, oldest first, and when they were
+    //queued and sent. Guarded by this.
+    private int[] inFlight = new int[64];
+    private long[] inFlightQueued = new long[64];
+    private long[] inFlightSent = new long[64];
+    private int inFlightHead = 0;
+    private int inFlightCount = 0;
+    private int inFlightBytes = 0;
+    //The newest lines in flight that the SerialOutput has not written yet
+    private int inFlightUnwritten = 0;
+    //Metrics
+    private volatile long linesSent = 0;
+    private volatile long bytesSent = 0;
+    private volatile long linesAcked = 0;
+    private volatile long rxMismatches = 0;
+    private volatile long unmatchedFooters = 0;
+    private volatile long writerWaits = 0;
+    private volatile long writerWaitNanos = 0;
+    private volatile int maxOccupancy = 0;
+    private final StreamLatency latency = new StreamLatency();
+
+    public CreditFlowController(int windowSize) {
+        this.windowSize = windowSize;
+        this.available = new AtomicInteger(windowSize);
+    }
+
+    /**
+     * Takes length bytes out of the window for a line that is about to be
+     * written, waiting for footers to return credit if it does not fit. A line
+     * longer than the whole window waits for an empty window.
+     *
+     * @return false if reset() was called while we waited, the line must not
+     * be sent
+     */
+    public boolean acquire(int length) throws InterruptedException {
+        return acquire(length, 0);
+    }
+
+    /**
+     * @param enqueuedNanos when the line was queued, for its latency, 0 if
+     * we do not know
+     * @see #acquire(int)
+     */
+    public boolean acquire(int length, long enqueuedNanos) throws InterruptedException {
+        int need = Math.min(length, windowSize);
+        int gen = generation;
+        long waitStart = 0;
+        try {
+            while (true) {
+                if (gen != generation) {
+                    return false;
+                }
+                if (!held) {
+                    int avail = available.get();
+                    if (avail >= need) {
+                        if (available.compareAndSet(avail, avail - length)) {
+                            record(length, enqueuedNanos);
+                            return true;
+                        }
+                        continue;
+                    }
+                }
+                if (waitStart == 0) {
+                    waitStart = System.nanoTime();
+                    writerWaits++;
+                }
+                waitingWriter = Thread.currentThread();
+                if ((held || available.get() < need) && gen == generation) {
+                    LockSupport.parkNanos(this, PARK_NANOS);
+                }
+                waitingWriter = null;
+                if (Thread.interrupted()) {
+                    throw new InterruptedException();
+                }
+            }
+        } finally {
+            if (waitStart != 0) {
+                writerWaitNanos += System.nanoTime() - waitStart;
+            }
+        }
+    }
+
+    /**
+     * Takes length bytes out of the window only if they fit right now and the
+     * writer is not held.
+     *
+     * @return false if the line does not fit, nothing was taken
+     */
+    public boolean tryAcquire(int length) {
+        return tryAcquire(length, 0);
+    }
+
+    /**
+     * @param enqueuedNanos when the line was queued, for its latency, 0 if
+     * we do not know
+     * @see #tryAcquire(int)
+     */
+    public boolean tryAcquire(int length, long enqueuedNanos) {
+        int need = Math.min(length, windowSize);
+        while (!held) {
+            int avail = available.get();
+            if (avail < need) {
+                return false;
+            }
+            if (available.compareAndSet(avail, avail - length)) {
+                record(length, enqueuedNanos);
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Records a line that was written without waiting for the window, like a
+     * priority query. It still gets a footer so it has to be in flight. It was
+     * never in the writer queue, so it only counts in flight.
+     */
+    public void sent(int length) {
+        available.addAndGet(-length);
+        record(length, 0);
+    }
+
+    private synchronized void record(int length, long enqueuedNanos) {
+        if (inFlightCount == inFlight.length) {
+            int[] bigger = new int[inFlight.length * 2];
+            long[] biggerQueued = new long[bigger.length];
+            long[] biggerSent = new long[bigger.length];
+            for (int i = 0; i < inFlightCount; i++) {
+                int j = (inFlightHead + i) % inFlight.length;
+                bigger[i] = inFlight[j];
+                biggerQueued[i] = inFlightQueued[j];
+                biggerSent[i] = inFlightSent[j];
+            }
+            inFlight = bigger;
+            inFlightQueued = biggerQueued;
+            inFlightSent = biggerSent;
+            inFlightHead = 0;
+        }
+        int slot = (inFlightHead + inFlightCount) % inFlight.length;
+        inFlight[slot] = length;
+        inFlightQueued[slot] = enqueuedNanos;
+        //Until written() stamps it, in case the SerialOutput never tells us
+        inFlightSent[slot] = System.nanoTime();
+        inFlightCount++;
+        inFlightUnwritten++;
+        inFlightBytes += length;
+        linesSent++;
+        bytesSent += length;
+        if (inFlightBytes > maxOccupancy) {
+            maxOccupancy = inFlightBytes;
+        }
+    }
+
+    /**
+     * Stamps lines as sent, called by the SerialOutput right after it wrote
+     * their last byte to the port.
+     *
+     * @param lines how many lines just went out, they are the oldest in
+     * flight that were not written yet
+     */
+    public synchronized void written(int lines) {
+        long now = System.nanoTime();
+        for (int n = Math.min(lines, inFlightUnwritten); n > 0; n--) {
+            int slot = (inFlightHead + inFlightCount - inFlightUnwritten) % inFlight.length;
+            inFlightSent[slot] = now;
+            inFlightUnwritten--;
+        }
+    }
+
+    /**
+     * Acknowledges the oldest line in flight with the rx_recvd count of its
+     * footer and gives its bytes back to the window.
+     *
+     * @return the bytes available in the window afterwards
+     */
+    public int credit(int rxRecvd) {
+        int length;
+        long queuedNanos;
+        long sentNanos;
+        synchronized (this) {
+            if (inFlightCount == 0) {
+                //A footer for something we did not send, or one from before a reset
+                unmatchedFooters++;
+                return available.get();
+            }
+            length = inFlight[inFlightHead];
+            queuedNanos = inFlightQueued[inFlightHead];
+            sentNanos = inFlightSent[inFlightHead];
+            if (inFlightUnwritten == inFlightCount) {
+                inFlightUnwritten--;
+            }
+            inFlightHead = (inFlightHead + 1) % inFlight.length;
+            inFlightCount--;
+            inFlightBytes -= length;
+            linesAcked++;
+        }
+        latency.record(queuedNanos, sentNanos, System.nanoTime());
+        if (length != rxRecvd) {
+            rxMismatches++;
+            logger.debug("Footer rx_recvd " + rxRecvd + " does not match the " + length + " bytes we sent");
+        }
+        int after = available.addAndGet(length);
+        wake();
+        return after;
+    }
+
+    /**
+     * Forgets everything in flight and opens the whole window. A writer
+     * waiting in acquire() gives up on its line.
+     */
+    public void reset() {
+        synchronized (this) {
+            generation++;
+            inFlightHead = 0;
+            inFlightCount = 0;
+            inFlightBytes = 0;
+            inFlightUnwritten = 0;
+            available.set(windowSize);
+        }
+        wake();
+    }
+
+    /**
+     * TinyG told us how much of its RX buffer is free ({"rx":n}). This is
+     * only trusted while nothing is in flight, otherwise our own count is
+     * more current.
+     */
+    public synchronized void resync(int rxAvailable) {
+        if (inFlightCount == 0) {
+            available.set(Math.min(rxAvailable, windowSize));
+            wake();
+        }
+    }
+
+    /**
+     * Holds the writer back even if the window has room, used while priority
+     * queries go out.
+     *
+     * @return false if the hold was already in that state
+     */
+    public boolean setHeld(boolean held) {
+        if (this.held == held) {
+            return false;
+        }
+        this.held = held;
+        if (!held) {
+            wake();
+        }
+        return true;
+    }
+
+    public boolean isHeld() {
+        return held;
+    }
+
+    /**
+     * @return true while a writer waits in acquire() for credit or a hold
+     */
+    public boolean isWriterWaiting() {
+        return waitingWriter != null;
+    }
+
+    public void wake() {
+        Thread writer = waitingWriter;
+        if (writer != null) {
+            LockSupport.unpark(writer);
+        }
+    }
+
+    /**
+     * @return the latency histograms of the lines acked so far
+     */
+    public StreamLatency getLatency() {
+        return latency;
+    }
+
+    public int getWindowSize() {
+        return windowSize;
+    }
+
+    public int getAvailable() {
+        return available.get();
+    }
+
+    /**
+     * @return the bytes sent but not acknowledged yet
+     */
+    public synchronized int getOccupancy() {
+        return inFlightBytes;
+    }
+
+    public synchronized int getLinesInFlight() {
+        return inFlightCount;
+    }
+
+    public int getMaxOccupancy() {
+        return maxOccupancy;
+    }
+
+    public long getLinesSent() {
+        return linesSent;
+    }
+
+    public long getBytesSent() {
+        return bytesSent;
+    }
+
+    public long getLinesAcked() {
+        return linesAcked;
+    }
+
+    public long getRxMismatches() {
+        return rxMismatches;
+    }
+
+    public long getUnmatchedFooters() {
+        return unmatchedFooters;
+    }
+
+    public long getWriterWaits() {
+        return writerWaits;
+    }
+
+    public long getWriterWaitNanos() {
+        return writerWaitNanos;
+    }
+}
@@ -0,0 +1,30 @@
+/*
+ * Copyright (C) 2014 Synthetos LLC. All Rights reserved.
+ * http://www.synthetos.com
+ */
+package tgfx;
+
+import tgfx.tinyg.TinygCommand;
+
+/**
+ * The <code>JobSource</code> interface is a job the SerialWriter pulls lines
+ * from as it has room for them, instead of the whole job going into the
+ * writer queue up front.
+ *
+ * @see SerialWriter#startJob(JobSource)
+ */
+public interface JobSource {
+
+    /**
+     * Only called on the writer thread.
+     *
+     * @return the next command, {@link TinygCommand#FILE_DONE} after the last
+     * line and null from then on, or once the job is cancelled
+     */
+    TinygCommand next();
+
+    /**
+     * Stops the job, next() returns null from now on. Safe from any thread.
+     */
+    void cancel();
+}
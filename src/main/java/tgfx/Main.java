@@ -8,9 +8,9 @@ package tgfx;
 import java.io.IOException;
 import java.net.URL;
 import java.util.Arrays;
-import java.util.Observable;
-import java.util.Observer;
+import java.util.EnumSet;
 import java.util.ResourceBundle;
+import java.util.Set;
 import javafx.application.Platform;
 import javafx.event.ActionEvent;
 import javafx.fxml.FXML;
@@ -52,10 +52,17 @@ import jssc.SerialPortException;
 import org.json.JSONException;
 
 import tgfx.tinyg.TinygDriver;
-import tgfx.system.StatusCode;
+import tgfx.event.EventBus;
+import tgfx.event.EventType;
+import tgfx.event.TinygEvent;
+import tgfx.event.TinygEventListener;
+import tgfx.metrics.PipelineMetrics;
 import tgfx.tinyg.CommandManager;
 import tgfx.render.CNCMachine;
 import tgfx.render.Draw2d;
+import tgfx.system.Axis;
+import tgfx.system.Motor;
+import tgfx.ui.FrameScheduler;
 import tgfx.ui.gcode.GcodeHistory;
 import tgfx.ui.gcode.GcodeTabController;
 import tgfx.ui.machinesettings.MachineSettingsController;
@@ -74,9 +81,17 @@ import tgfx.utility.QueuedTimerable;
  * @see TgFX
  * @author riley
  */
-public class Main extends Stage implements Initializable, Observer, QueuedTimerable<String> {
+public class Main extends Stage implements Initializable, TinygEventListener, QueuedTimerable<String> {
 
     private int oldRspLine = 0;
+    //These events only mark a part of the GUI dirty, the next frame repaints it
+    private static final Set<EventType> FRAME_EVENTS = EnumSet.of(EventType.STATUS_REPORT,
+            EventType.BUFFER_UPDATE, EventType.MACHINE_UPDATE, EventType.AXIS_SETTINGS, EventType.MOTOR_SETTINGS);
+    private final FrameScheduler frames = new FrameScheduler();
+    private int previewRegion;
+    private int bufferRegion;
+    private int machineSettingsRegion;
+    private volatile String bufferAvailable = "";
     private String CONNECTION_TIMEOUT = "{\"tgfx\": \"TinyG Connection Timeout\"}";
     int CONNECTION_TIMEOUT_VALUE = 10000;  //This is the amount of time in milliseconds that will go until we say the connection has timed out.
     public static String OS = System.getProperty("os.name").toLowerCase();
@@ -213,6 +228,8 @@ public class Main extends Stage implements Initializable, Observer, QueuedTimera
                         Thread.sleep(delayValue);
                         tg.write(CommandManager.CMD_APPLY_FLOWCONTROL);
                         Thread.sleep(delayValue);
+                        tg.write(CommandManager.CMD_APPLY_QUEUE_REPORTS);
+                        Thread.sleep(delayValue);
                         tg.write(CommandManager.CMD_APPLY_STATUS_REPORT_FORMAT);
                         Thread.sleep(600); //Setting the status report takes some time!  Just leave this alone.  This is a hardware limit..
                         //writing to the eeprom (so many values) is troublesome :)  Like geese.. (this one is for alden)
@@ -423,86 +440,48 @@ public class Main extends Stage implements Initializable, Observer, QueuedTimera
     }
 
     @Override
-    public synchronized void update(Observable o, Object arg) {
-        //We process status code messages here first.
-        if (arg.getClass().getCanonicalName().equals("tgfx.system.StatusCode")) {
-            //We got an error condition.. lets route it to where it goes!
-            StatusCode statuscode = (StatusCode) arg;
-            postConsoleMessage("[->] TinyG Response: " + statuscode.getStatusType() + ":" + statuscode.getMessage() + "\n");
-        } else {
-            try {
-                final String[] UPDATE_MESSAGE = (String[]) arg;
-                final String ROUTING_KEY = UPDATE_MESSAGE[0];
-                final String KEY_ARGUMENT = UPDATE_MESSAGE[1];
-
-                /**
-                 * This is our update routing switch From here we update
-                 * different parts of the GUI that is not bound to properties.
-                 */
-                switch (ROUTING_KEY) {
-                    case ("STATUS_REPORT"):
-                        doStatusReport();
-                        break;
-                    case ("CMD_GET_AXIS_SETTINGS"):
-                        TinyGConfigController.updateGuiAxisSettings(KEY_ARGUMENT);
-                        break;
-                    case ("CMD_GET_MACHINE_SETTINGS"):
-                        //updateGuiMachineSettings(ROUTING_KEY);
-                        break;
-                    case ("CMD_GET_MOTOR_SETTINGS"):
-                        TinyGConfigController.updateGuiMotorSettings(KEY_ARGUMENT);
-                        break;
-                    case ("NETWORK_MESSAGE"):
-                        //updateExternal();
-                        break;
-                    case ("MACHINE_UPDATE"):
-                        MachineSettingsController.updateGuiMachineSettings();
-
-                        break;
-                    case ("TEXTMODE_REPORT"):
-                        postConsoleMessage(KEY_ARGUMENT);
-                        break;
-                    case ("BUFFER_UPDATE"):
-                        srBuffer.setText(KEY_ARGUMENT);
-                        break;
-                    case ("UPDATE_LINE_NUMBER"):
-                        srGcodeLine.setText(KEY_ARGUMENT);
-                        break;
-                    case ("BUILD_OK"):
-                        doBuildOK();
-                        break;
-
-                    case ("TINYG_USER_MESSAGE"):
-                        doTinyGUserMessage(KEY_ARGUMENT);
-                        break;
-
-                    case ("TINYG_CONNECTION_TIMEOUT"):  //This fires if your tinyg is not responding to tgFX in a timely manner.
-                        doTinyGConnectionTimeout();
-                        break;
-
-                    case ("BUILD_ERROR"):
-                        doBuildError(KEY_ARGUMENT);
-                        break;
-
-                    //These 2 messages are sent when the firmware updater has begun updating or finished updating.
-                    case ("DISCONNECT"):
-                        onDisconnectActions();
-                        break;
-                    case ("RECONNECT"):
-                        handleConnect(new ActionEvent());
-                        break;
-
-                    default:
-                        logger.error("[!]Invalid Routing Key: " + ROUTING_KEY);
-                }
-            } catch (IOException | JSONException ex) {
-                java.util.logging.Logger.getLogger(Main.class.getName()).log(java.util.logging.Level.SEVERE, null, ex);
-
-            } catch (SerialPortException ex) {
-                java.util.logging.Logger.getLogger(Main.class.getName()).log(Level.SEVERE, null, ex);
-            } catch (Exception ex) {
-                java.util.logging.Logger.getLogger(Main.class.getName()).log(Level.SEVERE, null, ex);
+    public void onEvent(TinygEvent event) {
+        //Runs on the FX thread, we subscribed with EventBus.FX_THREAD
+        try {
+            /**
+             * This is our update routing switch From here we update
+             * different parts of the GUI that is not bound to properties.
+             */
+            switch (event.getType()) {
+                case TEXTMODE_REPORT:
+                    postConsoleMessage(event.getArgument());
+                    break;
+                case BUILD_OK:
+                    doBuildOK();
+                    break;
+                case TINYG_USER_MESSAGE:
+                    doTinyGUserMessage(event.getArgument());
+                    break;
+                case TINYG_CONNECTION_TIMEOUT:  //This fires if your tinyg is not responding to tgFX in a timely manner.
+                    doTinyGConnectionTimeout();
+                    break;
+                case BUILD_ERROR:
+                    doBuildError(event.getArgument());
+                    break;
+
+                //These 2 messages are sent when the firmware updater has begun updating or finished updating.
+                case DISCONNECT:
+                    onDisconnectActions();
+                    break;
+                case RECONNECT:
+                    handleConnect(new ActionEvent());
+                    break;
+
+                default:
+                    logger.error("[!]Unhandled event: " + event);
             }
+        } catch (IOException | JSONException ex) {
+            java.util.logging.Logger.getLogger(Main.class.getName()).log(java.util.logging.Level.SEVERE, null, ex);
+
+        } catch (SerialPortException ex) {
+            java.util.logging.Logger.getLogger(Main.class.getName()).log(Level.SEVERE, null, ex);
+        } catch (Exception ex) {
+            java.util.logging.Logger.getLogger(Main.class.getName()).log(Level.SEVERE, null, ex);
         }
     }
 
@@ -607,6 +586,8 @@ public class Main extends Stage implements Initializable, Observer, QueuedTimera
     }
 
     private void doStatusReport() {
+        //The parser only publishes snapshots, the FX properties follow them here
+        TinygDriver.getInstance().machine.applySnapshot();
         tgfx.ui.gcode.GcodeTabController.drawCanvasUpdate();
         int rspLine = TinygDriver.getInstance().machine.getLineNumber();
 
@@ -623,6 +604,97 @@ public class Main extends Stage implements Initializable, Observer, QueuedTimera
         }
     }
 
+    /**
+     * Marks the part of the GUI an event is about dirty. Runs on the thread
+     * that published the event, nothing goes to the FX event queue.
+     */
+    private final TinygEventListener frameMarker = new TinygEventListener() {
+        @Override
+        public void onEvent(TinygEvent event) {
+            switch (event.getType()) {
+                case STATUS_REPORT:
+                    frames.markDirty(previewRegion);
+                    break;
+                case BUFFER_UPDATE:
+                    bufferAvailable = event.getArgument();
+                    frames.markDirty(bufferRegion);
+                    break;
+                case MACHINE_UPDATE:
+                    frames.markDirty(machineSettingsRegion);
+                    break;
+                case AXIS_SETTINGS:
+                    if (event.getArgument() != null) {
+                        frames.markDirty(axisRegionName(event.getArgument()));
+                    } else {
+                        for (Axis ax : TinygDriver.getInstance().machine.getAllAxis()) {
+                            frames.markDirty(axisRegionName(ax.getAxis_name()));
+                        }
+                    }
+                    break;
+                case MOTOR_SETTINGS:
+                    if (event.getArgument() != null) {
+                        frames.markDirty(motorRegionName(event.getArgument()));
+                    } else {
+                        for (Motor m : TinygDriver.getInstance().machine.getMotors()) {
+                            frames.markDirty(motorRegionName(String.valueOf(m.getId_number())));
+                        }
+                    }
+                    break;
+            }
+        }
+    };
+
+    private static String axisRegionName(String axis) {
+        return "axis " + axis.toUpperCase();
+    }
+
+    private static String motorRegionName(String motor) {
+        return "motor " + motor;
+    }
+
+    /**
+     * Registers the parts of the GUI that are repainted once a frame, the
+     * preview, the buffer gauge, the machine settings and every axis and
+     * motor tab.
+     */
+    private void registerFrameRegions() {
+        previewRegion = frames.register("preview", new Runnable() {
+            @Override
+            public void run() {
+                doStatusReport();
+            }
+        });
+        bufferRegion = frames.register("buffer", new Runnable() {
+            @Override
+            public void run() {
+                srBuffer.setText(bufferAvailable);
+            }
+        });
+        machineSettingsRegion = frames.register("machine settings", new Runnable() {
+            @Override
+            public void run() {
+                MachineSettingsController.updateGuiMachineSettings();
+            }
+        });
+        for (final Axis ax : tg.machine.getAllAxis()) {
+            frames.register(axisRegionName(ax.getAxis_name()), new Runnable() {
+                @Override
+                public void run() {
+                    TinyGConfigController._updateGuiAxisSettings(ax);
+                }
+            });
+        }
+        for (Motor m : tg.machine.getMotors()) {
+            final String motor = String.valueOf(m.getId_number());
+            frames.register(motorRegionName(motor), new Runnable() {
+                @Override
+                public void run() {
+                    TinyGConfigController._updateGuiMotorSettings(motor);
+                }
+            });
+        }
+    }
+
     private void doBuildError(String KEY_VALUE) {
         //This is the code to manage the build error window and checking system.
         logger.error("Your TinyG firmware is too old.  System is exiting.");
@@ -698,7 +770,8 @@ public class Main extends Stage implements Initializable, Observer, QueuedTimera
     }
 
     public static void print(String msg) {
-        if (TgfxSettingsController.settingDebugBtn.isSelected()) {
+        //The debug button is not there when we run without a UI
+        if (TgfxSettingsController.settingDebugBtn != null && TgfxSettingsController.settingDebugBtn.isSelected()) {
             System.out.println(msg);
         }
 
@@ -711,8 +784,10 @@ public class Main extends Stage implements Initializable, Observer, QueuedTimera
         /*####################################
          *MISC INIT CODE 
          #################################### */
-        tg.resParse.addObserver(this);  //Add the tinygdriver to this observer
-        tg.addObserver(this);
+        registerFrameRegions();
+        EventBus.getInstance().subscribe(this, EventBus.FX_THREAD, EnumSet.complementOf(EnumSet.copyOf(FRAME_EVENTS)));
+        EventBus.getInstance().subscribe(frameMarker, EventBus.DIRECT, FRAME_EVENTS);
+        frames.start();
         this.reScanSerial();            //Populate our serial ports
         final Logger logger = Logger.getLogger(Main.class);
         final Logger resParserLogger = Logger.getLogger(ResponseParser.class);
@@ -744,6 +819,7 @@ public class Main extends Stage implements Initializable, Observer, QueuedTimera
         threadResponseParser.setName(
                 "ResponseParser");
         threadResponseParser.start();
+        PipelineMetrics.start(tg);
 
 
         /*######################################
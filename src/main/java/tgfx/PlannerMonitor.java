@@ -0,0 +1,339 @@
+/*
+ * Copyright (C) 2014 Synthetos LLC. All Rights reserved.
+ * http://www.synthetos.com
+ */
+package tgfx;
+
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The <code>PlannerMonitor</code> class follows the occupancy of TinyG's
+ * motion planner through the queue reports, to show whether the machine or
+ * tgFX sets the pace of a job.
+ * <p>
+ * Every report is kept in a ring of the last few thousand samples, and
+ * while a job runs the time spent at each occupancy goes into a histogram.
+ * Once the planner has been filled, every stretch with no more than
+ * {@link #setStarvedThreshold starved threshold} buffers in use is a
+ * starvation. Each report during a starvation is put down to what the
+ * host was doing at the time, see {@link Cause}.
+ *
+ * @see SerialWriter#queueReport(int)
+ */
+public class PlannerMonitor {
+
+    public enum Cause {
+
+        //Nothing left to send, the file sender is behind
+        HOST_QUEUE_EMPTY("host queue empty"),
+        //A line is waiting for RX buffer credit, the planner gate or a hold
+        FLOW_CONTROL("flow control"),
+        //Lines are still being written to the port
+        SERIAL_BUSY("serial busy"),
+        //Lines are queued and may go, but the port is idle
+        SERIAL_IDLE("serial idle");
+        private final String name;
+
+        private Cause(String name) {
+            this.name = name;
+        }
+
+        @Override
+        public String toString() {
+            return name;
+        }
+    }
+    public static final int DEFAULT_CAPACITY = 4096;
+    private static final char[] BARS = {' ', '\u2581', '\u2582', '\u2583', '\u2584', '\u2585', '\u2586', '\u2587', '\u2588'};
+    private final int depth;
+    //Ring of the last samples, guarded by this
+    private final long[] sampleNanos;
+    private final int[] sampleOccupancy;
+    private int sampleHead = 0;
+    private int sampleCount = 0;
+    //The job, guarded by this
+    private final long[] occupancyNanos;
+    private final long[] causeNanos = new long[Cause.values().length];
+    private final long[] causeEpisodes = new long[Cause.values().length];
+    private boolean jobActive = false;
+    private boolean primed = false;
+    private boolean starving = false;
+    private long jobNanos = 0;
+    private long lastNanos = 0;
+    private int lastOccupancy = -1;
+    private Cause lastCause;
+    private long episodeStartNanos = 0;
+    private long longestEpisodeNanos = 0;
+    private volatile int starvedThreshold = 2;
+    private volatile int occupancy = 0;
+    private volatile long starvations = 0;
+    private volatile long starvedNanos = 0;
+
+    public PlannerMonitor() {
+        this(PlannerStreamer.PLANNER_BUFFERS, DEFAULT_CAPACITY);
+    }
+
+    /**
+     * @param depth the planner buffers TinyG has
+     * @param capacity the samples the ring keeps
+     */
+    public PlannerMonitor(int depth, int capacity) {
+        this.depth = depth;
+        this.sampleNanos = new long[capacity];
+        this.sampleOccupancy = new int[capacity];
+        this.occupancyNanos = new long[depth + 1];
+    }
+
+    /**
+     * Called for every queue report.
+     *
+     * @param pba the free planner buffers
+     * @param cause what the host is doing right now
+     */
+    public void queueReport(int pba, Cause cause) {
+        sample(pba, cause, System.nanoTime());
+    }
+
+    synchronized void sample(int pba, Cause cause, long now) {
+        int used = Math.max(0, Math.min(depth, depth - pba));
+        occupancy = used;
+        sampleNanos[sampleHead] = now;
+        sampleOccupancy[sampleHead] = used;
+        sampleHead = (sampleHead + 1) % sampleNanos.length;
+        if (sampleCount < sampleNanos.length) {
+            sampleCount++;
+        }
+        if (!jobActive) {
+            return;
+        }
+        account(now);
+        if (used > starvedThreshold) {
+            primed = true;
+        }
+        boolean starved = primed && used <= starvedThreshold;
+        if (starved && !starving) {
+            starvations++;
+            causeEpisodes[cause.ordinal()]++;
+            episodeStartNanos = now;
+        } else if (!starved && starving) {
+            endEpisode(now);
+        }
+        starving = starved;
+        lastOccupancy = used;
+        lastCause = cause;
+    }
+
+    /**
+     * Books the time since the last sample to the occupancy and, if we were
+     * starving, to its cause.
+     */
+    private void account(long now) {
+        //A report timed just before startJob() or endJob() took the lock
+        now = Math.max(now, lastNanos);
+        if (lastOccupancy >= 0) {
+            long elapsed = now - lastNanos;
+            occupancyNanos[lastOccupancy] += elapsed;
+            jobNanos += elapsed;
+            if (starving) {
+                causeNanos[lastCause.ordinal()] += elapsed;
+                starvedNanos += elapsed;
+            }
+        }
+        lastNanos = now;
+    }
+
+    private void endEpisode(long now) {
+        longestEpisodeNanos = Math.max(longestEpisodeNanos, now - episodeStartNanos);
+    }
+
+    /**
+     * Forgets the last job and starts following a new one. The planner
+     * starts out empty, starvations only count once it was filled.
+     */
+    public synchronized void startJob() {
+        long now = System.nanoTime();
+        for (int i = 0; i < occupancyNanos.length; i++) {
+            occupancyNanos[i] = 0;
+        }
+        for (int i = 0; i < causeNanos.length; i++) {
+            causeNanos[i] = 0;
+            causeEpisodes[i] = 0;
+        }
+        jobActive = true;
+        primed = false;
+        starving = false;
+        jobNanos = 0;
+        lastNanos = now;
+        lastOccupancy = occupancy;
+        lastCause = Cause.HOST_QUEUE_EMPTY;
+        longestEpisodeNanos = 0;
+        starvations = 0;
+        starvedNanos = 0;
+    }
+
+    /**
+     * Stops following the job, what was recorded stays until the next
+     * {@link #startJob()}.
+     */
+    public synchronized void endJob() {
+        if (!jobActive) {
+            return;
+        }
+        long now = System.nanoTime();
+        account(now);
+        if (starving) {
+            endEpisode(now);
+        }
+        jobActive = false;
+        starving = false;
+    }
+
+    public synchronized boolean isJobActive() {
+        return jobActive;
+    }
+
+    public int getDepth() {
+        return depth;
+    }
+
+    public int getStarvedThreshold() {
+        return starvedThreshold;
+    }
+
+    /**
+     * @param starvedThreshold the planner counts as starved with this many
+     * buffers or less in use
+     */
+    public void setStarvedThreshold(int starvedThreshold) {
+        this.starvedThreshold = starvedThreshold;
+    }
+
+    /**
+     * @return the planner buffers in use at the last report
+     */
+    public int getOccupancy() {
+        return occupancy;
+    }
+
+    public long getStarvations() {
+        return starvations;
+    }
+
+    public long getStarvedNanos() {
+        return starvedNanos;
+    }
+
+    /**
+     * Copies the newest samples in the ring, oldest first.
+     *
+     * @return the number of samples copied, at most the length of the arrays
+     */
+    public synchronized int copySamples(long[] nanos, int[] occupancies) {
+        int n = Math.min(sampleCount, Math.min(nanos.length, occupancies.length));
+        int start = sampleHead - n;
+        if (start < 0) {
+            start += sampleNanos.length;
+        }
+        for (int i = 0; i < n; i++) {
+            int j = (start + i) % sampleNanos.length;
+            nanos[i] = sampleNanos[j];
+            occupancies[i] = sampleOccupancy[j];
+        }
+        return n;
+    }
+
+    /**
+     * @return nanoseconds of the job spent at each occupancy, 0 to depth
+     */
+    public synchronized long[] getOccupancyNanos() {
+        return occupancyNanos.clone();
+    }
+
+    public synchronized long getCauseNanos(Cause cause) {
+        return causeNanos[cause.ordinal()];
+    }
+
+    public synchronized long getCauseEpisodes(Cause cause) {
+        return causeEpisodes[cause.ordinal()];
+    }
+
+    /**
+     * @return the occupancy histogram of the job as a row of bars, empty
+     * planner on the left and full on the right
+     */
+    public synchronized String sparkline() {
+        long max = 0;
+        for (long nanos : occupancyNanos) {
+            max = Math.max(max, nanos);
+        }
+        StringBuilder sb = new StringBuilder(occupancyNanos.length);
+        for (long nanos : occupancyNanos) {
+            int bar = max == 0 ? 0 : (int) ((nanos * (BARS.length - 1) + max - 1) / max);
+            sb.append(BARS[bar]);
+        }
+        return sb.toString();
+    }
+
+    /**
+     * @return the starvations of the job by cause and how full the planner
+     * was, a few lines for the console
+     */
+    public synchronized String report() {
+        long total = jobNanos;
+        if (jobActive) {
+            total += System.nanoTime() - lastNanos;
+        }
+        StringBuilder sb = new StringBuilder();
+        sb.append(starvations).append(" starvations, ").append(seconds(starvedNanos))
+                .append(" starved of ").append(seconds(total))
+                .append(" (").append(percent(starvedNanos, total)).append("), longest ")
+                .append(seconds(longestEpisodeNanos)).append('\n');
+        for (Cause cause : Cause.values()) {
+            int i = cause.ordinal();
+            if (causeEpisodes[i] != 0 || causeNanos[i] != 0) {
+                sb.append("  ").append(cause).append(": ").append(causeEpisodes[i])
+                        .append(" starvations, ").append(seconds(causeNanos[i])).append('\n');
+            }
+        }
+        long weighted = 0;
+        long measured = 0;
+        for (int i = 0; i < occupancyNanos.length; i++) {
+            weighted += i * occupancyNanos[i];
+            measured += occupancyNanos[i];
+        }
+        sb.append("occupancy: mean ")
+                .append(String.format(Locale.US, "%.1f", measured == 0 ? 0.0 : weighted / (double) measured))
+                .append(" of ").append(depth).append(", ");
+        //Quarters of the planner, the last one includes full
+        int quarter = (depth + 3) / 4;
+        for (int q = 0; q * quarter <= depth; q++) {
+            int from = q * quarter;
+            int to = Math.min(depth, from + quarter - 1);
+            if (to == depth - 1) {
+                to = depth;
+            }
+            long nanos = 0;
+            for (int i = from; i <= to; i++) {
+                nanos += occupancyNanos[i];
+            }
+            if (q > 0) {
+                sb.append(' ');
+            }
+            sb.append(from).append('-').append(to).append(' ').append(percent(nanos, measured));
+            if (to == depth) {
+                break;
+            }
+        }
+        sb.append('\n');
+        return sb.toString();
+    }
+
+    private static String seconds(long nanos) {
+        return String.format(Locale.US, "%.1fs", nanos / (double) TimeUnit.SECONDS.toNanos(1));
+    }
+
+    private static String percent(long part, long whole) {
+        return String.format(Locale.US, "%.1f%%", whole == 0 ? 0.0 : 100.0 * part / whole);
+    }
+}
@@ -0,0 +1,212 @@
+/*
+ * Copyright (C) 2014 Synthetos LLC. All Rights reserved.
+ * http://www.synthetos.com
+ */
+package tgfx;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * The <code>PlannerStreamer</code> class keeps TinyG's motion planner filled
+ * without flooding it.
+ * <p>
+ * Byte counting alone only keeps the RX buffer from overflowing. On jobs with
+ * many short segments the planner is the real bottleneck: once it is full,
+ * every line we send just sits in the RX buffer, so a feedhold or a flush has
+ * to wait for it. Once the planner runs dry, the machine slows down to wait
+ * for us.
+ * <p>
+ * Queue reports tell us how many planner buffers are free (pba). Between
+ * reports we estimate the free buffers by taking off every line acked since
+ * the report, plus the lines still in the RX buffer. While the estimate is
+ * at or below the reserve, the writer is held back. Once the planner drains
+ * to the burst level the writer is let go, and it sends as many lines as the
+ * RX window takes. Without queue reports, or when they go stale, the gate
+ * stays open and the CreditFlowController alone paces the writer.
+ *
+ * @see tgfx.tinyg.QueueReport
+ * @see CreditFlowController
+ */
+public class PlannerStreamer {
+
+    //TinyG v8 has 28 planner buffers
+    public static final int PLANNER_BUFFERS = 28;
+    private static final long PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(10);
+    private static final long STALE_REPORT_NANOS = TimeUnit.SECONDS.toNanos(1);
+    private volatile boolean enabled = true;
+    private volatile int reserve = 4;
+    private volatile int burstLevel = 12;
+    private volatile int lastPba = PLANNER_BUFFERS;
+    private volatile long lastReportNanos = 0;
+    private final AtomicInteger acksSinceReport = new AtomicInteger();
+    private volatile Thread waitingWriter;
+    private volatile int generation = 0;
+    private boolean holding = false;  //only touched by the writer thread
+    //Metrics
+    private volatile long holds = 0;
+    private volatile long heldNanos = 0;
+    private volatile long staleReleases = 0;
+
+    /**
+     * Called for every queue report.
+     */
+    public void queueReport(int pba) {
+        lastPba = pba;
+        acksSinceReport.set(0);
+        lastReportNanos = System.nanoTime();
+        wake();
+    }
+
+    /**
+     * Called for every footer, the acked line now sits in the planner.
+     */
+    public void lineAcked() {
+        acksSinceReport.incrementAndGet();
+    }
+
+    /**
+     * @param linesInFlight lines sent but not acked yet
+     * @return our estimate of the free planner buffers once those lines are
+     * planned too
+     */
+    public int estimatedFree(int linesInFlight) {
+        return lastPba - acksSinceReport.get() - linesInFlight;
+    }
+
+    /**
+     * The gate of awaitPlanner() without the wait.
+     *
+     * @return true if another line may go out right now
+     */
+    public boolean hasRoom(CreditFlowController flowController) {
+        if (!enabled || lastReportNanos == 0
+                || System.nanoTime() - lastReportNanos > STALE_REPORT_NANOS) {
+            return true;
+        }
+        return !holding && estimatedFree(flowController.getLinesInFlight()) > reserve;
+    }
+
+    /**
+     * Waits until the planner has room for another line.
+     *
+     * @return false if reset() was called while we waited, the line must not
+     * be sent
+     */
+    public boolean awaitPlanner(CreditFlowController flowController) throws InterruptedException {
+        int gen = generation;
+        long waitStart = 0;
+        try {
+            while (enabled && lastReportNanos != 0) {
+                if (gen != generation) {
+                    return false;
+                }
+                int free = estimatedFree(flowController.getLinesInFlight());
+                if (holding ? free >= burstLevel : free > reserve) {
+                    holding = false;
+                    return true;
+                }
+                if (System.nanoTime() - lastReportNanos > STALE_REPORT_NANOS) {
+                    //No queue reports are coming, let the byte counting take over
+                    staleReleases++;
+                    holding = false;
+                    return true;
+                }
+                if (!holding) {
+                    holding = true;
+                    holds++;
+                }
+                if (waitStart == 0) {
+                    waitStart = System.nanoTime();
+                }
+                waitingWriter = Thread.currentThread();
+                LockSupport.parkNanos(this, PARK_NANOS);
+                waitingWriter = null;
+                if (Thread.interrupted()) {
+                    throw new InterruptedException();
+                }
+            }
+            holding = false;
+            return gen == generation;
+        } finally {
+            if (waitStart != 0) {
+                heldNanos += System.nanoTime() - waitStart;
+            }
+        }
+    }
+
+    /**
+     * Drops a waiting line and forgets the last queue report, the planner
+     * is flushed along with our queue.
+     */
+    public void reset() {
+        generation++;
+        lastPba = PLANNER_BUFFERS;
+        acksSinceReport.set(0);
+        wake();
+    }
+
+    private void wake() {
+        Thread writer = waitingWriter;
+        if (writer != null) {
+            LockSupport.unpark(writer);
+        }
+    }
+
+    /**
+     * @return true while a writer waits in awaitPlanner()
+     */
+    public boolean isWriterWaiting() {
+        return waitingWriter != null;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+        wake();
+    }
+
+    public int getReserve() {
+        return reserve;
+    }
+
+    /**
+     * @param reserve hold the writer back once only this many planner
+     * buffers are estimated free
+     */
+    public void setReserve(int reserve) {
+        this.reserve = reserve;
+    }
+
+    public int getBurstLevel() {
+        return burstLevel;
+    }
+
+    /**
+     * @param burstLevel let a held writer go once this many planner buffers
+     * are free again
+     */
+    public void setBurstLevel(int burstLevel) {
+        this.burstLevel = burstLevel;
+    }
+
+    public int getLastPba() {
+        return lastPba;
+    }
+
+    public long getHolds() {
+        return holds;
+    }
+
+    public long getHeldNanos() {
+        return heldNanos;
+    }
+
+    public long getStaleReleases() {
+        return staleReleases;
+    }
+}
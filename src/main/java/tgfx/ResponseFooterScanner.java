@@ -0,0 +1,91 @@
+/*
+ * Copyright (C) 2014 Synthetos LLC. All Rights reserved.
+ * http://www.synthetos.com
+ */
+package tgfx;
+
+/**
+ * The <code>ResponseFooterScanner</code> class pulls the footer out of a raw
+ * TinyG response line without building a JSONObject.
+ * <p>
+ * Every response ends with <code>"f":[protocol,status,rx_recvd,checksum]</code>.
+ * SerialDriver runs this scanner on each line as soon as it is framed so the
+ * rx_recvd credit goes back to the SerialWriter before the line even reaches
+ * the ResponseParser.
+ *
+ * @see ResponseFooter
+ * @see SerialWriter#creditFooter(int)
+ */
+public final class ResponseFooterScanner {
+
+    public static final int FOOTER_ELEMENT_PROTOCOL_VERSION = 0;
+    public static final int FOOTER_ELEMENT_STATUS_CODE = 1;
+    public static final int FOOTER_ELEMENT_RX_RECVD = 2;
+    public static final int FOOTER_ELEMENT_CHECKSUM = 3;
+    public static final int FOOTER_ELEMENTS = 4;
+    private static final byte[] FOOTER_KEY = {'"', 'f', '"', ':', '['};
+
+    private ResponseFooterScanner() {
+    }
+
+    /**
+     * Scans a line for its footer.
+     *
+     * @param buf the bytes holding the line
+     * @param offset where the line starts in buf
+     * @param length the length of the line, without the newline
+     * @param values receives the footer elements, must hold FOOTER_ELEMENTS
+     * @return true if a complete footer was found and values was filled in
+     */
+    public static boolean scan(byte[] buf, int offset, int length, long[] values) {
+        //The footer is the last element of the line so we search backwards.
+        int start = lastIndexOfKey(buf, offset, length);
+        if (start < 0) {
+            return false;
+        }
+        int end = offset + length;
+        int pos = start + FOOTER_KEY.length;
+        for (int element = 0; element < FOOTER_ELEMENTS; element++) {
+            while (pos < end && buf[pos] == ' ') {
+                pos++;
+            }
+            boolean negative = false;
+            if (pos < end && buf[pos] == '-') {
+                negative = true;
+                pos++;
+            }
+            int digitsStart = pos;
+            long value = 0;
+            while (pos < end && buf[pos] >= '0' && buf[pos] <= '9') {
+                value = value * 10 + (buf[pos] - '0');
+                pos++;
+            }
+            if (pos == digitsStart) {
+                return false; //Not a number, leave it to the json parser.
+            }
+            values[element] = negative ? -value : value;
+            while (pos < end && buf[pos] == ' ') {
+                pos++;
+            }
+            byte expected = (element == FOOTER_ELEMENTS - 1) ? (byte) ']' : (byte) ',';
+            if (pos >= end || buf[pos] != expected) {
+                return false;
+            }
+            pos++;
+        }
+        return true;
+    }
+
+    private static int lastIndexOfKey(byte[] buf, int offset, int length) {
+        for (int i = offset + length - FOOTER_KEY.length; i >= offset; i--) {
+            int j = 0;
+            while (j < FOOTER_KEY.length && buf[i + j] == FOOTER_KEY[j]) {
+                j++;
+            }
+            if (j == FOOTER_KEY.length) {
+                return i;
+            }
+        }
+        return -1;
+    }
+}
@@ -4,32 +4,44 @@
  */
 package tgfx;
 
+import tgfx.tinyg.TinygCommand;
 import tgfx.tinyg.TinygDriver;
 //import gnu.io.*;
 import jssc.SerialPort;
 import jssc.*;
 
+import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.util.ArrayList;
-import java.util.logging.Level;
 import org.apache.log4j.Logger;
+import tgfx.transport.SerialTransport;
+import tgfx.transport.Transport;
 
 /**
  *
  * @author ril3y
  */
-public class SerialDriver implements SerialPortEventListener {
+public class SerialDriver implements Transport.Listener {
 
     private static Logger logger = Logger.getLogger(SerialWriter.class);
     private boolean connectionState = false;
     public String portArray[] = null;
-    public SerialPort serialPort;
+    private volatile Transport transport;
     public InputStream input;
     public OutputStream output;
     private boolean CANCELLED = false;
-    private static byte[] lineBuffer = new byte[1024];
-    private static int lineIdx = 0;
+    private final SerialOutput serialOutput = new SerialOutput();
+    private final SerialLineFramer lineFramer = new SerialLineFramer();
+    private final SerialLineFramer.LineHandler lineHandler = new SerialLineFramer.LineHandler() {
+        @Override
+        public void line(byte[] buf, int offset, int length) {
+            creditFooter(buf, offset, length);  //Return the rx credit before we parse anything
+            TinygDriver.getInstance().appendJsonQueue(buf, offset, length);
+        }
+    };
+    private volatile boolean footerFastPath = true;
+    private final long[] footerValues = new long[ResponseFooterScanner.FOOTER_ELEMENTS];
     public String debugFileBuffer = "";
     public byte[] debugBuffer = new byte[1024];
     public ArrayList<String> lastRes = new ArrayList();
@@ -46,34 +58,75 @@ public class SerialDriver implements SerialPortEventListener {
     }
 
     public void write(String str) {
-        try {
-            serialPort.writeBytes(str.getBytes());
-            //this.output.write(str.getBytes());
-            logger.debug("Wrote Line: " + str);
-        } catch (Exception ex) {
-            logger.error("Error in SerialDriver Write");
-            logger.error("\t" + ex.getMessage());
+        write(TinygCommand.of(str));
+    }
+
+    public void write(TinygCommand cmd) {
+        //Only the SerialOutput thread writes to the port, we queue the line on its bulk lane.
+        serialOutput.bulk(cmd);
+        if (logger.isDebugEnabled()) {
+            logger.debug("Queued Line: " + cmd);
         }
     }
 
     public void priorityWrite(String str) throws Exception {
-        serialPort.writeBytes(str.getBytes());
-        //this.output.write(str.getBytes());
+        if (SerialOutput.isRealtimeCommand(str)) {
+            //!, ~ and % jump ahead of everything, even a half written line
+            serialOutput.realtime((byte) str.charAt(0));
+        } else {
+            serialOutput.bulk(TinygCommand.of(str));
+        }
     }
 
     public void priorityWrite(Byte b) throws Exception {
         logger.debug("[*] Priority Write Sent\n");
-        serialPort.writeByte(b);
-        //this.output.write(b);
+        serialOutput.realtime(b);
+    }
+
+    /**
+     * Drops the lines queued for the port that have not started going out.
+     */
+    public void clearPendingWrites() {
+        serialOutput.clearBulk();
+    }
+
+    public SerialOutput getSerialOutput() {
+        return serialOutput;
     }
 
     public synchronized void disconnect() throws SerialPortException {
-        if (serialPort != null && serialPort.isOpened()) {
-            serialPort.closePort();
+        serialOutput.clearBulk();
+        if (transport != null && transport.isOpen()) {
+            try {
+                transport.close();
+            } catch (IOException ex) {
+                throw toSerialPortException(ex, "disconnect");
+            }
             setConnected(false); //Set our disconnected state
         }
     }
 
+    private SerialPortException toSerialPortException(IOException ex, String method) {
+        //Our callers grew up with jssc, keep handing them what they expect
+        if (ex.getCause() instanceof SerialPortException) {
+            return (SerialPortException) ex.getCause();
+        }
+        return new SerialPortException(getPortName(), method, ex.getMessage());
+    }
+
+    /**
+     * @return the transport we are talking to TinyG through, null before the
+     * first connect
+     */
+    public Transport getTransport() {
+        return transport;
+    }
+
+    public String getPortName() {
+        Transport t = transport;
+        return t == null ? "" : t.getName();
+    }
+
     public boolean isCANCELLED() {
         return CANCELLED;
     }
@@ -94,42 +147,32 @@ public class SerialDriver implements SerialPortEventListener {
         return this.connectionState;
     }
 
-    @Override
-    public void serialEvent(SerialPortEvent event) {
-        byte[] inbuffer = new byte[1024];
-        int bytesToRead;
-        byte[] tmpBuffer = null;
-
-        bytesToRead = event.getEventValue();
-        //tmpBuffer = serialPort.readBytes(bytesToRead);
+    /**
+     * @return true if footer credit is returned to the SerialWriter as soon
+     * as a line is framed, before it is handed to the ResponseParser.
+     */
+    public boolean isFooterFastPath() {
+        return footerFastPath;
+    }
 
-        if (event.isRXCHAR()) {
-            try {
-                //            int bytesToRead = input.read(inbuffer, 0, inbuffer.length);
-                
-                tmpBuffer = serialPort.readBytes(bytesToRead, serialPort.getInputBufferBytesCount());
-            } catch (    SerialPortException | SerialPortTimeoutException ex) {
-                java.util.logging.Logger.getLogger(SerialDriver.class.getName()).log(Level.SEVERE, null, ex);
-            }
-            
-            for (int i = 0; i < bytesToRead; i++) {
-//                if (tmpBuffer[i] == 0x11 || tmpBuffer[i] == 0x13) {  //We have to filter our XON or XOFF charaters from JSON
-//                    continue;
-//                }
-                if (tmpBuffer[i] == 0xA) { // inbuffer[i] is a \n
-                    String f = new String(lineBuffer, 0, lineIdx);
-                    if (!f.equals("")) { //Do not add "" to the jsonQueue..
-                        TinygDriver.getInstance().appendJsonQueue(f);
-                    }
-                    lineIdx = 0;
-                } else {
-                    lineBuffer[lineIdx++] = tmpBuffer[i];
-                }
-            }
+    public void setFooterFastPath(boolean footerFastPath) {
+        this.footerFastPath = footerFastPath;
+    }
 
+    private void creditFooter(byte[] line, int offset, int length) {
+        if (footerFastPath && ResponseFooterScanner.scan(line, offset, length, footerValues)) {
+            TinygDriver.getInstance().serialWriter.creditFooter(
+                    (int) footerValues[ResponseFooterScanner.FOOTER_ELEMENT_RX_RECVD]);
         }
     }
 
+    @Override
+    public void bytesReceived(byte[] buf, int offset, int length) {
+        //The framer finds the newlines and hands each line to lineHandler as a slice.
+        //Empty lines are not handed out so "" never reaches the jsonQueue.
+        lineFramer.append(buf, offset, length, lineHandler);
+    }
+
 
 
 
@@ -159,37 +202,31 @@ public static String[] listSerialPorts() {
     }
 
     public boolean initialize(String port, int DATA_RATE) throws SerialPortException {
+        try {
+            return initialize(new SerialTransport(port, DATA_RATE));
+        } catch (IOException ex) {
+            throw toSerialPortException(ex, "initialize");
+        }
+    }
 
-        int TIME_OUT = 2000;
-
+    /**
+     * Connects to TinyG through any transport, a serial port, a network
+     * bridge or an in-process loopback.
+     */
+    public boolean initialize(Transport newTransport) throws IOException {
         if (isConnected()) {
             String returnMsg = "[*] Port Already Connected.\n";
             logger.info(returnMsg);
             return (true);
         }
 
-//            CommPortIdentifier portId = CommPortIdentifier.getPortIdentifier(port);
-        // Get the port's ownership
-//            serialPort = (SerialPort) portId("TG", TIME_OUT);
-        // set port parameters
-        serialPort = new SerialPort(port);
-        serialPort.openPort();
-        serialPort.setParams(DATA_RATE,
-                SerialPort.DATABITS_8,
-                SerialPort.STOPBITS_1,
-                SerialPort.PARITY_NONE);
-
-        // open the streams
-        //input = serialPort.getInputBufferBytesCount;
-        //output = serialPort.getOutputStream();
-        serialPort.setFlowControlMode(SerialPort.FLOWCONTROL_RTSCTS_IN | SerialPort.FLOWCONTROL_RTSCTS_OUT);
-        serialPort.setRTS(true);
-
-        // add event listeners
-        serialPort.addEventListener(this);
-        //            serialPort.addEventListener(this);notifyOnDataAvailable(true);
-        
-        logger.debug("[+]Opened " + port + " successfully.");
+        lineFramer.clear();  //Do not glue a stale partial line onto the new connection
+        transport = newTransport;
+        serialOutput.setTransport(newTransport);
+        serialOutput.start();
+        newTransport.open(this);
+
+        logger.debug("[+]Opened " + newTransport.getName() + " successfully.");
         setConnected(true); //Register that this is connectionState.
 
         return true;
@@ -0,0 +1,111 @@
+/*
+ * Copyright (C) 2014 Synthetos LLC. All Rights reserved.
+ * http://www.synthetos.com
+ */
+package tgfx;
+
+import java.nio.ByteBuffer;
+
+/**
+ * The <code>SerialLineFramer</code> class cuts the bytes read from the serial
+ * port into lines.
+ * <p>
+ * Bytes are appended to one reusable ByteBuffer and scanned for newlines in
+ * bulk. Each complete line is handed to the {@link LineHandler} as a slice of
+ * that buffer, no copy and no String. A partial line stays in the buffer and
+ * is compacted to the front once the complete lines are handed out. The
+ * buffer doubles when a single line does not fit, so there is no fixed line
+ * length to overflow.
+ * <p>
+ * The slice is only valid for the duration of the LineHandler call.
+ * Not thread safe, meant to be fed from the serial event thread only.
+ *
+ * @see SerialDriver#bytesReceived(byte[], int, int)
+ */
+public class SerialLineFramer {
+
+    public interface LineHandler {
+
+        /**
+         * @param buf the framer's buffer
+         * @param offset where the line starts in buf
+         * @param length the length of the line, without the newline
+         */
+        void line(byte[] buf, int offset, int length);
+    }
+    private static final int DEFAULT_CAPACITY = 4096;
+    private ByteBuffer buffer;
+    private int scanned = 0;  //bytes from the front already known not to be a newline
+
+    public SerialLineFramer() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    public SerialLineFramer(int capacity) {
+        //A heap buffer, the parser walks the backing array directly.
+        buffer = ByteBuffer.allocate(capacity);
+    }
+
+    /**
+     * Appends bytes and hands every line they complete to the handler.
+     */
+    public void append(byte[] src, int offset, int length, LineHandler handler) {
+        while (length > 0) {
+            if (!buffer.hasRemaining()) {
+                grow();
+            }
+            int n = Math.min(length, buffer.remaining());
+            buffer.put(src, offset, n);
+            offset += n;
+            length -= n;
+            frame(handler);
+        }
+    }
+
+    private void frame(LineHandler handler) {
+        byte[] buf = buffer.array();
+        int end = buffer.position();
+        int lineStart = 0;
+        for (int i = scanned; i < end; i++) {
+            if (buf[i] == '\n') {
+                if (i > lineStart) {  //We do not hand out empty lines
+                    handler.line(buf, lineStart, i - lineStart);
+                }
+                lineStart = i + 1;
+            }
+        }
+        if (lineStart > 0) {
+            //Move the partial line to the front
+            buffer.flip();
+            buffer.position(lineStart);
+            buffer.compact();
+        }
+        scanned = buffer.position();
+    }
+
+    private void grow() {
+        ByteBuffer bigger = ByteBuffer.allocate(buffer.capacity() * 2);
+        buffer.flip();
+        bigger.put(buffer);
+        buffer = bigger;
+    }
+
+    /**
+     * @return the number of bytes of the partial line waiting for its newline
+     */
+    public int pending() {
+        return buffer.position();
+    }
+
+    public int capacity() {
+        return buffer.capacity();
+    }
+
+    /**
+     * Drops any partial line, used when the port is reopened.
+     */
+    public void clear() {
+        buffer.clear();
+        scanned = 0;
+    }
+}
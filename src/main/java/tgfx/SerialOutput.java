@@ -0,0 +1,301 @@
+/*
+ * Copyright (C) 2014 Synthetos LLC. All Rights reserved.
+ * http://www.synthetos.com
+ */
+package tgfx;
+
+import java.io.IOException;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+import org.apache.log4j.Logger;
+import tgfx.metrics.MetricsRegistry;
+import tgfx.metrics.StripedCounter;
+import tgfx.tinyg.TinygCommand;
+import tgfx.transport.Transport;
+
+/**
+ * The <code>SerialOutput</code> class owns the output side of the transport.
+ * It runs the only thread that writes to it.
+ * <p>
+ * There are two lanes. The real-time lane carries the single byte commands
+ * that TinyG picks out of its RX stream as soon as they arrive: feedhold
+ * <code>!</code>, cycle start <code>~</code>, queue flush <code>%</code> and
+ * reset 0x18. The bulk lane carries every other line, G-code as well as JSON.
+ * Bulk commands are released back to their pool once they are written.
+ * <p>
+ * Bulk commands go out in chunks of at most {@link #setBulkChunk(int)} bytes,
+ * one port write each. A batch from the SerialWriter is one pooled buffer
+ * that goes out as several chunks. Before every chunk the real-time lane is
+ * drained, so a feedhold waits behind one small chunk, not behind a whole
+ * batch or the bulk queue. TinyG takes these characters out of the
+ * middle of a line, so they need no newline and can be written between any
+ * two bytes. How long each real-time byte took from submit until the port had
+ * it is measured, and a byte that took longer than
+ * {@link #REALTIME_BUDGET_NANOS} is counted and logged. Once the last chunk
+ * of a bulk command is written its {@link WriteListener} hears about it.
+ *
+ * @see SerialDriver
+ */
+public class SerialOutput implements Runnable {
+
+    private static final Logger logger = Logger.getLogger(SerialOutput.class);
+    private static final StripedCounter DROPPED_LINES = MetricsRegistry.getInstance().counter("writer.droppedLines");
+    //Keeps a real-time byte within a couple of bytes' time of the port at any baud rate
+    public static final int DEFAULT_BULK_CHUNK = 16;
+    public static final int MAX_BULK_CHUNK = 1024;
+    public static final long REALTIME_BUDGET_NANOS = TimeUnit.MILLISECONDS.toNanos(2);
+    public static final byte REALTIME_FEEDHOLD = '!';
+    public static final byte REALTIME_CYCLE_START = '~';
+    public static final byte REALTIME_QUEUE_FLUSH = '%';
+    public static final byte REALTIME_RESET = 0x18;
+
+    /**
+     * Hears when bulk lines have been written to the port.
+     */
+    public interface WriteListener {
+
+        /**
+         * Called from the output thread right after the last byte of a bulk
+         * command was written.
+         *
+         * @param lines the lines the command held
+         */
+        void linesWritten(int lines);
+    }
+
+    private static class RealtimeCommand {
+
+        final byte command;
+        final long submitNanos;
+
+        RealtimeCommand(byte command, long submitNanos) {
+            this.command = command;
+            this.submitNanos = submitNanos;
+        }
+    }
+    private final ConcurrentLinkedQueue<RealtimeCommand> realtimeLane = new ConcurrentLinkedQueue<>();
+    private final ConcurrentLinkedQueue<TinygCommand> bulkLane = new ConcurrentLinkedQueue<>();
+    private volatile int bulkChunk = DEFAULT_BULK_CHUNK;
+    private final byte[] realtimeByte = new byte[1];
+    private volatile Transport transport;
+    private volatile WriteListener writeListener;
+    private volatile Thread outputThread;
+    private volatile boolean waiting = false;
+    private volatile boolean RUN = true;
+    //Only touched by the output thread
+    private TinygCommand currentLine;
+    private int currentPosition;
+    //Metrics
+    private volatile long realtimeWrites = 0;
+    private volatile long realtimeLatencyLastNanos = 0;
+    private volatile long realtimeLatencyMaxNanos = 0;
+    private volatile long realtimeLatencyTotalNanos = 0;
+    private volatile long realtimeBudgetMisses = 0;
+    private volatile long bulkLines = 0;
+    private volatile long bulkBytes = 0;
+    private volatile long preemptions = 0;
+
+    /**
+     * @return true if str is one of the real-time commands, with or without
+     * its newline
+     */
+    public static boolean isRealtimeCommand(String str) {
+        if (str.isEmpty() || str.length() > 2 || (str.length() == 2 && str.charAt(1) != '\n')) {
+            return false;
+        }
+        char c = str.charAt(0);
+        return c == REALTIME_FEEDHOLD || c == REALTIME_CYCLE_START
+                || c == REALTIME_QUEUE_FLUSH || c == REALTIME_RESET;
+    }
+
+    /**
+     * @param bulkChunk the most bulk bytes per port write, smaller chunks let
+     * real-time commands in sooner at the cost of more writes
+     */
+    public void setBulkChunk(int bulkChunk) {
+        this.bulkChunk = Math.max(1, Math.min(MAX_BULK_CHUNK, bulkChunk));
+    }
+
+    public int getBulkChunk() {
+        return bulkChunk;
+    }
+
+    public void setTransport(Transport transport) {
+        this.transport = transport;
+    }
+
+    public void setWriteListener(WriteListener writeListener) {
+        this.writeListener = writeListener;
+    }
+
+    /**
+     * Starts the output thread, once.
+     */
+    public synchronized void start() {
+        if (outputThread == null) {
+            Thread t = new Thread(this, "SerialOutput");
+            t.setDaemon(true);
+            t.setPriority(Thread.MAX_PRIORITY);
+            outputThread = t;
+            t.start();
+        }
+    }
+
+    public void stop() {
+        RUN = false;
+        wake();
+    }
+
+    /**
+     * Queues a real-time command ahead of all bulk bytes not written yet.
+     */
+    public void realtime(byte command) {
+        realtimeLane.add(new RealtimeCommand(command, System.nanoTime()));
+        wake();
+    }
+
+    /**
+     * Queues a line behind the bulk lines already waiting.
+     */
+    public void bulk(TinygCommand line) {
+        bulkLane.add(line);
+        wake();
+    }
+
+    /**
+     * Drops the bulk lines that have not started yet. A line that is half
+     * written is finished so TinyG does not glue its tail onto the next line.
+     */
+    public void clearBulk() {
+        TinygCommand dropped;
+        while ((dropped = bulkLane.poll()) != null) {
+            DROPPED_LINES.increment();
+            dropped.release();
+        }
+    }
+
+    private void wake() {
+        Thread t = outputThread;
+        if (waiting && t != null) {
+            LockSupport.unpark(t);
+        }
+    }
+
+    @Override
+    public void run() {
+        while (RUN) {
+            writeRealtime();
+            if (currentLine == null) {
+                currentLine = bulkLane.poll();
+                currentPosition = 0;
+                if (currentLine == null) {
+                    waiting = true;
+                    if (realtimeLane.isEmpty() && bulkLane.isEmpty() && RUN) {
+                        LockSupport.park(this);
+                    }
+                    waiting = false;
+                    continue;
+                }
+            }
+            int n = Math.min(bulkChunk, currentLine.length() - currentPosition);
+            if (n > 0) {
+                writeToTransport(currentLine.payload(), currentPosition, n);
+                currentPosition += n;
+                bulkBytes += n;
+            }
+            if (currentPosition == currentLine.length()) {
+                WriteListener l = writeListener;
+                if (l != null) {
+                    l.linesWritten(currentLine.getLineCount());
+                }
+                currentLine.release();
+                currentLine = null;
+                bulkLines++;
+            }
+        }
+    }
+
+    private void writeRealtime() {
+        RealtimeCommand rt;
+        while ((rt = realtimeLane.poll()) != null) {
+            if (currentLine != null) {
+                preemptions++;
+            }
+            realtimeByte[0] = rt.command;
+            writeToTransport(realtimeByte, 0, 1);
+            long latency = System.nanoTime() - rt.submitNanos;
+            realtimeWrites++;
+            realtimeLatencyLastNanos = latency;
+            realtimeLatencyTotalNanos += latency;
+            if (latency > realtimeLatencyMaxNanos) {
+                realtimeLatencyMaxNanos = latency;
+            }
+            if (latency > REALTIME_BUDGET_NANOS) {
+                realtimeBudgetMisses++;
+                logger.warn("Real-time command 0x" + Integer.toHexString(rt.command & 0xff)
+                        + " took " + TimeUnit.NANOSECONDS.toMicros(latency) + "us to reach the port");
+            }
+        }
+    }
+
+    private void writeToTransport(byte[] bytes, int offset, int length) {
+        Transport p = transport;
+        if (p == null) {
+            return;
+        }
+        try {
+            p.write(bytes, offset, length);
+        } catch (IOException ex) {
+            logger.error("Error in SerialOutput Write");
+            logger.error("\t" + ex.getMessage());
+        }
+    }
+
+    public long getRealtimeWrites() {
+        return realtimeWrites;
+    }
+
+    public long getRealtimeLatencyLastNanos() {
+        return realtimeLatencyLastNanos;
+    }
+
+    public long getRealtimeLatencyMaxNanos() {
+        return realtimeLatencyMaxNanos;
+    }
+
+    public long getRealtimeLatencyTotalNanos() {
+        return realtimeLatencyTotalNanos;
+    }
+
+    /**
+     * @return the real-time bytes that took longer than
+     * REALTIME_BUDGET_NANOS to reach the port
+     */
+    public long getRealtimeBudgetMisses() {
+        return realtimeBudgetMisses;
+    }
+
+    /**
+     * @return the real-time bytes written in the middle of a bulk line
+     */
+    public long getPreemptions() {
+        return preemptions;
+    }
+
+    /**
+     * @return true while bulk lines are queued or being written, the output
+     * thread may already be done with the last one
+     */
+    public boolean isBulkPending() {
+        return !bulkLane.isEmpty() || (outputThread != null && !waiting);
+    }
+
+    public long getBulkLines() {
+        return bulkLines;
+    }
+
+    public long getBulkBytes() {
+        return bulkBytes;
+    }
+}
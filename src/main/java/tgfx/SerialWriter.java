@@ -5,9 +5,11 @@
 package tgfx;
 
 import java.util.concurrent.BlockingQueue;
-import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
 import org.apache.log4j.Logger;
-import tgfx.tinyg.TinygDriver;
+import tgfx.metrics.MetricsRegistry;
+import tgfx.metrics.StripedCounter;
+import tgfx.tinyg.TinygCommand;
 import tgfx.ui.gcode.GcodeTabController;
 
 /**
@@ -17,19 +19,29 @@ import tgfx.ui.gcode.GcodeTabController;
 public class SerialWriter implements Runnable {
 
     private static Logger logger = Logger.getLogger(SerialWriter.class);
-    private BlockingQueue<String> queue;
+    //Lines thrown away by a queue clear or a reset, SerialOutput counts its own in here too
+    private static final StripedCounter DROPPED_LINES = MetricsRegistry.getInstance().counter("writer.droppedLines");
+    private BlockingQueue<TinygCommand> queue;
     private boolean RUN = true;
-    private boolean cleared  = false;
-    private String tmpCmd;
-    private int BUFFER_SIZE = 180;
-    public AtomicInteger buffer_available = new AtomicInteger(BUFFER_SIZE);
+    private TinygCommand tmpCmd;
+    //Taken from the queue but did not fit the last batch, a queue clear drops it too
+    private final AtomicReference<TinygCommand> pending = new AtomicReference<>();
+    private JobSource pendingSource;  //the job pending came from, writer thread only
+    private JobSource polledSource;  //the job the last poll() came from, writer thread only
+    private final AtomicReference<JobSource> job = new AtomicReference<>();
+    //Bytes of TinyG's RX buffer we let lines take up
+    public static final int BUFFER_SIZE = 180;
+    private final CreditFlowController flowController = new CreditFlowController(BUFFER_SIZE);
+    private final PlannerStreamer plannerStreamer = new PlannerStreamer();
+    private final PlannerMonitor plannerMonitor = new PlannerMonitor();
     private SerialDriver ser = SerialDriver.getInstance();
-    private static final Object mutex = new Object();
-    private static boolean throttled = false;
     private int pbaChamberedRounds = 0;
+    private volatile long batchWrites = 0;
+    private volatile long batchedLines = 0;
+    private volatile int maxBatchLines = 0;
 
     //   public Condition clearToSend = lock.newCondition();
-    public SerialWriter(BlockingQueue q) {
+    public SerialWriter(BlockingQueue<TinygCommand> q) {
         this.queue = q;
         
         //Setup Logging for SerialWriter
@@ -40,26 +52,56 @@ public class SerialWriter implements Runnable {
         }else{
             logger.setLevel(org.apache.log4j.Level.OFF);
         }
+        //Lines count as sent once the port has them, not when they got credit
+        ser.getSerialOutput().setWriteListener(new SerialOutput.WriteListener() {
+            @Override
+            public void linesWritten(int lines) {
+                flowController.written(lines);
+            }
+        });
     }
 
     public void resetBuffer() {
         //Called onDisconnectActions
-        buffer_available.set(BUFFER_SIZE);
-        notifyAck();  
+        flowController.reset();
+        plannerStreamer.reset();
     }
 
  
    public void clearQueueBuffer() {
-        queue.clear();
-        this.cleared = true; // We set this to tell the mutex with waiting for an ack to send a line that it should not send a line.. we were asked to be cleared.
-        try {
-            //This is done in resetBuffer is this needed?
-            buffer_available.set(BUFFER_SIZE);
-            this.setThrottled(false);
-            this.notifyAck();
-        } catch (Exception ex) {
-            logger.error(ex);
+        cancelJob();
+        TinygCommand dropped;
+        while ((dropped = queue.poll()) != null) {
+            DROPPED_LINES.increment();
+            dropped.release();
+        }
+        dropped = pending.getAndSet(null);
+        if (dropped != null) {
+            DROPPED_LINES.increment();
+            dropped.release();
         }
+        ser.clearPendingWrites();
+        //This also tells a line waiting for credit that it should not be sent.. we were asked to be cleared.
+        flowController.reset();
+        flowController.setHeld(false);
+        plannerStreamer.reset();
+        plannerMonitor.endJob();
+    }
+
+    public CreditFlowController getFlowController() {
+        return flowController;
+    }
+
+    public PlannerStreamer getPlannerStreamer() {
+        return plannerStreamer;
+    }
+
+    public PlannerMonitor getPlannerMonitor() {
+        return plannerMonitor;
+    }
+
+    public StreamLatency getLatency() {
+        return flowController.getLatency();
     }
 
     public boolean isRUN() {
@@ -70,45 +112,158 @@ public class SerialWriter implements Runnable {
         this.RUN = RUN;
     }
 
-    public synchronized int getBufferValue() {
-        return buffer_available.get();
+    public int getBufferValue() {
+        return flowController.getAvailable();
+    }
+
+    public void setBuffer(int val) {
+        flowController.resync(val);
+        logger.debug("Got a BUFFER Response.. " + val + " buffer is now: " + getBufferValue());
     }
 
-    public synchronized void setBuffer(int val) {
-        buffer_available.set(val);
-        logger.debug("Got a BUFFER Response.. reset it to: " + val);
+    /**
+     * Returns the rx_recvd count of a response footer to our buffer and wakes
+     * the writer. Called straight from the SerialDriver's read loop when the
+     * footer fast path is on, otherwise from ResponseParser.parseFooter.
+     *
+     * @param rxRecvd the rx_recvd element of the footer
+     * @return the buffer value after the credit was returned
+     */
+    public int creditFooter(int rxRecvd) {
+        //The flow controller wakes our writer thread if it was waiting on space in the buffer.
+        plannerStreamer.lineAcked();
+        return flowController.credit(rxRecvd);
     }
 
-    public synchronized void addBytesReturnedToBuffer(int lenBytesReturned) {
-        buffer_available.set(getBufferValue() + lenBytesReturned);
-        logger.debug("Returned " + lenBytesReturned + " to buffer.  Buffer is now at " + buffer_available + "\n");
+    /**
+     * Hands a queue report to the planner streamer and the planner monitor.
+     *
+     * @param pba the free planner buffers
+     */
+    public void queueReport(int pba) {
+        plannerStreamer.queueReport(pba);
+        plannerMonitor.queueReport(pba, starvationCause());
+    }
+
+    /**
+     * @return what keeps the next line from reaching the planner right now
+     */
+    PlannerMonitor.Cause starvationCause() {
+        if (flowController.isHeld() || flowController.isWriterWaiting() || plannerStreamer.isWriterWaiting()) {
+            return PlannerMonitor.Cause.FLOW_CONTROL;
+        }
+        if (ser.getSerialOutput().isBulkPending()) {
+            return PlannerMonitor.Cause.SERIAL_BUSY;
+        }
+        if (queue.isEmpty() && pending.get() == null && job.get() == null) {
+            return PlannerMonitor.Cause.HOST_QUEUE_EMPTY;
+        }
+        return PlannerMonitor.Cause.SERIAL_IDLE;
     }
 
-    public void addCommandToBuffer(String cmd) {
+    public void addCommandToBuffer(TinygCommand cmd) {
+        cmd.markEnqueued();
         this.queue.add(cmd);
     }
 
-    public boolean setThrottled(boolean t) {
+    /**
+     * Streams a job, replacing the one running if there is one. Its lines
+     * are pulled whenever the queue is empty, so what the UI queues still
+     * goes out in between, and only as fast as TinyG takes them.
+     */
+    public void startJob(JobSource source) {
+        JobSource old = job.getAndSet(source);
+        if (old != null) {
+            old.cancel();
+        }
+        queue.add(TinygCommand.JOB_START);  //In case the writer waits on an empty queue
+    }
 
-        synchronized (mutex) {
-            if (t == throttled) {
-                logger.debug("Throttled already set");
-                return false;
-            }
-            logger.debug("Setting Throttled " + t);
-            throttled = t;
+    /**
+     * Stops the job right away, nothing of it is queued.
+     */
+    public void cancelJob() {
+        JobSource old = job.getAndSet(null);
+        if (old != null) {
+            old.cancel();
+        }
+    }
+
+    public boolean isJobActive() {
+        return job.get() != null;
+    }
+
+    /**
+     * @return the next line of the queue, or of the job if the queue is
+     * empty, null if neither has one
+     */
+    private TinygCommand poll() {
+        polledSource = null;
+        TinygCommand cmd = queue.poll();
+        if (cmd != null) {
+            return cmd;
+        }
+        JobSource source = job.get();
+        polledSource = source;
+        if (source == null) {
+            return null;
+        }
+        try {
+            cmd = source.next();
+        } catch (RuntimeException ex) {
+            logger.error("Error streaming the job: " + ex.getMessage(), ex);
+            Main.postConsoleMessage("[!]Error streaming the job, stopping: " + ex.getMessage() + "\n");
+            source.cancel();
+            cmd = TinygCommand.FILE_DONE;
+        }
+        if (cmd == null || cmd == TinygCommand.FILE_DONE) {
+            job.compareAndSet(source, null);
+        }
+        if (cmd != null) {
+            cmd.markEnqueued();
+        }
+        return cmd;
+    }
+
+    /**
+     * Keeps cmd, the last line poll() returned, for the next round.
+     */
+    void holdBack(TinygCommand cmd) {
+        pendingSource = polledSource;
+        pending.set(cmd);
+    }
+
+    /**
+     * @return the line held back from the last batch, or the next one of
+     * the queue or the job, null if there is none. A held back line of a
+     * job that has been cancelled since is dropped.
+     */
+    TinygCommand nextCommand() {
+        TinygCommand cmd = pending.getAndSet(null);
+        if (cmd != null && pendingSource != null && pendingSource != job.get()
+                && cmd.getType() != TinygCommand.Type.FILE_DONE) {
+            DROPPED_LINES.increment();
+            cmd.release();
+            cmd = null;
         }
+        return cmd != null ? cmd : poll();
+    }
+
+    public boolean setThrottled(boolean t) {
+        //Holds the writer thread back while it is set, even if TinyG has room.
+        if (!flowController.setHeld(t)) {
+            logger.debug("Throttled already set");
+            return false;
+        }
+        logger.debug("Setting Throttled " + t);
         return true;
     }
 
     public void notifyAck() {
-        //This is called by the response parser when an ack packet is recvd.  This
-        //Will wake up the mutex that is sleeping in the write method of the serialWriter
-        //(this) class.
-        synchronized (mutex) {
-            logger.debug("Notifying the SerialWriter we have recvd an ACK");
-            mutex.notify();
-        }
+        //Wakes the writer thread if it is waiting in the flow controller so it
+        //looks at the buffer again.
+        logger.debug("Notifying the SerialWriter we have recvd an ACK");
+        flowController.wake();
     }
 
     private void sendUiMessage(String str) {
@@ -133,76 +288,132 @@ public class SerialWriter implements Runnable {
 //    }
     
     public void write(String str) {
+        write(TinygCommand.of(str));
+    }
+
+    public void write(TinygCommand cmd) {
+        write(cmd, false);
+    }
+
+    /**
+     * Sends cmd once the planner and the RX window have room for it. With
+     * gather set, the lines queued behind it that fit the window right now
+     * are copied into the same buffer, and the lot goes out in one port
+     * write. Only the writer thread may gather, it owns the queue's head.
+     */
+    private void write(TinygCommand cmd, boolean gather) {
         try {
-            synchronized (mutex) {
-                
-                
-                
-//                if (str.length() > getBufferValue()) {
-//                    setThrottled(true);
-//                } else {
-//                    this.setBuffer(getBufferValue() - str.length());
-//                }
-                int _currentPlanningBuffer = TinygDriver.getInstance().qr.getPba();
-                
-                if(_currentPlanningBuffer < 28){
-                    //if we have less that 28 moves in the planning buffer send a line
-                }
+            //We hold back here while the planner is full and send in bursts
+            //once it drains, see PlannerStreamer.
+            if (!plannerStreamer.awaitPlanner(flowController)) {
+                DROPPED_LINES.increment();
+                cmd.release();
+                return;
+            }
 
-                while (throttled) {
-                    if (str.length() > getBufferValue()) {
-                        logger.debug("Throttling: Line Length: " + str.length() + " is smaller than buffer length: " + buffer_available);
-                        setThrottled(true);
-                    } else {
-                        setThrottled(false);
-                        buffer_available.set(getBufferValue() - str.length());
-                        break;
-                    }
-                    logger.debug("We are Throttled in the write method for SerialWriter");
-                    //We wait here until the an ack comes in to the response parser
-                    // frees up some buffer space.  Then we unlock the mutex and write the next line.
-                    mutex.wait();
-                    if(cleared){
-                       //clear out the line we were waiting to send.. we were asked to clear our buffer
-                        //includeing this line that is waiting to be sent.
-                        cleared = false;  //Reset this flag now...
-                        return;
-                    }
-                    logger.debug("We are free from Throttled!");
+            //We wait here until footers coming back to the response parser
+            //free up enough buffer space for this line.
+            if (!flowController.acquire(cmd.length(), cmd.getEnqueuedNanos())) {
+                //clear out the line we were waiting to send.. we were asked to clear our buffer
+                //includeing this line that is waiting to be sent.
+                DROPPED_LINES.increment();
+                cmd.release();
+                return;
+            }
+            TinygCommand batch = null;
+            int lines = 1;
+            TinygCommand next;
+            while (gather && (next = poll()) != null) {
+                if (!isBatchable(next) || !plannerStreamer.hasRoom(flowController)
+                        || !flowController.tryAcquire(next.length(), next.getEnqueuedNanos())) {
+                    holdBack(next);  //run() handles it before it takes from the queue again
+                    break;
+                }
+                if (batch == null) {
+                    batch = TinygCommand.batch();
+                    logLine(cmd);
+                    batch.append(cmd);
+                    cmd.release();
                 }
+                //Every line is still its own entry in the flow controller, each gets a footer.
+                logLine(next);
+                batch.append(next);
+                next.release();
+                lines++;
             }
-            if (str.contains("(")) {
-                //Gcode Comment Push it back to the UI
-                sendUiMessage(str);
+            if (batch == null) {
+                logLine(cmd);
+                ser.write(cmd);  //The SerialOutput releases cmd once it is written
+                return;
             }
-
-            ser.write(str);
-            if(!Main.LOGLEVEL.equals("OFF")){
-                Main.print("+" + str);
+            batchWrites++;
+            batchedLines += lines;
+            if (lines > maxBatchLines) {
+                maxBatchLines = lines;
             }
-            
-            
+            ser.write(batch);
         } catch (InterruptedException ex) {
             logger.error("Error in SerialDriver Write");
         }
     }
 
+    private static boolean isBatchable(TinygCommand cmd) {
+        return cmd != null && cmd.getType() != TinygCommand.Type.FILE_DONE
+                && cmd.getType() != TinygCommand.Type.COMMENT
+                && cmd.getType() != TinygCommand.Type.JOB_START;
+    }
+
+    private void logLine(TinygCommand cmd) {
+        if (cmd.hasComment()) {
+            //Gcode Comment Push it back to the UI
+            sendUiMessage(cmd.toString());
+        }
+        if(!Main.LOGLEVEL.equals("OFF")){
+            Main.print("+" + cmd);
+        }
+    }
+
+    /**
+     * @return the port writes that carried more than one line
+     */
+    public long getBatchWrites() {
+        return batchWrites;
+    }
+
+    public long getBatchedLines() {
+        return batchedLines;
+    }
+
+    public int getMaxBatchLines() {
+        return maxBatchLines;
+    }
+
     @Override
     public void run() {
         Main.print("[+]Serial Writer Thread Running...");
         while (RUN) {
             try {
-                tmpCmd = queue.take();  //Grab the line
-                if(tmpCmd.equals("**FILEDONE**")){
-                    //Our end of file sending token has been detected.
-                    //We will not enable jogging by setting isSendingFile to false
-                    GcodeTabController.setIsFileSending(false);
-                }else if(tmpCmd.startsWith("**COMMENT**")){
-                    //Display current gcode comment
-                    GcodeTabController.setGcodeTextTemp("Comment: " + tmpCmd);
-                    continue;
+                tmpCmd = nextCommand();  //Grab the line
+                if (tmpCmd == null) {
+                    tmpCmd = queue.take();  //Nothing queued and no job, wait for either
+                }
+                switch (tmpCmd.getType()) {
+                    case JOB_START:
+                        //The job is pulled from on the next round
+                        break;
+                    case FILE_DONE:
+                        //Our end of file sending token has been detected.
+                        //We will not enable jogging by setting isSendingFile to false
+                        GcodeTabController.setIsFileSending(false);
+                        break;
+                    case COMMENT:
+                        //Display current gcode comment
+                        GcodeTabController.setGcodeTextTemp("Comment: " + tmpCmd);
+                        tmpCmd.release();
+                        break;
+                    default:
+                        this.write(tmpCmd, true);
                 }
-                this.write(tmpCmd);
             } catch (Exception ex) {
                 Main.print("[!]Exception in SerialWriter Thread");
             }
@@ -0,0 +1,124 @@
+/*
+ * Copyright (C) 2014 Synthetos LLC. All Rights reserved.
+ * http://www.synthetos.com
+ */
+package tgfx;
+
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+import tgfx.utility.LatencyHistogram;
+
+/**
+ * The <code>StreamLatency</code> class keeps three latency histograms for
+ * the lines we stream:
+ * <ul>
+ * <li>queued, from the line going into the writer queue to the SerialOutput
+ * writing its last byte to the port, which includes waiting for RX buffer
+ * credit and behind other bulk lines</li>
+ * <li>in flight, from there to its footer coming back, the time spent on the
+ * wire and in TinyG's RX buffer</li>
+ * <li>total, the two together</li>
+ * </ul>
+ * Lines without an enqueue time, like the shared CommandManager constants
+ * and priority queries, only count in flight. Percentiles shown are {@link #setPercentiles}.
+ *
+ * @see CreditFlowController#credit(int)
+ */
+public class StreamLatency {
+
+    private final LatencyHistogram queued = new LatencyHistogram();
+    private final LatencyHistogram inFlight = new LatencyHistogram();
+    private final LatencyHistogram total = new LatencyHistogram();
+    private volatile double[] percentiles = {50, 90, 99, 99.9};
+
+    /**
+     * @param enqueuedNanos when the line went into the writer queue, 0 if
+     * we do not know
+     * @param sentNanos when its last byte was written to the port
+     * @param ackedNanos when its footer came back
+     */
+    public void record(long enqueuedNanos, long sentNanos, long ackedNanos) {
+        inFlight.record(ackedNanos - sentNanos);
+        if (enqueuedNanos != 0) {
+            queued.record(sentNanos - enqueuedNanos);
+            total.record(ackedNanos - enqueuedNanos);
+        }
+    }
+
+    public void reset() {
+        queued.reset();
+        inFlight.reset();
+        total.reset();
+    }
+
+    public LatencyHistogram getQueued() {
+        return queued;
+    }
+
+    public LatencyHistogram getInFlight() {
+        return inFlight;
+    }
+
+    public LatencyHistogram getTotal() {
+        return total;
+    }
+
+    public double[] getPercentiles() {
+        return percentiles.clone();
+    }
+
+    /**
+     * @param percentiles the percentiles the summaries show, 0 to 100
+     */
+    public void setPercentiles(double... percentiles) {
+        this.percentiles = percentiles.clone();
+    }
+
+    /**
+     * @return one line for the UI, like "p50 1.2ms p99 8.4ms" of the total
+     */
+    public String shortSummary() {
+        StringBuilder sb = new StringBuilder();
+        double[] p = percentiles;
+        for (int i = 0; i < p.length; i++) {
+            if (i > 0) {
+                sb.append(' ');
+            }
+            sb.append('p').append(percentileName(p[i])).append(' ')
+                    .append(millis(total.getValueAtPercentile(p[i])));
+        }
+        return sb.toString();
+    }
+
+    /**
+     * @return the count, percentiles and max of all three histograms, one
+     * line each
+     */
+    public String summary() {
+        StringBuilder sb = new StringBuilder();
+        appendSummary(sb, "queued", queued);
+        appendSummary(sb, "in flight", inFlight);
+        appendSummary(sb, "total", total);
+        return sb.toString();
+    }
+
+    private void appendSummary(StringBuilder sb, String name, LatencyHistogram histogram) {
+        sb.append(name).append(": ").append(histogram.getCount()).append(" lines");
+        for (double p : percentiles) {
+            sb.append(", p").append(percentileName(p)).append(' ')
+                    .append(millis(histogram.getValueAtPercentile(p)));
+        }
+        sb.append(", max ").append(millis(histogram.getMax())).append('\n');
+    }
+
+    private static String percentileName(double percentile) {
+        if (percentile == Math.rint(percentile)) {
+            return Long.toString((long) percentile);
+        }
+        return Double.toString(percentile);
+    }
+
+    private static String millis(long nanos) {
+        return String.format(Locale.US, "%.1fms", nanos / (double) TimeUnit.MILLISECONDS.toNanos(1));
+    }
+}
@@ -0,0 +1,164 @@
+/*
+ * Copyright (C) 2014 Synthetos LLC. All Rights reserved.
+ * http://www.synthetos.com
+ */
+package tgfx.event;
+
+import java.util.EnumMap;
+import java.util.EnumSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import javafx.application.Platform;
+import org.apache.log4j.Logger;
+
+/**
+ * The <code>EventBus</code> class hands the events of the driver and the
+ * response parser to whoever subscribed to them.
+ * <p>
+ * Every subscriber names the executor its events are delivered on, like
+ * {@link #FX_THREAD} for the UI, and publishing never waits for a
+ * subscriber. The subscribers of each type are kept in a copy-on-write
+ * list, so publishing takes no lock.
+ * <p>
+ * Events of a {@link EventType#isConflated() conflated} type are not queued
+ * up: while one is waiting for a subscriber, a newer one replaces it and
+ * the subscriber only gets the newer one.
+ */
+public class EventBus {
+
+    private static final Logger logger = Logger.getLogger(EventBus.class);
+    /**
+     * Runs events on the publishing thread.
+     */
+    public static final Executor DIRECT = new Executor() {
+        @Override
+        public void execute(Runnable command) {
+            command.run();
+        }
+    };
+    /**
+     * Runs events on the FX application thread, right away if they are
+     * published on it.
+     */
+    public static final Executor FX_THREAD = new Executor() {
+        @Override
+        public void execute(Runnable command) {
+            if (Platform.isFxApplicationThread()) {
+                command.run();
+            } else {
+                Platform.runLater(command);
+            }
+        }
+    };
+    //Filled once, only the lists change after that
+    private final Map<EventType, CopyOnWriteArrayList<Subscriber>> subscribers = new EnumMap<>(EventType.class);
+
+    EventBus() {
+        for (EventType type : EventType.values()) {
+            subscribers.put(type, new CopyOnWriteArrayList<Subscriber>());
+        }
+    }
+
+    public static EventBus getInstance() {
+        return EventBusHolder.INSTANCE;
+    }
+
+    private static class EventBusHolder {
+
+        private static final EventBus INSTANCE = new EventBus();
+    }
+
+    /**
+     * Subscribes to every event type.
+     */
+    public void subscribe(TinygEventListener listener, Executor executor) {
+        subscribe(listener, executor, EnumSet.allOf(EventType.class));
+    }
+
+    /**
+     * @param listener gets the events
+     * @param executor runs listener.onEvent()
+     * @param types the event types the listener wants
+     */
+    public void subscribe(TinygEventListener listener, Executor executor, Set<EventType> types) {
+        Subscriber subscriber = new Subscriber(listener, executor);
+        for (EventType type : types) {
+            subscribers.get(type).add(subscriber);
+        }
+    }
+
+    /**
+     * Drops every subscription of the listener. Events already handed to
+     * its executor may still arrive.
+     */
+    public void unsubscribe(TinygEventListener listener) {
+        for (CopyOnWriteArrayList<Subscriber> list : subscribers.values()) {
+            for (Subscriber subscriber : list) {
+                if (subscriber.listener == listener) {
+                    list.remove(subscriber);
+                }
+            }
+        }
+    }
+
+    public void publish(EventType type, String argument) {
+        publish(TinygEvent.of(type, argument));
+    }
+
+    public void publish(TinygEvent event) {
+        for (Subscriber subscriber : subscribers.get(event.getType())) {
+            subscriber.deliver(event);
+        }
+    }
+
+    public boolean hasSubscribers(EventType type) {
+        return !subscribers.get(type).isEmpty();
+    }
+
+    private static class Subscriber {
+
+        final TinygEventListener listener;
+        final Executor executor;
+        //The conflated event waiting for this subscriber, by type
+        private final AtomicReferenceArray<TinygEvent> pending = new AtomicReferenceArray<>(EventType.values().length);
+
+        Subscriber(TinygEventListener listener, Executor executor) {
+            this.listener = listener;
+            this.executor = executor;
+        }
+
+        void deliver(final TinygEvent event) {
+            if (!event.getType().isConflated()) {
+                executor.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        dispatch(event);
+                    }
+                });
+                return;
+            }
+            final int slot = event.getType().ordinal();
+            if (pending.getAndSet(slot, event) != null) {
+                return;  //The one waiting will pick up our event
+            }
+            executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    dispatch(pending.getAndSet(slot, null));
+                }
+            });
+        }
+
+        private void dispatch(TinygEvent event) {
+            try {
+                listener.onEvent(event);
+            } catch (Exception ex) {
+                //One subscriber must not keep the event from the others
+                logger.error("[!]Error handling " + event.getType() + ": " + ex.getMessage(), ex);
+            }
+        }
+    }
+}
@@ -0,0 +1,47 @@
+/*
+ * Copyright (C) 2014 Synthetos LLC. All Rights reserved.
+ * http://www.synthetos.com
+ */
+package tgfx.event;
+
+/**
+ * What a {@link TinygEvent} is about, and what its argument holds.
+ * <p>
+ * Conflated types only say "look at the model again". A subscriber that is
+ * behind gets the latest one of those instead of every one.
+ */
+public enum EventType {
+
+    //The Machine, Axis and Motor models took a status report
+    STATUS_REPORT(true),
+    //Argument: the RX buffer bytes available
+    BUFFER_UPDATE(true),
+    //The machine settings changed
+    MACHINE_UPDATE(true),
+    //Argument: the axis whose settings came in
+    AXIS_SETTINGS(false),
+    //Argument: the motor whose settings came in
+    MOTOR_SETTINGS(false),
+    //Argument: a line for the console
+    TEXTMODE_REPORT(false),
+    //Argument: a message from TinyG for the user
+    TINYG_USER_MESSAGE(false),
+    //TinyG did not answer while we were connecting
+    TINYG_CONNECTION_TIMEOUT(false),
+    BUILD_OK(false),
+    //Argument: the firmware build we found, which is too old
+    BUILD_ERROR(false),
+    //The firmware updater asks us to let go of the port
+    DISCONNECT(false),
+    //The firmware updater is done with the port
+    RECONNECT(false);
+    private final boolean conflated;
+
+    private EventType(boolean conflated) {
+        this.conflated = conflated;
+    }
+
+    public boolean isConflated() {
+        return conflated;
+    }
+}
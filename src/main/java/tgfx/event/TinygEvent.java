@@ -0,0 +1,50 @@
+/*
+ * Copyright (C) 2014 Synthetos LLC. All Rights reserved.
+ * http://www.synthetos.com
+ */
+package tgfx.event;
+
+/**
+ * An event published on the {@link EventBus}. Events are immutable, the
+ * same one is handed to every subscriber on whatever thread they asked for.
+ */
+public final class TinygEvent {
+
+    private static final TinygEvent[] BARE = new TinygEvent[EventType.values().length];
+
+    static {
+        for (EventType type : EventType.values()) {
+            BARE[type.ordinal()] = new TinygEvent(type, null);
+        }
+    }
+    private final EventType type;
+    private final String argument;
+
+    public TinygEvent(EventType type, String argument) {
+        this.type = type;
+        this.argument = argument;
+    }
+
+    /**
+     * @return an event of that type, the shared one if there is no argument
+     */
+    public static TinygEvent of(EventType type, String argument) {
+        return argument == null ? BARE[type.ordinal()] : new TinygEvent(type, argument);
+    }
+
+    public EventType getType() {
+        return type;
+    }
+
+    /**
+     * @return what {@link EventType} says, or null
+     */
+    public String getArgument() {
+        return argument;
+    }
+
+    @Override
+    public String toString() {
+        return argument == null ? type.toString() : type + " " + argument;
+    }
+}
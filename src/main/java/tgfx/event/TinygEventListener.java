@@ -0,0 +1,13 @@
+/*
+ * Copyright (C) 2014 Synthetos LLC. All Rights reserved.
+ * http://www.synthetos.com
+ */
+package tgfx.event;
+
+/**
+ * A subscriber of the {@link EventBus}.
+ */
+public interface TinygEventListener {
+
+    void onEvent(TinygEvent event);
+}
@@ -0,0 +1,154 @@
+/*
+ * Copyright (C) 2014 Synthetos LLC. All Rights reserved.
+ * http://www.synthetos.com
+ */
+package tgfx.metrics;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import org.apache.log4j.Logger;
+
+/**
+ * The <code>CsvReporter</code> class appends a row of every metric to
+ * tgfx-metrics.csv in a directory, every interval, so a multi-hour job can
+ * be followed with tail or loaded into a spreadsheet afterwards.
+ * <p>
+ * The file rolls like a log once it grows past its size limit:
+ * tgfx-metrics.csv becomes tgfx-metrics.1.csv and so on, the oldest one is
+ * deleted. It also rolls when metrics are added, so every file has one
+ * header that fits all of its rows.
+ */
+public class CsvReporter implements Runnable {
+
+    private static final Logger logger = Logger.getLogger(CsvReporter.class);
+    private static final String BASE_NAME = "tgfx-metrics";
+    private final MetricsRegistry registry;
+    private final File directory;
+    private final long intervalMillis;
+    private long maxBytes = 10 * 1024 * 1024;
+    private int maxFiles = 5;
+    private volatile boolean RUN = true;
+    private Writer writer;
+    private long written;
+    private List<String> columns = new ArrayList<>();
+
+    public CsvReporter(MetricsRegistry registry, File directory, long intervalMillis) {
+        this.registry = registry;
+        this.directory = directory;
+        this.intervalMillis = intervalMillis;
+    }
+
+    /**
+     * Starts reporting on a daemon thread.
+     */
+    public void start() {
+        Thread t = new Thread(this, "CsvReporter");
+        t.setDaemon(true);
+        t.start();
+    }
+
+    public void stop() {
+        RUN = false;
+    }
+
+    @Override
+    public void run() {
+        try {
+            while (RUN) {
+                report();
+                Thread.sleep(intervalMillis);
+            }
+        } catch (InterruptedException ex) {
+            logger.info("Metrics reporting interrupted");
+        } finally {
+            close();
+        }
+    }
+
+    /**
+     * Writes one row, rolling the file first if it is due.
+     */
+    void report() {
+        Map<String, Long> values = registry.snapshot();
+        try {
+            List<String> names = new ArrayList<>(values.keySet());
+            if (writer == null || written > maxBytes || !names.equals(columns)) {
+                roll(names);
+            }
+            StringBuilder row = new StringBuilder();
+            row.append(System.currentTimeMillis());
+            for (Long value : values.values()) {
+                row.append(',').append(value);
+            }
+            write(row);
+        } catch (IOException ex) {
+            logger.error("Error writing metrics to " + directory + ": " + ex.getMessage());
+            close();
+        }
+    }
+
+    private void roll(List<String> names) throws IOException {
+        close();
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Could not create " + directory);
+        }
+        File current = file(0);
+        if (current.exists()) {
+            file(maxFiles - 1).delete();
+            for (int i = maxFiles - 2; i >= 0; i--) {
+                file(i).renameTo(file(i + 1));
+            }
+        }
+        writer = new OutputStreamWriter(new FileOutputStream(current), Charset.forName("US-ASCII"));
+        written = 0;
+        columns = names;
+        StringBuilder header = new StringBuilder("time");
+        for (String name : names) {
+            header.append(',').append(name);
+        }
+        write(header);
+    }
+
+    private File file(int index) {
+        return new File(directory, index == 0 ? BASE_NAME + ".csv" : BASE_NAME + "." + index + ".csv");
+    }
+
+    private void write(StringBuilder line) throws IOException {
+        line.append('\n');
+        writer.write(line.toString());
+        writer.flush();
+        written += line.length();
+    }
+
+    private void close() {
+        if (writer != null) {
+            try {
+                writer.close();
+            } catch (IOException ex) {
+                logger.error("Error closing the metrics file: " + ex.getMessage());
+            }
+            writer = null;
+        }
+    }
+
+    /**
+     * @param maxBytes the size a file may grow to before it is rolled
+     */
+    public void setMaxBytes(long maxBytes) {
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * @param maxFiles how many files to keep, the current one included
+     */
+    public void setMaxFiles(int maxFiles) {
+        this.maxFiles = maxFiles;
+    }
+}
@@ -0,0 +1,13 @@
+/*
+ * Copyright (C) 2014 Synthetos LLC. All Rights reserved.
+ * http://www.synthetos.com
+ */
+package tgfx.metrics;
+
+/**
+ * A value read when the metrics are exported, like the depth of a queue.
+ */
+public interface Gauge {
+
+    long value();
+}
@@ -0,0 +1,102 @@
+/*
+ * Copyright (C) 2014 Synthetos LLC. All Rights reserved.
+ * http://www.synthetos.com
+ */
+package tgfx.metrics;
+
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+import javax.management.Attribute;
+import javax.management.AttributeList;
+import javax.management.AttributeNotFoundException;
+import javax.management.DynamicMBean;
+import javax.management.JMException;
+import javax.management.MBeanAttributeInfo;
+import javax.management.MBeanInfo;
+import javax.management.MBeanOperationInfo;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import org.apache.log4j.Logger;
+
+/**
+ * The <code>JmxExporter</code> class publishes the MetricsRegistry as one
+ * read only MBean, tgfx:type=Metrics, with an attribute per metric. Point
+ * jconsole or VisualVM at tgFX to watch a job from outside the GUI.
+ * <p>
+ * The attribute list is read when a client asks for it, so metrics
+ * registered later show up once the client refreshes.
+ */
+public class JmxExporter implements DynamicMBean {
+
+    private static final Logger logger = Logger.getLogger(JmxExporter.class);
+    public static final String OBJECT_NAME = "tgfx:type=Metrics";
+    private final MetricsRegistry registry;
+
+    public JmxExporter(MetricsRegistry registry) {
+        this.registry = registry;
+    }
+
+    /**
+     * Registers the registry with the platform MBean server, once.
+     */
+    public static void register(MetricsRegistry registry) {
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName name = new ObjectName(OBJECT_NAME);
+            if (!server.isRegistered(name)) {
+                server.registerMBean(new JmxExporter(registry), name);
+            }
+        } catch (JMException ex) {
+            logger.error("Could not register the metrics with JMX: " + ex.getMessage());
+        }
+    }
+
+    @Override
+    public Object getAttribute(String attribute) throws AttributeNotFoundException {
+        Long value = registry.snapshot().get(attribute);
+        if (value == null) {
+            throw new AttributeNotFoundException(attribute);
+        }
+        return value;
+    }
+
+    @Override
+    public void setAttribute(Attribute attribute) throws AttributeNotFoundException {
+        throw new AttributeNotFoundException("Metrics are read only");
+    }
+
+    @Override
+    public AttributeList getAttributes(String[] attributes) {
+        Map<String, Long> values = registry.snapshot();
+        AttributeList list = new AttributeList();
+        for (String attribute : attributes) {
+            Long value = values.get(attribute);
+            if (value != null) {
+                list.add(new Attribute(attribute, value));
+            }
+        }
+        return list;
+    }
+
+    @Override
+    public AttributeList setAttributes(AttributeList attributes) {
+        return new AttributeList();
+    }
+
+    @Override
+    public Object invoke(String actionName, Object[] params, String[] signature) {
+        throw new UnsupportedOperationException(actionName);
+    }
+
+    @Override
+    public MBeanInfo getMBeanInfo() {
+        Map<String, Long> values = registry.snapshot();
+        MBeanAttributeInfo[] attributes = new MBeanAttributeInfo[values.size()];
+        int i = 0;
+        for (String name : values.keySet()) {
+            attributes[i++] = new MBeanAttributeInfo(name, Long.class.getName(), name, true, false, false);
+        }
+        return new MBeanInfo(getClass().getName(), "tgFX pipeline metrics", attributes,
+                null, new MBeanOperationInfo[0], null);
+    }
+}
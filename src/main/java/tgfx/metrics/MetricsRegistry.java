@@ -0,0 +1,100 @@
+/*
+ * Copyright (C) 2014 Synthetos LLC. All Rights reserved.
+ * http://www.synthetos.com
+ */
+package tgfx.metrics;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+import tgfx.utility.LatencyHistogram;
+
+/**
+ * The <code>MetricsRegistry</code> class holds tgFX's counters, gauges and
+ * histograms by name, for the JMX and CSV exporters.
+ * <p>
+ * Hot paths keep the counter or histogram they got from the registry and
+ * update it directly, the registry is only looked at when the metrics are
+ * exported. Names are dotted, like "parser.errors", and export in sorted
+ * order.
+ *
+ * @see JmxExporter
+ * @see CsvReporter
+ */
+public class MetricsRegistry {
+
+    private static final double[] HISTOGRAM_PERCENTILES = {50, 99, 99.9};
+    private static final String[] HISTOGRAM_SUFFIXES = {".p50", ".p99", ".p999"};
+    private final ConcurrentSkipListMap<String, Object> metrics = new ConcurrentSkipListMap<>();
+
+    MetricsRegistry() {
+    }
+
+    public static MetricsRegistry getInstance() {
+        return MetricsRegistryHolder.INSTANCE;
+    }
+
+    /**
+     * @return the counter of that name, created the first time it is asked
+     * for
+     */
+    public StripedCounter counter(String name) {
+        Object metric = metrics.get(name);
+        if (metric == null) {
+            StripedCounter counter = new StripedCounter();
+            metric = metrics.putIfAbsent(name, counter);
+            if (metric == null) {
+                return counter;
+            }
+        }
+        return (StripedCounter) metric;
+    }
+
+    /**
+     * Registers a gauge, replacing one of the same name.
+     */
+    public void gauge(String name, Gauge gauge) {
+        metrics.put(name, gauge);
+    }
+
+    /**
+     * Registers a histogram somebody else records into, replacing one of the
+     * same name. It exports as name.count, name.p50, name.p99, name.p999 and
+     * name.max.
+     */
+    public void histogram(String name, LatencyHistogram histogram) {
+        metrics.put(name, histogram);
+    }
+
+    /**
+     * @return the value of every metric right now, in name order
+     */
+    public Map<String, Long> snapshot() {
+        Map<String, Long> values = new LinkedHashMap<>();
+        for (Map.Entry<String, Object> entry : metrics.entrySet()) {
+            String name = entry.getKey();
+            Object metric = entry.getValue();
+            if (metric instanceof StripedCounter) {
+                values.put(name, ((StripedCounter) metric).get());
+            } else if (metric instanceof Gauge) {
+                values.put(name, ((Gauge) metric).value());
+            } else {
+                LatencyHistogram histogram = (LatencyHistogram) metric;
+                values.put(name + ".count", histogram.getCount());
+                for (int i = 0; i < HISTOGRAM_PERCENTILES.length; i++) {
+                    values.put(name + HISTOGRAM_SUFFIXES[i], histogram.getValueAtPercentile(HISTOGRAM_PERCENTILES[i]));
+                }
+                values.put(name + ".max", histogram.getMax());
+            }
+        }
+        return values;
+    }
+
+    /**
+     * usual IBM-approved singleton helper class.
+     */
+    private static class MetricsRegistryHolder {
+
+        private static final MetricsRegistry INSTANCE = new MetricsRegistry();
+    }
+}
@@ -0,0 +1,240 @@
+/*
+ * Copyright (C) 2014 Synthetos LLC. All Rights reserved.
+ * http://www.synthetos.com
+ */
+package tgfx.metrics;
+
+import java.io.File;
+import tgfx.CreditFlowController;
+import tgfx.PlannerMonitor;
+import tgfx.PlannerStreamer;
+import tgfx.SerialDriver;
+import tgfx.SerialOutput;
+import tgfx.SerialWriter;
+import tgfx.system.Machine;
+import tgfx.tinyg.QueueReport;
+import tgfx.tinyg.TinygDriver;
+
+/**
+ * The <code>PipelineMetrics</code> class registers gauges for the queues and
+ * driver state of the streaming pipeline and starts the exporters.
+ * <p>
+ * The metrics are always published over JMX. The CSV file is only written
+ * when tgFX is started with -Dtgfx.metrics.dir=some/directory, every
+ * tgfx.metrics.interval milliseconds (5000 by default).
+ */
+public final class PipelineMetrics {
+
+    public static final String DIRECTORY_PROPERTY = "tgfx.metrics.dir";
+    public static final String INTERVAL_PROPERTY = "tgfx.metrics.interval";
+    private static final long DEFAULT_INTERVAL = 5000;
+
+    private PipelineMetrics() {
+    }
+
+    public static void start(TinygDriver tg) {
+        MetricsRegistry registry = MetricsRegistry.getInstance();
+        register(registry, tg);
+        JmxExporter.register(registry);
+        String directory = System.getProperty(DIRECTORY_PROPERTY);
+        if (directory != null) {
+            long interval = Long.getLong(INTERVAL_PROPERTY, DEFAULT_INTERVAL);
+            new CsvReporter(registry, new File(directory), interval).start();
+        }
+    }
+
+    static void register(MetricsRegistry registry, TinygDriver tg) {
+        final SerialWriter writer = tg.serialWriter;
+        final CreditFlowController flow = writer.getFlowController();
+        final PlannerStreamer planner = writer.getPlannerStreamer();
+        final PlannerMonitor monitor = writer.getPlannerMonitor();
+        final SerialOutput output = SerialDriver.getInstance().getSerialOutput();
+        final QueueReport qr = tg.qr;
+        final Machine machine = tg.machine;
+
+        registry.gauge("writer.queue.depth", new Gauge() {
+            @Override
+            public long value() {
+                return TinygDriver.writerQueue.size();
+            }
+        });
+        registry.gauge("writer.bufferAvailable", new Gauge() {
+            @Override
+            public long value() {
+                return writer.getBufferValue();
+            }
+        });
+        registry.gauge("writer.linesInFlight", new Gauge() {
+            @Override
+            public long value() {
+                return flow.getLinesInFlight();
+            }
+        });
+        registry.gauge("writer.linesSent", new Gauge() {
+            @Override
+            public long value() {
+                return flow.getLinesSent();
+            }
+        });
+        registry.gauge("writer.linesAcked", new Gauge() {
+            @Override
+            public long value() {
+                return flow.getLinesAcked();
+            }
+        });
+        registry.gauge("writer.rxMismatches", new Gauge() {
+            @Override
+            public long value() {
+                return flow.getRxMismatches();
+            }
+        });
+        registry.gauge("writer.unmatchedFooters", new Gauge() {
+            @Override
+            public long value() {
+                return flow.getUnmatchedFooters();
+            }
+        });
+        registry.gauge("writer.waits", new Gauge() {
+            @Override
+            public long value() {
+                return flow.getWriterWaits();
+            }
+        });
+        registry.gauge("writer.batchWrites", new Gauge() {
+            @Override
+            public long value() {
+                return writer.getBatchWrites();
+            }
+        });
+        registry.gauge("writer.batchedLines", new Gauge() {
+            @Override
+            public long value() {
+                return writer.getBatchedLines();
+            }
+        });
+        registry.gauge("json.queue.depth", new Gauge() {
+            @Override
+            public long value() {
+                return TinygDriver.jsonQueue.size();
+            }
+        });
+        registry.gauge("json.queue.highWaterMark", new Gauge() {
+            @Override
+            public long value() {
+                return TinygDriver.jsonQueue.getHighWaterMark();
+            }
+        });
+        registry.gauge("json.queue.overflows", new Gauge() {
+            @Override
+            public long value() {
+                return TinygDriver.jsonQueue.getOverflowCount();
+            }
+        });
+        registry.gauge("json.queue.backpressure", new Gauge() {
+            @Override
+            public long value() {
+                return TinygDriver.jsonQueue.getBackpressureCount();
+            }
+        });
+        registry.gauge("qr.pba", new Gauge() {
+            @Override
+            public long value() {
+                return qr.getPba();
+            }
+        });
+        registry.gauge("qr.added", new Gauge() {
+            @Override
+            public long value() {
+                return qr.getAdded();
+            }
+        });
+        registry.gauge("qr.removed", new Gauge() {
+            @Override
+            public long value() {
+                return qr.getRemoved();
+            }
+        });
+        registry.gauge("planner.holds", new Gauge() {
+            @Override
+            public long value() {
+                return planner.getHolds();
+            }
+        });
+        registry.gauge("planner.staleReleases", new Gauge() {
+            @Override
+            public long value() {
+                return planner.getStaleReleases();
+            }
+        });
+        registry.gauge("planner.occupancy", new Gauge() {
+            @Override
+            public long value() {
+                return monitor.getOccupancy();
+            }
+        });
+        registry.gauge("planner.starvations", new Gauge() {
+            @Override
+            public long value() {
+                return monitor.getStarvations();
+            }
+        });
+        registry.gauge("planner.starvedNanos", new Gauge() {
+            @Override
+            public long value() {
+                return monitor.getStarvedNanos();
+            }
+        });
+        registry.gauge("output.bulkLines", new Gauge() {
+            @Override
+            public long value() {
+                return output.getBulkLines();
+            }
+        });
+        registry.gauge("output.bulkBytes", new Gauge() {
+            @Override
+            public long value() {
+                return output.getBulkBytes();
+            }
+        });
+        registry.gauge("output.realtimeWrites", new Gauge() {
+            @Override
+            public long value() {
+                return output.getRealtimeWrites();
+            }
+        });
+        registry.gauge("output.preemptions", new Gauge() {
+            @Override
+            public long value() {
+                return output.getPreemptions();
+            }
+        });
+        registry.gauge("output.realtimeBudgetMisses", new Gauge() {
+            @Override
+            public long value() {
+                return output.getRealtimeBudgetMisses();
+            }
+        });
+        //Read from the snapshot, the FX properties are not ours to touch
+        registry.gauge("machine.lineNumber", new Gauge() {
+            @Override
+            public long value() {
+                return machine.getSnapshot().getLineNumber();
+            }
+        });
+        registry.gauge("machine.state", new Gauge() {
+            @Override
+            public long value() {
+                return machine.getSnapshot().getMachineState();
+            }
+        });
+        registry.gauge("machine.statusReports", new Gauge() {
+            @Override
+            public long value() {
+                return machine.getSnapshot().getSequence();
+            }
+        });
+        registry.histogram("latency.queuedNanos", flow.getLatency().getQueued());
+        registry.histogram("latency.inFlightNanos", flow.getLatency().getInFlight());
+        registry.histogram("latency.totalNanos", flow.getLatency().getTotal());
+    }
+}
@@ -0,0 +1,47 @@
+/*
+ * Copyright (C) 2014 Synthetos LLC. All Rights reserved.
+ * http://www.synthetos.com
+ */
+package tgfx.metrics;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * The <code>StripedCounter</code> class is a counter that many threads can
+ * bump at once without fighting over one cache line.
+ * <p>
+ * Each thread adds to one of several cells picked by its id, and the cells
+ * are a cache line apart. Reading sums the cells, so a read while others add
+ * is only as current as the cells it has passed. This is what LongAdder does
+ * on Java 8, we still build for Java 7.
+ */
+public class StripedCounter {
+
+    //Longs per cache line, the cells sit this far apart
+    private static final int PAD = 8;
+    //Twice the cpus rounded up to a power of two, so few threads share a cell
+    private static final int STRIPES = Integer.highestOneBit(Runtime.getRuntime().availableProcessors() * 4 - 1);
+    private final AtomicLongArray cells = new AtomicLongArray(STRIPES * PAD);
+
+    public void increment() {
+        add(1);
+    }
+
+    public void add(long delta) {
+        cells.addAndGet(cell(), delta);
+    }
+
+    private static int cell() {
+        long id = Thread.currentThread().getId();
+        int h = (int) (id ^ (id >>> 32)) * 0x9E3779B9;
+        return ((h >>> 16) & (STRIPES - 1)) * PAD;
+    }
+
+    public long get() {
+        long sum = 0;
+        for (int i = 0; i < STRIPES; i++) {
+            sum += cells.get(i * PAD);
+        }
+        return sum;
+    }
+}
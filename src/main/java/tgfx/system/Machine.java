@@ -8,6 +8,7 @@ import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Iterator;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
 import javafx.beans.binding.NumberBinding;
 import javafx.beans.property.SimpleDoubleProperty;
 import javafx.beans.property.SimpleIntegerProperty;
@@ -18,6 +19,8 @@ import org.json.JSONObject;
 import tgfx.tinyg.TinygDriver;
 import org.apache.log4j.Logger;
 import org.json.JSONException;
+import tgfx.event.EventBus;
+import tgfx.event.EventType;
 import tgfx.hardwarePlatforms.HardwarePlatform;
 import tgfx.tinyg.responseCommand;
 
@@ -84,6 +87,10 @@ public final class Machine {
     private final Motor Motor3 = new Motor(3);
     private final Motor Motor4 = new Motor(4);
     public GcodeCoordinateManager gcm = new GcodeCoordinateManager();
+    //Status reports go into the builder on the parser thread and are published as snapshots
+    private final MachineSnapshot.Builder statusReport = new MachineSnapshot.Builder();
+    private final AtomicReference<MachineSnapshot> snapshot = new AtomicReference<>(MachineSnapshot.EMPTY);
+    private MachineSnapshot appliedSnapshot;  //only touched by the FX thread, null until the first apply
 
     public static enum motion_modes {
 //        [momo] motion_mode        - 0=traverse, 1=straight feed, 2=cw arc, 3=ccw arc
@@ -645,43 +652,47 @@ public final class Machine {
     }
 
     public void applyJsonStatusReport(responseCommand rc) {
+        applyStatusReportValue(rc.getSettingKey(), Double.valueOf(rc.getSettingValue()));
+    }
 
-
-        switch (rc.getSettingKey()) {
+    //Status reports come in several times a second while a job runs so the
+    //value is already a number here, no Strings are built for it.
+    //Nothing is applied to the FX properties here, see publishStatusReport().
+    public void applyStatusReportValue(String key, double value) {
+        switch (key) {
             case (MnemonicManager.MNEMONIC_STATUS_REPORT_LINE):
-                TinygDriver.getInstance().machine.setLineNumber(Integer.valueOf(rc.getSettingValue()));
-                setLineNumber(Integer.valueOf(rc.getSettingValue()));
+                statusReport.lineNumber((int) value);
                 break;
             case (MnemonicManager.MNEMONIC_STATUS_REPORT_MOTION_MODE):
-                TinygDriver.getInstance().machine.setMotionMode(Integer.valueOf(rc.getSettingValue()));
+                statusReport.motionMode((int) value);
                 break;
             //Machine Position Cases
             case (MnemonicManager.MNEMONIC_STATUS_REPORT_MACHINEPOSX):
-                TinygDriver.getInstance().machine.getAxisByName(rc.getSettingKey().charAt(3)).setMachinePosition(Double.valueOf(rc.getSettingValue()));
+                statusReport.machinePosition(MachineSnapshot.AXIS_X, value);
                 break;
             case (MnemonicManager.MNEMONIC_STATUS_REPORT_MACHINEPOSY):
-                TinygDriver.getInstance().machine.getAxisByName(rc.getSettingKey().charAt(3)).setMachinePosition(Double.valueOf(rc.getSettingValue()));
+                statusReport.machinePosition(MachineSnapshot.AXIS_Y, value);
                 break;
             case (MnemonicManager.MNEMONIC_STATUS_REPORT_MACHINEPOSZ):
-                TinygDriver.getInstance().machine.getAxisByName(rc.getSettingKey().charAt(3)).setMachinePosition(Double.valueOf(rc.getSettingValue()));
+                statusReport.machinePosition(MachineSnapshot.AXIS_Z, value);
                 break;
             case (MnemonicManager.MNEMONIC_STATUS_REPORT_MACHINEPOSA):
-                TinygDriver.getInstance().machine.getAxisByName(rc.getSettingKey().charAt(3)).setMachinePosition(Double.valueOf(rc.getSettingValue()));
+                statusReport.machinePosition(MachineSnapshot.AXIS_A, value);
                 break;
             case (MnemonicManager.MNEMONIC_STATUS_REPORT_WORKOFFSETX):
-                TinygDriver.getInstance().machine.getAxisByName(rc.getSettingKey().charAt(3)).setOffset(Double.valueOf(rc.getSettingValue()));
+                statusReport.offset(MachineSnapshot.AXIS_X, value);
                 break;
             case (MnemonicManager.MNEMONIC_STATUS_REPORT_WORKOFFSETY):
-                TinygDriver.getInstance().machine.getAxisByName(rc.getSettingKey().charAt(3)).setOffset(Double.valueOf(rc.getSettingValue()));
+                statusReport.offset(MachineSnapshot.AXIS_Y, value);
                 break;
             case (MnemonicManager.MNEMONIC_STATUS_REPORT_WORKOFFSETZ):
-                TinygDriver.getInstance().machine.getAxisByName(rc.getSettingKey().charAt(3)).setOffset(Double.valueOf(rc.getSettingValue()));
+                statusReport.offset(MachineSnapshot.AXIS_Z, value);
                 break;
             case (MnemonicManager.MNEMONIC_STATUS_REPORT_WORKOFFSETA):
-                TinygDriver.getInstance().machine.getAxisByName(rc.getSettingKey().charAt(3)).setOffset(Double.valueOf(rc.getSettingValue()));
+                statusReport.offset(MachineSnapshot.AXIS_A, value);
                 break;
             case (MnemonicManager.MNEMONIC_STATUS_REPORT_TINYG_DISTANCE_MODE):
-                TinygDriver.getInstance().machine.setGcodeDistanceMode(rc.getSettingValue());
+                statusReport.distanceMode((int) value);
                 break;
 
             /*
@@ -689,20 +700,84 @@ public final class Machine {
              */
 
             case (MnemonicManager.MNEMONIC_STATUS_REPORT_STAT):
-                TinygDriver.getInstance().machine.setMachineState(Integer.valueOf(rc.getSettingValue()));
+                statusReport.machineState((int) value);
                 break;
             case (MnemonicManager.MNEMONIC_STATUS_REPORT_UNIT):
-                TinygDriver.getInstance().machine.setGcodeUnits(Integer.valueOf(rc.getSettingValue()));
+                statusReport.units((int) value);
                 break;
             case (MnemonicManager.MNEMONIC_STATUS_REPORT_COORDNIATE_MODE):
-                TinygDriver.getInstance().machine.gcm.setCurrentGcodeCoordinateSystem(Integer.valueOf(rc.getSettingValue()));
+                statusReport.coordinateSystem((int) value);
                 break;
             case (MnemonicManager.MNEMONIC_STATUS_REPORT_VELOCITY):
-                TinygDriver.getInstance().machine.setVelocity(Double.valueOf(rc.getSettingValue()));
+                statusReport.velocity(value);
                 break;
         }
     }
 
+    /**
+     * Publishes the status report values applied so far as the new snapshot.
+     * Called by the ResponseParser once a status report is parsed.
+     */
+    public MachineSnapshot publishStatusReport() {
+        MachineSnapshot s = statusReport.build();
+        snapshot.set(s);
+        return s;
+    }
+
+    /**
+     * @return the state of the machine after the last status report, safe
+     * from any thread
+     */
+    public MachineSnapshot getSnapshot() {
+        return snapshot.get();
+    }
+
+    /**
+     * Brings the FX properties of the machine and its axes up to the latest
+     * snapshot. The first call sets every value, after that only what
+     * changed since the last call is set. FX thread only.
+     */
+    public void applySnapshot() {
+        MachineSnapshot s = snapshot.get();
+        MachineSnapshot old = appliedSnapshot;
+        if (s == old) {
+            return;
+        }
+        appliedSnapshot = s;
+        //Nothing to diff against the first time, the properties still hold their start values
+        boolean all = old == null;
+        if (all || s.getLineNumber() != old.getLineNumber()) {
+            setLineNumber(s.getLineNumber());
+        }
+        if (all || s.getMotionMode() != old.getMotionMode()) {
+            setMotionMode(s.getMotionMode());
+        }
+        Axis[] axes = {x, y, z, a};
+        for (int i = 0; i < MachineSnapshot.AXES; i++) {
+            if (all || s.getMachinePosition(i) != old.getMachinePosition(i)) {
+                axes[i].setMachinePosition(s.getMachinePosition(i));
+            }
+            if (all || s.getOffset(i) != old.getOffset(i)) {
+                axes[i].setOffset(s.getOffset(i));
+            }
+        }
+        if (all || s.getDistanceMode() != old.getDistanceMode()) {
+            setGcodeDistanceMode(s.getDistanceMode());
+        }
+        if (all || s.getMachineState() != old.getMachineState()) {
+            setMachineState(s.getMachineState());
+        }
+        if (all || s.getUnits() != old.getUnits()) {
+            setGcodeUnits(s.getUnits());
+        }
+        if (all || s.getCoordinateSystem() != old.getCoordinateSystem()) {
+            gcm.setCurrentGcodeCoordinateSystem(s.getCoordinateSystem());
+        }
+        if (all || s.getVelocity() != old.getVelocity()) {
+            setVelocity(s.getVelocity());
+        }
+    }
+
 //This is the main method to parser a JSON sys object
     public void applyJsonSystemSetting(JSONObject js, String parent) throws IOException {
         logger.info("Applying JSON Object to System Group");
@@ -711,9 +786,17 @@ public final class Machine {
             while (ii.hasNext()) {
                 String _key = ii.next().toString();
                 String _val = js.get(_key).toString();
-                final responseCommand rc = new responseCommand(parent, _key, _val);
+                applyJsonSystemSetting(new responseCommand(parent, _key, _val));
+            }
+        } catch (JSONException ex) {
+            logger.error("Error in ApplyJsonSystemSetting in Machine:SYS group");
+        }
 
-                switch (_key) {
+    }
+
+    public void applyJsonSystemSetting(responseCommand rc) throws IOException {
+        try {
+            switch (rc.getSettingKey()) {
 
                     case (MnemonicManager.MNEMONIC_SYSTEM_BAUDRATE):
                         logger.info("[APPLIED:" + rc.getSettingParent() + " " + rc.getSettingKey() + ":" + rc.getSettingValue());
@@ -806,11 +889,7 @@ public final class Machine {
                     case (MnemonicManager.MNEMONIC_SYSTEM_SWITCH_TYPE):
                         logger.info("[APPLIED:" + rc.getSettingParent() + " " + rc.getSettingKey() + ":" + rc.getSettingValue());
                         TinygDriver.getInstance().machine.setSwitchType(Integer.valueOf(rc.getSettingValue()));
-                        String[] message = new String[2];
-                        message[0] = "MACHINE_UPDATE";
-                        message[1] = null;
-                        TinygDriver.getInstance().resParse.set_Changed();
-                        TinygDriver.getInstance().resParse.notifyObservers(message);
+                        EventBus.getInstance().publish(EventType.MACHINE_UPDATE, null);
                         break;
 
                     case (MnemonicManager.MNEMONIC_SYSTEM_TEXT_VOBERSITY):
@@ -822,7 +901,6 @@ public final class Machine {
                         this.setHardwareId(rc.getSettingValue());
                         break;
                 }
-            }
         } catch (JSONException | NumberFormatException ex) {
             logger.error("Error in ApplyJsonSystemSetting in Machine:SYS group");
         }
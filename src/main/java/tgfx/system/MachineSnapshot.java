@@ -0,0 +1,205 @@
+/*
+ * Copyright (C) 2014 Synthetos LLC. All Rights reserved.
+ * http://www.synthetos.com
+ */
+package tgfx.system;
+
+import java.util.Locale;
+
+/**
+ * The <code>MachineSnapshot</code> class is the state of the machine after
+ * one status report: positions, offsets, velocity, state, line number,
+ * coordinate system and units.
+ * <p>
+ * Snapshots never change. The ResponseParser builds a new one for every
+ * status report and {@link Machine#getSnapshot()} hands out the latest, so
+ * any thread can read a consistent state without a lock and without
+ * touching the FX properties of Machine and Axis. Values are kept as TinyG
+ * reports them: positions in mm, units, states and modes as their numbers.
+ */
+public final class MachineSnapshot {
+
+    //The axes that are in status reports
+    public static final int AXIS_X = 0;
+    public static final int AXIS_Y = 1;
+    public static final int AXIS_Z = 2;
+    public static final int AXIS_A = 3;
+    public static final int AXES = 4;
+    public static final MachineSnapshot EMPTY = new Builder().build(0);
+    private final long sequence;
+    private final int lineNumber;
+    private final int machineState;
+    private final int motionMode;
+    private final int units;
+    private final int coordinateSystem;
+    private final int distanceMode;
+    private final double velocity;
+    private final double[] machinePosition;
+    private final double[] offset;
+
+    private MachineSnapshot(Builder b, long sequence) {
+        this.sequence = sequence;
+        this.lineNumber = b.lineNumber;
+        this.machineState = b.machineState;
+        this.motionMode = b.motionMode;
+        this.units = b.units;
+        this.coordinateSystem = b.coordinateSystem;
+        this.distanceMode = b.distanceMode;
+        this.velocity = b.velocity;
+        this.machinePosition = b.machinePosition.clone();
+        this.offset = b.offset.clone();
+    }
+
+    /**
+     * @return counts up with every snapshot, a reader can tell if it has
+     * seen this one
+     */
+    public long getSequence() {
+        return sequence;
+    }
+
+    public int getLineNumber() {
+        return lineNumber;
+    }
+
+    /**
+     * @return the stat value, 1 reset to 9 jog, 0 before the first report
+     */
+    public int getMachineState() {
+        return machineState;
+    }
+
+    /**
+     * @return the momo value, 0 traverse to 3 ccw arc
+     */
+    public int getMotionMode() {
+        return motionMode;
+    }
+
+    /**
+     * @return 0 for inches, 1 for mm
+     */
+    public int getUnits() {
+        return units;
+    }
+
+    /**
+     * @return 1 for G54 to 6 for G59
+     */
+    public int getCoordinateSystem() {
+        return coordinateSystem;
+    }
+
+    /**
+     * @return 0 for absolute, 1 for incremental
+     */
+    public int getDistanceMode() {
+        return distanceMode;
+    }
+
+    public double getVelocity() {
+        return velocity;
+    }
+
+    /**
+     * @param axis {@link #AXIS_X} to {@link #AXIS_A}
+     */
+    public double getMachinePosition(int axis) {
+        return machinePosition[axis];
+    }
+
+    /**
+     * @param axis {@link #AXIS_X} to {@link #AXIS_A}
+     */
+    public double getOffset(int axis) {
+        return offset[axis];
+    }
+
+    /**
+     * @param axis {@link #AXIS_X} to {@link #AXIS_A}
+     * @return the machine position less the work offset
+     */
+    public double getWorkPosition(int axis) {
+        return machinePosition[axis] - offset[axis];
+    }
+
+    @Override
+    public String toString() {
+        return String.format(Locale.US, "N%d stat %d momo %d unit %d coor %d vel %.3f"
+                + " X%.3f Y%.3f Z%.3f A%.3f", lineNumber, machineState, motionMode, units,
+                coordinateSystem, velocity, getWorkPosition(AXIS_X), getWorkPosition(AXIS_Y),
+                getWorkPosition(AXIS_Z), getWorkPosition(AXIS_A));
+    }
+
+    /**
+     * Collects the values of a status report. A builder starts out with the
+     * values of the last snapshot, status reports only hold what changed.
+     * Not thread safe, it belongs to the thread that parses.
+     */
+    public static class Builder {
+
+        private long sequence = 0;
+        private int lineNumber = 0;
+        private int machineState = 0;
+        private int motionMode = 0;
+        private int units = 1;
+        private int coordinateSystem = 1;
+        private int distanceMode = 0;
+        private double velocity = 0;
+        private final double[] machinePosition = new double[AXES];
+        private final double[] offset = new double[AXES];
+
+        public Builder lineNumber(int lineNumber) {
+            this.lineNumber = lineNumber;
+            return this;
+        }
+
+        public Builder machineState(int machineState) {
+            this.machineState = machineState;
+            return this;
+        }
+
+        public Builder motionMode(int motionMode) {
+            this.motionMode = motionMode;
+            return this;
+        }
+
+        public Builder units(int units) {
+            this.units = units;
+            return this;
+        }
+
+        public Builder coordinateSystem(int coordinateSystem) {
+            this.coordinateSystem = coordinateSystem;
+            return this;
+        }
+
+        public Builder distanceMode(int distanceMode) {
+            this.distanceMode = distanceMode;
+            return this;
+        }
+
+        public Builder velocity(double velocity) {
+            this.velocity = velocity;
+            return this;
+        }
+
+        public Builder machinePosition(int axis, double position) {
+            machinePosition[axis] = position;
+            return this;
+        }
+
+        public Builder offset(int axis, double offset) {
+            this.offset[axis] = offset;
+            return this;
+        }
+
+        public MachineSnapshot build() {
+            return build(++sequence);
+        }
+
+        private MachineSnapshot build(long sequence) {
+            return new MachineSnapshot(this, sequence);
+        }
+    }
+}
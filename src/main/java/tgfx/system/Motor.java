@@ -151,6 +151,48 @@ public class Motor {
         this.tr = travel_per_revolution;
     }
 
+    public void applyJsonSystemSetting(responseCommand rc) {
+        try {
+            switch (rc.getSettingKey()) {
+                case (MnemonicManager.MNEMONIC_MOTOR_MAP_AXIS):
+                    TinygDriver.getInstance().machine.getMotorByNumber(Integer.valueOf(rc.getSettingParent())).setMapToAxis(Integer.valueOf(rc.getSettingValue()));
+                    logger.info("[APPLIED:" + rc.getSettingParent() + " " + rc.getSettingKey() + ":" + rc.getSettingValue());
+                    break;
+
+                case (MnemonicManager.MNEMONIC_MOTOR_MICROSTEPS):
+                    TinygDriver.getInstance().machine.getMotorByNumber(Integer.valueOf(rc.getSettingParent())).setMicrosteps(Integer.valueOf(rc.getSettingValue()));
+                    logger.info("[APPLIED:" + rc.getSettingParent() + " " + rc.getSettingKey() + ":" + rc.getSettingValue());
+                    break;
+
+                case (MnemonicManager.MNEMONIC_MOTOR_POLARITY):
+                    TinygDriver.getInstance().machine.getMotorByNumber(Integer.valueOf(rc.getSettingParent())).setPolarity(Integer.valueOf(rc.getSettingValue()));
+                    logger.info("[APPLIED:" + rc.getSettingParent() + " " + rc.getSettingKey() + ":" + rc.getSettingValue());
+                    break;
+
+                case (MnemonicManager.MNEMONIC_MOTOR_POWER_MANAGEMENT):
+                    TinygDriver.getInstance().machine.getMotorByNumber(Integer.valueOf(rc.getSettingParent())).setPower_management(Integer.valueOf(rc.getSettingValue()));
+                    logger.info("[APPLIED:" + rc.getSettingParent() + " " + rc.getSettingKey() + ":" + rc.getSettingValue());
+                    break;
+
+                case (MnemonicManager.MNEMONIC_MOTOR_STEP_ANGLE):
+                    TinygDriver.getInstance().machine.getMotorByNumber(Integer.valueOf(rc.getSettingParent())).setStep_angle(Float.valueOf(rc.getSettingValue()));
+                    logger.info("[APPLIED:" + rc.getSettingParent() + " " + rc.getSettingKey() + ":" + rc.getSettingValue());
+                    break;
+
+                case (MnemonicManager.MNEMONIC_MOTOR_TRAVEL_PER_REVOLUTION):
+                    TinygDriver.getInstance().machine.getMotorByNumber(Integer.valueOf(rc.getSettingParent())).setTravel_per_revolution(Float.valueOf(rc.getSettingValue()));
+                    logger.info("[APPLIED:" + rc.getSettingParent() + " " + rc.getSettingKey() + ":" + rc.getSettingValue());
+                    break;
+                default:
+                    logger.info("Default Switch");
+
+
+            }
+        } catch (Exception ex) {
+            logger.error("Error in applyJsonSystemSetting in Motor");
+        }
+    }
+
     //This is the main method to parser a JSON Motor object
 public void applyJsonSystemSetting(JSONObject js, String parent) {
         logger.info("Applying JSON Object to " + parent + " Group");
@@ -159,43 +201,7 @@ public void applyJsonSystemSetting(JSONObject js, String parent) {
             while (ii.hasNext()) {
                 String _key = ii.next().toString();
                 String _val = js.get(_key).toString();
-                responseCommand rc = new responseCommand(parent, _key, _val);
-
-                switch (_key) {
-                    case (MnemonicManager.MNEMONIC_MOTOR_MAP_AXIS):
-                        TinygDriver.getInstance().machine.getMotorByNumber(Integer.valueOf(rc.getSettingParent())).setMapToAxis(Integer.valueOf(rc.getSettingValue()));
-                        logger.info("[APPLIED:" + rc.getSettingParent() + " " + rc.getSettingKey() + ":" + rc.getSettingValue());
-                        break;
-
-                    case (MnemonicManager.MNEMONIC_MOTOR_MICROSTEPS):
-                        TinygDriver.getInstance().machine.getMotorByNumber(Integer.valueOf(rc.getSettingParent())).setMicrosteps(Integer.valueOf(rc.getSettingValue()));
-                        logger.info("[APPLIED:" + rc.getSettingParent() + " " + rc.getSettingKey() + ":" + rc.getSettingValue());
-                        break;
-
-                    case (MnemonicManager.MNEMONIC_MOTOR_POLARITY):
-                        TinygDriver.getInstance().machine.getMotorByNumber(Integer.valueOf(rc.getSettingParent())).setPolarity(Integer.valueOf(rc.getSettingValue()));
-                        logger.info("[APPLIED:" + rc.getSettingParent() + " " + rc.getSettingKey() + ":" + rc.getSettingValue());
-                        break;
-
-                    case (MnemonicManager.MNEMONIC_MOTOR_POWER_MANAGEMENT):
-                        TinygDriver.getInstance().machine.getMotorByNumber(Integer.valueOf(rc.getSettingParent())).setPower_management(Integer.valueOf(rc.getSettingValue()));
-                        logger.info("[APPLIED:" + rc.getSettingParent() + " " + rc.getSettingKey() + ":" + rc.getSettingValue());
-                        break;
-
-                    case (MnemonicManager.MNEMONIC_MOTOR_STEP_ANGLE):
-                        TinygDriver.getInstance().machine.getMotorByNumber(Integer.valueOf(rc.getSettingParent())).setStep_angle(Float.valueOf(rc.getSettingValue()));
-                        logger.info("[APPLIED:" + rc.getSettingParent() + " " + rc.getSettingKey() + ":" + rc.getSettingValue());
-                        break;
-
-                    case (MnemonicManager.MNEMONIC_MOTOR_TRAVEL_PER_REVOLUTION):
-                        TinygDriver.getInstance().machine.getMotorByNumber(Integer.valueOf(rc.getSettingParent())).setTravel_per_revolution(Float.valueOf(rc.getSettingValue()));
-                        logger.info("[APPLIED:" + rc.getSettingParent() + " " + rc.getSettingKey() + ":" + rc.getSettingValue());
-                        break;
-                    default:
-                        logger.info("Default Switch");
-
-
-                }
+                applyJsonSystemSetting(new responseCommand(parent, _key, _val));
             }
 
         } catch (Exception ex) {
@@ -4,6 +4,9 @@
  */
 package tgfx.tinyg;
 
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.IdentityHashMap;
 import org.apache.log4j.Level;
 import org.apache.log4j.Logger;
 import tgfx.Main;
@@ -88,8 +91,35 @@ public class CommandManager {
     public static final Byte CMD_APPLY_RESET = 0x18;
 //    public static final String CMD_APPLY_RESET = "\x18\n";
     public static final String CMD_APPLY_FLOWCONTROL = "{\"ex\":2}\n";
+    //Single queue reports {"qr":pba}, the PlannerStreamer paces the writer with them
+    public static final String CMD_APPLY_QUEUE_REPORTS = "{\"" + MnemonicManager.MNEMONIC_SYSTEM_QUEUE_REPORT_VERBOSITY + "\":1}\n";
     public static final String CMD_ZERO_ALL_AXIS = "{\"gc\":G920g0x0y0z0}\n";
     public static final String CMD_APPLY_BOOTLOADER_MODE = "{\"boot\":1}\n";
+    //Every CMD_ String above, encoded once. Keyed by identity, the constants are interned.
+    private static final IdentityHashMap<String, TinygCommand> ENCODED_COMMANDS = new IdentityHashMap<>();
+
+    static {
+        for (Field f : CommandManager.class.getDeclaredFields()) {
+            int mod = f.getModifiers();
+            if (f.getName().startsWith("CMD_") && f.getType() == String.class
+                    && Modifier.isStatic(mod) && Modifier.isFinal(mod)) {
+                try {
+                    String cmd = (String) f.get(null);
+                    ENCODED_COMMANDS.put(cmd, TinygCommand.constant(cmd));
+                } catch (IllegalAccessException ex) {
+                    throw new ExceptionInInitializerError(ex);
+                }
+            }
+        }
+    }
+
+    /**
+     * @return the pre-encoded command if cmd is one of our CMD_ constants,
+     * otherwise null
+     */
+    public static TinygCommand encoded(String cmd) {
+        return ENCODED_COMMANDS.get(cmd);
+    }
     
 
     public CommandManager() {
@@ -106,9 +136,9 @@ public class CommandManager {
 
     public static void stopJogMovement() throws Exception {
         //Do not mess with this order.
+        //The real-time lane keeps ! ahead of %, TinyG holds and then flushes.
         TinygDriver.getInstance().serialWriter.clearQueueBuffer();
         TinygDriver.getInstance().priorityWrite(CommandManager.CMD_APPLY_PAUSE);
-        Thread.sleep(40);
         TinygDriver.getInstance().priorityWrite(CommandManager.CMD_APPLY_QUEUE_FLUSH);
 //        tgfx.Main.postConsoleMessage("[!]Stopping Job Clearing Serial Queue...\n");
     }
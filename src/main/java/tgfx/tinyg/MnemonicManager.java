@@ -4,6 +4,8 @@
  */
 package tgfx.tinyg;
 
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
 import java.util.ArrayList;
 
 /**
@@ -102,6 +104,7 @@ public class MnemonicManager {
     public static final String MNEMONIC_SYSTEM_ENABLE_ECHO = "ee";
     public static final String MNEMONIC_SYSTEM_ENABLE_XON = "ex";
     public static final String MNEMONIC_SYSTEM_QUEUE_REPORTS = "eq";
+    public static final String MNEMONIC_SYSTEM_QUEUE_REPORT_VERBOSITY = "qv";
     public static final String MNEMONIC_SYSTEM_ENABLE_JSON_MODE = "ej";
     public static final String MNEMONIC_SYSTEM_JSON_VOBERSITY = "jv";
     public static final String MNEMONIC_SYSTEM_TEXT_VOBERSITY = "tv";
@@ -112,8 +115,31 @@ public class MnemonicManager {
     public static final String MNEMONIC_SYSTEM_CHORDAL_TOLERANCE = "ct";
     public static final String MNEMONIC_SYSTEM_TINYG_ID_VERSION = "id";
     public static final String MNEMONIC_STATUS_REPORT_TINYG_DISTANCE_MODE = "dist";
+    //Response envelope Mnemonics
+    public static final String MNEMONIC_RESPONSE = "r";
+    public static final String MNEMONIC_RESPONSE_FOOTER = "f";
+    public static final String MNEMONIC_QUEUE_REPORT = "qr";
+    public static final String MNEMONIC_MESSAGE = "msg";
+    public static final String MNEMONIC_RX_BUFFER = "rx";
+    public static final String MNEMONIC_GCODE = "gc";
+    public static final String MNEMONIC_TGFX = "tgfx";
+    /**
+     * Mnemonic ids are used by the TinygPullParser so it can name a key
+     * without turning its bytes into a String. Every MNEMONIC_* constant of
+     * this class gets an id, mnemonicName(id) hands back the constant itself.
+     */
+    public static final int MNEMONIC_ID_NONE = -1;
+    private static final String[] MNEMONIC_NAMES;
+    private static final int[] MNEMONIC_ID_TABLE;  //open addressing, holds id + 1
+    private static final boolean[] AXIS_GROUP_IDS;
+    private static final boolean[] MOTOR_GROUP_IDS;
+    //The lists above by mnemonic id, for the parser
+    private static final boolean[] AXIS_MNEMONIC_IDS;
+    private static final boolean[] MOTOR_MNEMONIC_IDS;
+    private static final boolean[] SYS_MNEMONIC_IDS;
+    private static final boolean[] STATUS_MNEMONIC_IDS;
 
-    public MnemonicManager() {
+    static {
         //When new settings are added we need to add them to the this class.
         //Axis
         AXIS_MNEMONICS.add(MNEMONIC_AXIS_AXIS_MODE);
@@ -141,7 +167,6 @@ public class MnemonicManager {
         SYS_MNEMONICS.add(MNEMONIC_SYSTEM_DEFAULT_GCODE_COORDINATE_SYSTEM);
         SYS_MNEMONICS.add(MNEMONIC_SYSTEM_DEFAULT_GCODE_DISTANCE_MODE);
         SYS_MNEMONICS.add(MNEMONIC_SYSTEM_DEFAULT_GCODE_PATH_CONTROL);
-        SYS_MNEMONICS.add(MNEMONIC_SYSTEM_DEFAULT_GCODE_PATH_CONTROL);
         SYS_MNEMONICS.add(MNEMONIC_SYSTEM_DEFAULT_GCODE_PLANE);
 
         SYS_MNEMONICS.add(MNEMONIC_SYSTEM_BAUDRATE);
@@ -160,6 +185,7 @@ public class MnemonicManager {
         SYS_MNEMONICS.add(MNEMONIC_SYSTEM_MIN_LINE_SEGMENT);
         SYS_MNEMONICS.add(MNEMONIC_SYSTEM_MIN_TIME_SEGMENT);
         SYS_MNEMONICS.add(MNEMONIC_SYSTEM_QUEUE_REPORTS);
+        SYS_MNEMONICS.add(MNEMONIC_SYSTEM_QUEUE_REPORT_VERBOSITY);
         SYS_MNEMONICS.add(MNEMONIC_SYSTEM_STATUS_REPORT_INTERVAL);
         SYS_MNEMONICS.add(MNEMONIC_SYSTEM_SWITCH_TYPE);
         SYS_MNEMONICS.add(MNEMONIC_SYSTEM_TEXT_VOBERSITY);
@@ -214,7 +240,124 @@ public class MnemonicManager {
         GROUP_MNEMONICS.add(MNEMONIC_GROUP_STATUS_REPORT);
         GROUP_MNEMONICS.add(MNEMONIC_GROUP_SYSTEM);
 
+        ArrayList<String> names = new ArrayList<>();
+        for (Field f : MnemonicManager.class.getDeclaredFields()) {
+            int mod = f.getModifiers();
+            if (f.getName().startsWith("MNEMONIC_") && f.getType() == String.class
+                    && Modifier.isStatic(mod) && Modifier.isFinal(mod)) {
+                try {
+                    String name = (String) f.get(null);
+                    if (!names.contains(name)) {
+                        names.add(name);
+                    }
+                } catch (IllegalAccessException ex) {
+                    throw new ExceptionInInitializerError(ex);
+                }
+            }
+        }
+        MNEMONIC_NAMES = names.toArray(new String[names.size()]);
+        int size = Integer.highestOneBit(MNEMONIC_NAMES.length * 4);
+        MNEMONIC_ID_TABLE = new int[size];
+        for (int id = 0; id < MNEMONIC_NAMES.length; id++) {
+            int slot = MNEMONIC_NAMES[id].hashCode() & (size - 1);
+            while (MNEMONIC_ID_TABLE[slot] != 0) {
+                slot = (slot + 1) & (size - 1);
+            }
+            MNEMONIC_ID_TABLE[slot] = id + 1;
+        }
+        AXIS_GROUP_IDS = new boolean[MNEMONIC_NAMES.length];
+        MOTOR_GROUP_IDS = new boolean[MNEMONIC_NAMES.length];
+        String[] axisGroups = {MNEMONIC_GROUP_AXIS_X, MNEMONIC_GROUP_AXIS_Y, MNEMONIC_GROUP_AXIS_Z,
+            MNEMONIC_GROUP_AXIS_A, MNEMONIC_GROUP_AXIS_B, MNEMONIC_GROUP_AXIS_C};
+        for (String g : axisGroups) {
+            AXIS_GROUP_IDS[mnemonicId(g)] = true;
+        }
+        String[] motorGroups = {MNEMONIC_GROUP_MOTOR_1, MNEMONIC_GROUP_MOTOR_2,
+            MNEMONIC_GROUP_MOTOR_3, MNEMONIC_GROUP_MOTOR_4};
+        for (String g : motorGroups) {
+            MOTOR_GROUP_IDS[mnemonicId(g)] = true;
+        }
+        AXIS_MNEMONIC_IDS = idTable(AXIS_MNEMONICS);
+        MOTOR_MNEMONIC_IDS = idTable(MOTOR_MNEMONICS);
+        SYS_MNEMONIC_IDS = idTable(SYS_MNEMONICS);
+        STATUS_MNEMONIC_IDS = idTable(STATUS_MNEMONICS);
+    }
+
+    private static boolean[] idTable(ArrayList<String> mnemonics) {
+        boolean[] table = new boolean[MNEMONIC_NAMES.length];
+        for (String m : mnemonics) {
+            table[mnemonicId(m)] = true;
+        }
+        return table;
+    }
+
+    public MnemonicManager() {
+    }
+
+    /**
+     * Looks up the id of a mnemonic held in a byte buffer, without allocating.
+     *
+     * @return the mnemonic id or MNEMONIC_ID_NONE if we do not know it
+     */
+    public static int mnemonicId(byte[] buf, int offset, int length) {
+        int hash = 0;
+        for (int i = 0; i < length; i++) {
+            hash = 31 * hash + (buf[offset + i] & 0xff);
+        }
+        int mask = MNEMONIC_ID_TABLE.length - 1;
+        for (int slot = hash & mask; MNEMONIC_ID_TABLE[slot] != 0; slot = (slot + 1) & mask) {
+            String name = MNEMONIC_NAMES[MNEMONIC_ID_TABLE[slot] - 1];
+            if (name.length() == length) {
+                int i = 0;
+                while (i < length && name.charAt(i) == buf[offset + i]) {
+                    i++;
+                }
+                if (i == length) {
+                    return MNEMONIC_ID_TABLE[slot] - 1;
+                }
+            }
+        }
+        return MNEMONIC_ID_NONE;
+    }
+
+    public static int mnemonicId(String mnemonic) {
+        for (int id = 0; id < MNEMONIC_NAMES.length; id++) {
+            if (MNEMONIC_NAMES[id].equals(mnemonic)) {
+                return id;
+            }
+        }
+        return MNEMONIC_ID_NONE;
+    }
+
+    /**
+     * @return the MNEMONIC_* constant for this id, or null for MNEMONIC_ID_NONE
+     */
+    public static String mnemonicName(int id) {
+        return id < 0 ? null : MNEMONIC_NAMES[id];
+    }
+
+    public static boolean isAxisGroup(int id) {
+        return id >= 0 && AXIS_GROUP_IDS[id];
+    }
+
+    public static boolean isMotorGroup(int id) {
+        return id >= 0 && MOTOR_GROUP_IDS[id];
+    }
+
+    public static boolean isAxisMnemonic(int id) {
+        return id >= 0 && AXIS_MNEMONIC_IDS[id];
+    }
+
+    public static boolean isMotorMnemonic(int id) {
+        return id >= 0 && MOTOR_MNEMONIC_IDS[id];
+    }
+
+    public static boolean isSystemMnemonic(int id) {
+        return id >= 0 && SYS_MNEMONIC_IDS[id];
+    }
 
+    public static boolean isStatusMnemonic(int id) {
+        return id >= 0 && STATUS_MNEMONIC_IDS[id];
     }
 
     public boolean isMasterGroupObject(String strToLookup) {
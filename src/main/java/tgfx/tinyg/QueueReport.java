@@ -5,9 +5,6 @@
 package tgfx.tinyg;
 
 import org.apache.log4j.Logger;
-import org.json.JSONArray;
-import org.json.JSONException;
-import org.json.JSONObject;
 
 /**
  *
@@ -20,13 +17,22 @@ public class QueueReport {
     private int removed = 0;
     private static final Logger logger = Logger.getLogger(QueueReport.class);
 
-    public synchronized void parse(JSONObject js) throws JSONException {
+    //Triple queue reports come in as {"qr":[pba,added,removed]}, single ones
+    //as {"qr":pba}.  The values are handed to us already parsed.
+    public synchronized void parse(double[] values, int count) {
         logger.info("QUEUE REPORT");
-        JSONArray jsa;
-        jsa = js.getJSONArray("qr");
-        setPba(jsa.getInt(0));
-        setAdded(jsa.getInt(1));
-        setRemoved(jsa.getInt(2));
+        if (count > 0) {
+            setPba((int) values[0]);
+        }
+        if (count > 2) {
+            setAdded((int) values[1]);
+            setRemoved((int) values[2]);
+        }
+    }
+
+    public synchronized void parse(double pba) {
+        logger.info("QUEUE REPORT");
+        setPba((int) pba);
     }
 
     public int getAdded() {
@@ -0,0 +1,329 @@
+/*
+ * Copyright (C) 2014 Synthetos LLC. All Rights reserved.
+ * http://www.synthetos.com
+ */
+package tgfx.tinyg;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The <code>TinygCommand</code> class is one entry of the writer queue, a
+ * line for TinyG or a marker for the SerialWriter.
+ * <p>
+ * Every command that goes to TinyG carries its payload already encoded, so
+ * the writer never calls getBytes() or looks at the text again. Whether the
+ * line has a G-code comment is also worked out when the command is built.
+ * Payloads are ASCII, TinyG has no use for anything else.
+ * <p>
+ * Built commands come from a pool and go back to it with {@link #release()}
+ * once the SerialOutput has written them. The CommandManager constants are
+ * encoded once at class load and shared, releasing them does nothing.
+ *
+ * @see CommandManager#encoded(String)
+ * @see tgfx.SerialWriter
+ */
+public class TinygCommand {
+
+    public enum Type {
+
+        GCODE, CONFIG, QUERY, FILE_DONE, COMMENT, BATCH, JOB_START
+    }
+    private static final int INITIAL_PAYLOAD = 64;
+    //Enough for the writer window and what the UI has queued, more is left to the GC
+    private static final int MAX_POOLED = 256;
+    private static final ConcurrentLinkedQueue<TinygCommand> pool = new ConcurrentLinkedQueue<>();
+    private static final AtomicInteger pooledCount = new AtomicInteger();
+    private static final byte[] GCODE_PREFIX = {'{', '"', 'g', 'c', '"', ':', '"'};
+    private static final byte[] GCODE_SUFFIX = {'"', '}', '\n'};
+    /**
+     * Tells the SerialWriter the file is done, nothing is written for it.
+     */
+    public static final TinygCommand FILE_DONE = new TinygCommand(Type.FILE_DONE, false);
+    /**
+     * Wakes the SerialWriter to pull from a job it was given, nothing is
+     * written for it.
+     */
+    public static final TinygCommand JOB_START = new TinygCommand(Type.JOB_START, false);
+    private final boolean pooled;
+    private Type type;
+    private byte[] payload;
+    private int length;
+    private boolean comment;
+    private int lines;  //only counted for BATCH
+    private String text;  //only kept for COMMENT
+    private long enqueuedNanos;
+
+    private TinygCommand(Type type, boolean pooled) {
+        this.type = type;
+        this.pooled = pooled;
+        this.payload = new byte[pooled ? INITIAL_PAYLOAD : 0];
+    }
+
+    private static TinygCommand acquire(Type type) {
+        TinygCommand cmd = pool.poll();
+        if (cmd == null) {
+            cmd = new TinygCommand(type, true);
+        } else {
+            pooledCount.decrementAndGet();
+        }
+        cmd.type = type;
+        cmd.length = 0;
+        cmd.comment = false;
+        cmd.lines = 0;
+        cmd.text = null;
+        cmd.enqueuedNanos = 0;
+        return cmd;
+    }
+
+    /**
+     * Encodes a constant once, the command is shared and never pooled.
+     */
+    static TinygCommand constant(String line) {
+        TinygCommand cmd = new TinygCommand(classify(line), false);
+        cmd.append(line);
+        return cmd;
+    }
+
+    /**
+     * @return the pre-encoded command for a CommandManager constant, or a
+     * pooled command with line encoded into it
+     */
+    public static TinygCommand of(String line) {
+        TinygCommand cmd = CommandManager.encoded(line);
+        if (cmd != null) {
+            return cmd;
+        }
+        cmd = acquire(classify(line));
+        cmd.append(line);
+        return cmd;
+    }
+
+    /**
+     * @return a G-code line wrapped as {"gc":"line"}
+     */
+    public static TinygCommand gcode(String line) {
+        TinygCommand cmd = acquire(Type.GCODE);
+        cmd.append(GCODE_PREFIX);
+        cmd.append(line);
+        cmd.append(GCODE_SUFFIX);
+        return cmd;
+    }
+
+    /**
+     * @return a G-code line that is already wrapped as {"gc":"line"}\n, like
+     * the payloads of an EncodedGcode
+     */
+    public static TinygCommand gcode(byte[] encoded, int offset, int count) {
+        TinygCommand cmd = acquire(Type.GCODE);
+        cmd.append(encoded, offset, count);
+        return cmd;
+    }
+
+    /**
+     * @return {"prefixmnemonic":value}, like {"xvm":16000}
+     */
+    public static TinygCommand setting(String prefix, String mnemonic, String value) {
+        TinygCommand cmd = acquire(Type.CONFIG);
+        cmd.append('{');
+        cmd.appendKey(prefix, mnemonic);
+        cmd.append(value);
+        cmd.append('}');
+        cmd.append('\n');
+        return cmd;
+    }
+
+    public static TinygCommand setting(String prefix, String mnemonic, int value) {
+        TinygCommand cmd = acquire(Type.CONFIG);
+        cmd.append('{');
+        cmd.appendKey(prefix, mnemonic);
+        cmd.append(value);
+        cmd.append('}');
+        cmd.append('\n');
+        return cmd;
+    }
+
+    /**
+     * @return {"group":{"mnemonic":value}}, like {"1":{"ma":0}}
+     */
+    public static TinygCommand groupSetting(String group, String mnemonic, int value) {
+        TinygCommand cmd = acquire(Type.CONFIG);
+        cmd.append('{');
+        cmd.appendKey(group, "");
+        cmd.append('{');
+        cmd.appendKey("", mnemonic);
+        cmd.append(value);
+        cmd.append('}');
+        cmd.append('}');
+        cmd.append('\n');
+        return cmd;
+    }
+
+    /**
+     * @return an empty command that lines are appended to, so several of them
+     * go out in one port write
+     */
+    public static TinygCommand batch() {
+        return acquire(Type.BATCH);
+    }
+
+    /**
+     * Appends the payload of another command, only used on a batch.
+     */
+    public void append(TinygCommand line) {
+        append(line.payload, line.length);
+        comment |= line.comment;
+        lines++;
+    }
+
+    /**
+     * @return a G-code comment for the UI, nothing is written for it
+     */
+    public static TinygCommand comment(String line) {
+        TinygCommand cmd = acquire(Type.COMMENT);
+        cmd.text = line;
+        return cmd;
+    }
+
+    private static Type classify(String line) {
+        if (line.startsWith("{\"gc\"")) {
+            return Type.GCODE;
+        } else if (line.contains("null") || line.contains(":\"\"")) {
+            return Type.QUERY;
+        }
+        return Type.CONFIG;
+    }
+
+    private void ensure(int extra) {
+        if (length + extra > payload.length) {
+            byte[] bigger = new byte[Math.max(payload.length * 2, length + extra)];
+            System.arraycopy(payload, 0, bigger, 0, length);
+            payload = bigger;
+        }
+    }
+
+    private void append(char c) {
+        ensure(1);
+        if (c == '(') {
+            comment = true;
+        }
+        payload[length++] = c < 0x80 ? (byte) c : (byte) '?';
+    }
+
+    private void append(String s) {
+        ensure(s.length());
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (c == '(') {
+                comment = true;
+            }
+            payload[length++] = c < 0x80 ? (byte) c : (byte) '?';
+        }
+    }
+
+    private void append(byte[] b) {
+        append(b, b.length);
+    }
+
+    private void append(byte[] b, int count) {
+        append(b, 0, count);
+    }
+
+    private void append(byte[] b, int offset, int count) {
+        ensure(count);
+        System.arraycopy(b, offset, payload, length, count);
+        length += count;
+    }
+
+    private void append(int value) {
+        if (value < 0) {
+            append('-');
+            value = -value;
+        }
+        int digits = 1;
+        for (int v = value / 10; v > 0; v /= 10) {
+            digits++;
+        }
+        ensure(digits);
+        for (int i = length + digits - 1; i >= length; i--) {
+            payload[i] = (byte) ('0' + value % 10);
+            value /= 10;
+        }
+        length += digits;
+    }
+
+    private void appendKey(String prefix, String mnemonic) {
+        append('"');
+        append(prefix);
+        append(mnemonic);
+        append('"');
+        append(':');
+    }
+
+    /**
+     * Gives a pooled command back. The command must not be used afterwards.
+     */
+    public void release() {
+        if (pooled && pooledCount.get() < MAX_POOLED) {
+            text = null;
+            pooledCount.incrementAndGet();
+            pool.offer(this);
+        }
+    }
+
+    /**
+     * Stamps the command as it goes into the writer queue. Shared constants
+     * are not stamped, they may be queued more than once.
+     */
+    public void markEnqueued() {
+        if (pooled) {
+            enqueuedNanos = System.nanoTime();
+        }
+    }
+
+    /**
+     * @return when the command went into the writer queue, 0 if not known
+     */
+    public long getEnqueuedNanos() {
+        return enqueuedNanos;
+    }
+
+    /**
+     * @return how many lines go out for the command, a batch counts the
+     * lines appended to it
+     */
+    public int getLineCount() {
+        return type == Type.BATCH ? lines : 1;
+    }
+
+    public Type getType() {
+        return type;
+    }
+
+    /**
+     * @return the encoded line, only the first length() bytes are valid
+     */
+    public byte[] payload() {
+        return payload;
+    }
+
+    public int length() {
+        return length;
+    }
+
+    /**
+     * @return true if the line has a G-code comment for the console
+     */
+    public boolean hasComment() {
+        return comment;
+    }
+
+    @Override
+    public String toString() {
+        if (text != null) {
+            return text;
+        }
+        return new String(payload, 0, length, StandardCharsets.US_ASCII);
+    }
+}
@@ -9,6 +9,7 @@ package tgfx.tinyg;
 import java.io.IOException;
 import java.util.*;
 import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 import javafx.beans.property.SimpleBooleanProperty;
 import javafx.scene.control.ChoiceBox;
@@ -23,14 +24,17 @@ import tgfx.Main;
 import tgfx.ResponseParser;
 import tgfx.SerialDriver;
 import tgfx.SerialWriter;
-import tgfx.ui.gcode.GcodeLine;
+import tgfx.event.EventBus;
+import tgfx.event.EventType;
 import tgfx.system.Axis;
 import tgfx.system.Machine;
 import tgfx.system.Motor;
 import tgfx.hardwarePlatforms.HardwarePlatformManager;
+import tgfx.transport.Transport;
 import tgfx.utility.AsyncTimer;
+import tgfx.utility.SpscLineRing;
 
-public class TinygDriver extends Observable {
+public class TinygDriver {
 
     static final Logger logger = Logger.getLogger(TinygDriver.class);
     public Machine machine = Machine.getInstance();
@@ -38,7 +42,6 @@ public class TinygDriver extends Observable {
     public MnemonicManager mneManager = new MnemonicManager();
     public ResponseManager resManager = new ResponseManager();
     public CommandManager cmdManager = new CommandManager();
-    private String[] message = new String[2];
     public SimpleBooleanProperty connectionStatus = new SimpleBooleanProperty(false);
 
 
@@ -48,9 +51,12 @@ public class TinygDriver extends Observable {
      */
     public ArrayList<String> connections = new ArrayList<>();
     private final SerialDriver ser = SerialDriver.getInstance();
-    public static ArrayBlockingQueue<String> jsonQueue = new ArrayBlockingQueue<>(10000);
+    //Lines from the serial thread to the ResponseParser thread
+    public static final SpscLineRing jsonQueue = new SpscLineRing(8192, 256, SpscLineRing.WaitStrategy.PARK);
+    //How long the serial thread waits on a full jsonQueue before it drops a line
+    private static final long JSON_QUEUE_BACKPRESSURE_NANOS = TimeUnit.SECONDS.toNanos(1);
     public static ArrayBlockingQueue<byte[]> queue = new ArrayBlockingQueue<>(30);
-    public static ArrayBlockingQueue<GcodeLine[]> writerQueue = new ArrayBlockingQueue<>(50000);
+    public static ArrayBlockingQueue<TinygCommand> writerQueue = new ArrayBlockingQueue<>(50000);
     public ResponseParser resParse = new ResponseParser();
     public SerialWriter serialWriter = new SerialWriter(writerQueue);
     private boolean PAUSED = false;
@@ -98,21 +104,15 @@ public class TinygDriver extends Observable {
         if (machine.getFirmwareBuild() < TinygDriver.getInstance().machine.hardwarePlatform.getMinimalBuildVersion() && 
                 this.machine.getFirmwareBuild() != 0.0) {
             
-            //too old of a build  we need to tell the GUI about this... This is where PUB/SUB will fix this 
-            //bad way of alerting the gui about model changes.
-            message[0] = "BUILD_ERROR";
-            message[1] = Double.toString(TinygDriver.getInstance().machine.getFirmwareBuild());
-            setChanged();
-            notifyObservers(message);
+            //too old of a build  we need to tell the GUI about this...
+            EventBus.getInstance().publish(EventType.BUILD_ERROR,
+                    Double.toString(TinygDriver.getInstance().machine.getFirmwareBuild()));
             logger.debug("Build Version: " + TinygDriver.getInstance().machine.getFirmwareBuild() + " is NOT OK");
         } else if(machine.getFirmwareBuild() == 0.0){
             
         }else {
             logger.debug("Build Version: " + TinygDriver.getInstance().machine.getFirmwareBuild() + " is OK");
-            message[0] = "BUILD_OK";
-            message[1] = null;
-            setChanged();
-            notifyObservers(message);
+            EventBus.getInstance().publish(EventType.BUILD_OK, null);
         }
 
     }
@@ -120,19 +120,13 @@ public class TinygDriver extends Observable {
     public void sendReconnectRequest(){
         Main.postConsoleMessage("Attempting to reconnecto to TinyG...");
         logger.info("Reconnect Request Sent.");
-        message[0] = "RECONNECT";
-        message[1] = null;
-        setChanged();
-        notifyObservers(message);
+        EventBus.getInstance().publish(EventType.RECONNECT, null);
     }
     
         
     public void sendDisconnectRequest(){
         logger.info("Disconnect Request Sent.");
-        message[0] = "DISCONNECT";
-        message[1] = null;
-        setChanged();
-        notifyObservers(message);
+        EventBus.getInstance().publish(EventType.DISCONNECT, null);
     }
     
     
@@ -149,22 +143,22 @@ public class TinygDriver extends Observable {
         try {
             switch (_axis.toLowerCase()) {
                 case "x":
-                    serialWriter.write(CommandManager.CMD_QUERY_AXIS_X);
+                    this.write(CommandManager.CMD_QUERY_AXIS_X);
                     break;
                 case "y":
-                    ser.write(CommandManager.CMD_QUERY_AXIS_Y);
+                    this.write(CommandManager.CMD_QUERY_AXIS_Y);
                     break;
                 case "z":
-                    ser.write(CommandManager.CMD_QUERY_AXIS_Z);
+                    this.write(CommandManager.CMD_QUERY_AXIS_Z);
                     break;
                 case "a":
-                    ser.write(CommandManager.CMD_QUERY_AXIS_A);
+                    this.write(CommandManager.CMD_QUERY_AXIS_A);
                     break;
                 case "b":
-                    ser.write(CommandManager.CMD_QUERY_AXIS_B);
+                    this.write(CommandManager.CMD_QUERY_AXIS_B);
                     break;
                 case "c":
-                    ser.write(CommandManager.CMD_QUERY_AXIS_C);
+                    this.write(CommandManager.CMD_QUERY_AXIS_C);
                     break;
             }
         } catch (Exception ex) {
@@ -191,17 +185,14 @@ public class TinygDriver extends Observable {
                 ChoiceBox<Object> cb = (ChoiceBox<Object>) _gp.getChildren().get(i);
                 if (cb.getId().contains("AxisMode")) {
                     int axisMode = cb.getSelectionModel().getSelectedIndex();
-                    String configObj = String.format("{\"%s%s\":%s}\n", _axis.getAxis_name().toLowerCase(), MnemonicManager.MNEMONIC_AXIS_AXIS_MODE, axisMode);
-                    this.write(configObj);
+                    this.write(TinygCommand.setting(_axis.getAxis_name().toLowerCase(), MnemonicManager.MNEMONIC_AXIS_AXIS_MODE, axisMode));
                     continue;
                 } else if (cb.getId().contains("switchModeMax")) {
                     int switchMode = cb.getSelectionModel().getSelectedIndex();
-                    String configObj = String.format("{\"%s%s\":%s}\n", _axis.getAxis_name().toLowerCase(), MnemonicManager.MNEMONIC_AXIS_MAX_SWITCH_MODE, switchMode);
-                    this.write(configObj);
+                    this.write(TinygCommand.setting(_axis.getAxis_name().toLowerCase(), MnemonicManager.MNEMONIC_AXIS_MAX_SWITCH_MODE, switchMode));
                 } else if (cb.getId().contains("switchModeMin")) {
                     int switchMode = cb.getSelectionModel().getSelectedIndex();
-                    String configObj = String.format("{\"%s%s\":%s}\n", _axis.getAxis_name().toLowerCase(), MnemonicManager.MNEMONIC_AXIS_MIN_SWITCH_MODE, switchMode);
-                    this.write(configObj);
+                    this.write(TinygCommand.setting(_axis.getAxis_name().toLowerCase(), MnemonicManager.MNEMONIC_AXIS_MIN_SWITCH_MODE, switchMode));
                 }
             }
         }
@@ -213,11 +204,11 @@ public class TinygDriver extends Observable {
     public void applyHardwareMotorSettings(Motor _motor, TextField tf) throws Exception {
         if (tf.getId().contains("StepAngle")) {
             if (_motor.getStep_angle() != Float.valueOf(tf.getText())) {
-                this.write("{\"" + _motor.getId_number() + MnemonicManager.MNEMONIC_MOTOR_STEP_ANGLE + "\":" + tf.getText() + "}\n");
+                this.write(TinygCommand.setting(String.valueOf(_motor.getId_number()), MnemonicManager.MNEMONIC_MOTOR_STEP_ANGLE, tf.getText()));
             }
         } else if (tf.getId().contains("TravelPer")) {
             if (_motor.getStep_angle() != Float.valueOf(tf.getText())) {
-                this.write("{\"" + _motor.getId_number() + MnemonicManager.MNEMONIC_MOTOR_TRAVEL_PER_REVOLUTION + "\":" + tf.getText() + "}\n");
+                this.write(TinygCommand.setting(String.valueOf(_motor.getId_number()), MnemonicManager.MNEMONIC_MOTOR_TRAVEL_PER_REVOLUTION, tf.getText()));
             }
         }
     }
@@ -230,31 +221,31 @@ public class TinygDriver extends Observable {
             if (_axis.getVelocityMaximum() != Double.valueOf(tf.getText())) {
                 //We check to see if the value passed was already set in TinyG 
                 //To avoid un-needed EEPROM Writes.
-                this.write("{\"" + _axis.getAxis_name().toLowerCase() + MnemonicManager.MNEMONIC_AXIS_VELOCITY_MAXIMUM + "\":" + tf.getText() + "}\n");
+                this.write(TinygCommand.setting(_axis.getAxis_name().toLowerCase(), MnemonicManager.MNEMONIC_AXIS_VELOCITY_MAXIMUM, tf.getText()));
             }
         } else if (tf.getId().contains("maxFeed")) {
             if (_axis.getFeed_rate_maximum() != Double.valueOf(tf.getText())) {
                 //We check to see if the value passed was already set in TinyG 
                 //To avoid un-needed EEPROM Writes.
-                this.write("{\"" + _axis.getAxis_name().toLowerCase() + MnemonicManager.MNEMONIC_AXIS_FEEDRATE_MAXIMUM + "\":" + tf.getText() + "}\n");
+                this.write(TinygCommand.setting(_axis.getAxis_name().toLowerCase(), MnemonicManager.MNEMONIC_AXIS_FEEDRATE_MAXIMUM, tf.getText()));
             }
         } else if (tf.getId().contains("maxTravel")) {
             if (_axis.getTravel_maximum() != Double.valueOf(tf.getText())) {
                 //We check to see if the value passed was already set in TinyG 
                 //To avoid un-needed EEPROM Writes.
-                this.write("{\"" + _axis.getAxis_name().toLowerCase() + MnemonicManager.MNEMONIC_AXIS_TRAVEL_MAXIMUM + "\":" + tf.getText() + "}\n");
+                this.write(TinygCommand.setting(_axis.getAxis_name().toLowerCase(), MnemonicManager.MNEMONIC_AXIS_TRAVEL_MAXIMUM, tf.getText()));
             }
         } else if (tf.getId().contains("maxJerk")) {
             if (_axis.getJerkMaximum() != Double.valueOf(tf.getText())) {
                 //We check to see if the value passed was already set in TinyG 
                 //To avoid un-needed EEPROM Writes.
-                this.write("{\"" + _axis.getAxis_name().toLowerCase() + MnemonicManager.MNEMONIC_AXIS_JERK_MAXIMUM + "\":" + tf.getText() + "}\n");
+                this.write(TinygCommand.setting(_axis.getAxis_name().toLowerCase(), MnemonicManager.MNEMONIC_AXIS_JERK_MAXIMUM, tf.getText()));
             }
         } else if (tf.getId().contains("junctionDeviation")) {
             if (Double.valueOf(_axis.getJunction_devation()).floatValue() != Double.valueOf(tf.getText())) {
                 //We check to see if the value passed was already set in TinyG 
                 //To avoid un-needed EEPROM Writes.
-                this.write("{\"" + _axis.getAxis_name().toLowerCase() + MnemonicManager.MNEMONIC_AXIS_JUNCTION_DEVIATION + "\":" + tf.getText() + "}\n");
+                this.write(TinygCommand.setting(_axis.getAxis_name().toLowerCase(), MnemonicManager.MNEMONIC_AXIS_JUNCTION_DEVIATION, tf.getText()));
             }
         } else if (tf.getId().contains("radius")) {
             if (_axis.getAxisType().equals(Axis.AXIS_TYPE.ROTATIONAL)) {
@@ -262,32 +253,32 @@ public class TinygDriver extends Observable {
                 if (_axis.getRadius() != Double.valueOf(tf.getText())) {
                     //We check to see if the value passed was already set in TinyG 
                     //To avoid un-needed EEPROM Writes.
-                    this.write("{\"" + _axis.getAxis_name().toLowerCase() + MnemonicManager.MNEMONIC_AXIS_RADIUS + "\":" + tf.getText() + "}\n");
+                    this.write(TinygCommand.setting(_axis.getAxis_name().toLowerCase(), MnemonicManager.MNEMONIC_AXIS_RADIUS, tf.getText()));
                 }
             }
         } else if (tf.getId().contains("searchVelocity")) {
             if (_axis.getSearch_velocity() != Double.valueOf(tf.getText())) {
                 //We check to see if the value passed was already set in TinyG 
                 //To avoid un-needed EEPROM Writes.
-                this.write("{\"" + _axis.getAxis_name().toLowerCase() + MnemonicManager.MNEMONIC_AXIS_SEARCH_VELOCITY + "\":" + tf.getText() + "}\n");
+                this.write(TinygCommand.setting(_axis.getAxis_name().toLowerCase(), MnemonicManager.MNEMONIC_AXIS_SEARCH_VELOCITY, tf.getText()));
             }
         } else if (tf.getId().contains("latchVelocity")) {
             if (_axis.getLatch_velocity() != Double.valueOf(tf.getText())) {
                 //We check to see if the value passed was already set in TinyG 
                 //To avoid un-needed EEPROM Writes.
-                this.write("{\"" + _axis.getAxis_name().toLowerCase() + MnemonicManager.MNEMONIC_AXIS_LATCH_VELOCITY + "\":" + tf.getText() + "}\n");
+                this.write(TinygCommand.setting(_axis.getAxis_name().toLowerCase(), MnemonicManager.MNEMONIC_AXIS_LATCH_VELOCITY, tf.getText()));
             }
         } else if (tf.getId().contains("latchBackoff")) {
             if (_axis.getLatch_backoff() != Double.valueOf(tf.getText())) {
                 //We check to see if the value passed was already set in TinyG 
                 //To avoid un-needed EEPROM Writes.
-                this.write("{\"" + _axis.getAxis_name().toLowerCase() + MnemonicManager.MNEMONIC_AXIS_LATCH_BACKOFF + "\":" + tf.getText() + "}\n");
+                this.write(TinygCommand.setting(_axis.getAxis_name().toLowerCase(), MnemonicManager.MNEMONIC_AXIS_LATCH_BACKOFF, tf.getText()));
             }
         } else if (tf.getId().contains("zeroBackoff")) {
             if (_axis.getZero_backoff() != Double.valueOf(tf.getText())) {
                 //We check to see if the value passed was already set in TinyG 
                 //To avoid un-needed EEPROM Writes.
-                this.write("{\"" + _axis.getAxis_name().toLowerCase() + MnemonicManager.MNEMONIC_AXIS_ZERO_BACKOFF + "\":" + tf.getText() + "}\n");
+                this.write(TinygCommand.setting(_axis.getAxis_name().toLowerCase(), MnemonicManager.MNEMONIC_AXIS_ZERO_BACKOFF, tf.getText()));
             }
         }
         Main.print("[+]Applying " + _axis.getAxis_name() + " settings");
@@ -297,13 +288,13 @@ public class TinygDriver extends Observable {
     public void getMotorSettings(int motorNumber) {
         try {
             if (motorNumber == 1) {
-                ser.write(CommandManager.CMD_QUERY_MOTOR_1_SETTINGS);
+                this.write(CommandManager.CMD_QUERY_MOTOR_1_SETTINGS);
             } else if (motorNumber == 2) {
-                ser.write(CommandManager.CMD_QUERY_MOTOR_2_SETTINGS);
+                this.write(CommandManager.CMD_QUERY_MOTOR_2_SETTINGS);
             } else if (motorNumber == 3) {
-                ser.write(CommandManager.CMD_QUERY_MOTOR_3_SETTINGS);
+                this.write(CommandManager.CMD_QUERY_MOTOR_3_SETTINGS);
             } else if (motorNumber == 4) {
-                ser.write(CommandManager.CMD_QUERY_MOTOR_4_SETTINGS);
+                this.write(CommandManager.CMD_QUERY_MOTOR_4_SETTINGS);
             } else {
                 TinygDriver.logger.error("Invalid Motor Number.. Please try again..");
             }
@@ -415,8 +406,7 @@ public class TinygDriver extends Observable {
                         default:
                             mapAxis = 0;  //Defaults to map to X
                     }
-                    String configObj = String.format("{\"%s\":{\"%s\":%s}}\n", _motorNumber, MnemonicManager.MNEMONIC_MOTOR_MAP_AXIS, mapAxis);
-                    this.write(configObj);
+                    this.write(TinygCommand.groupSetting(String.valueOf(_motorNumber), MnemonicManager.MNEMONIC_MOTOR_MAP_AXIS, mapAxis));
 
                 } else if (_cb.getId().contains("MicroStepping")) {
                     //This is the MapAxis Choice Box... Lets apply that
@@ -437,16 +427,13 @@ public class TinygDriver extends Observable {
                         default:
                             microSteps = 1;
                     }
-                    String configObj = String.format("{\"%s%s\":%s}\n", _motorNumber, MnemonicManager.MNEMONIC_MOTOR_MICROSTEPS, microSteps);
-                    this.write(configObj);
+                    this.write(TinygCommand.setting(String.valueOf(_motorNumber), MnemonicManager.MNEMONIC_MOTOR_MICROSTEPS, microSteps));
 
                 } else if (_cb.getId().contains("Polarity")) {
-                    String configObj = String.format("{\"%s%s\":%s}\n", _motorNumber, MnemonicManager.MNEMONIC_MOTOR_POLARITY, _cb.getSelectionModel().getSelectedIndex());
-                    this.write(configObj);
+                    this.write(TinygCommand.setting(String.valueOf(_motorNumber), MnemonicManager.MNEMONIC_MOTOR_POLARITY, _cb.getSelectionModel().getSelectedIndex()));
 
                 } else if (_cb.getId().contains("PowerMode")) {
-                    String configObj = String.format("{\"%s%s\":%s}\n", _motorNumber, MnemonicManager.MNEMONIC_MOTOR_POWER_MANAGEMENT, _cb.getSelectionModel().getSelectedIndex());
-                    this.write(configObj);
+                    this.write(TinygCommand.setting(String.valueOf(_motorNumber), MnemonicManager.MNEMONIC_MOTOR_POWER_MANAGEMENT, _cb.getSelectionModel().getSelectedIndex()));
                 }
             }
         }
@@ -455,16 +442,15 @@ public class TinygDriver extends Observable {
     public void queryHardwareSingleMotorSettings(int motorNumber) {
         try {
             if (motorNumber == 1) {
-                ser.write(CommandManager.CMD_QUERY_MOTOR_1_SETTINGS);
+                this.write(CommandManager.CMD_QUERY_MOTOR_1_SETTINGS);
             } else if (motorNumber == 2) {
-                ser.write(CommandManager.CMD_QUERY_MOTOR_2_SETTINGS);
+                this.write(CommandManager.CMD_QUERY_MOTOR_2_SETTINGS);
             } else if (motorNumber == 3) {
-                ser.write(CommandManager.CMD_QUERY_MOTOR_3_SETTINGS);
+                this.write(CommandManager.CMD_QUERY_MOTOR_3_SETTINGS);
             } else if (motorNumber == 4) {
-                ser.write(CommandManager.CMD_QUERY_MOTOR_4_SETTINGS);
+                this.write(CommandManager.CMD_QUERY_MOTOR_4_SETTINGS);
             } else {
                 Main.print("Invalid Motor Number.. Please try again..");
-                setChanged();
             }
         } catch (Exception ex) {
             Main.print("[!]Error in queryHardwareSingleMotorSettings() " + ex.getMessage());
@@ -490,14 +476,21 @@ public class TinygDriver extends Observable {
         private static final TinygDriver INSTANCE = new TinygDriver();
     }
 
-    @Override
-    public synchronized void addObserver(Observer obsrvr) {
-        super.addObserver(obsrvr);
+    public void appendJsonQueue(String line) {
+        //This is used for messages tgFX makes up itself, like the connection timeout.
+        byte[] buf = line.getBytes();
+        appendJsonQueue(buf, 0, buf.length);
     }
 
-    public void appendJsonQueue(String line) {
+    public void appendJsonQueue(byte[] buf, int offset, int length) {
         // This adds full normalized json objects to our jsonQueue.
-        TinygDriver.jsonQueue.add(line);
+        //jsonQueue takes a single producer. This lock is only ever contended when
+        //tgFX queues one of its own messages while the serial thread is reading.
+        synchronized (jsonQueue) {
+            if (!jsonQueue.offer(buf, offset, length, JSON_QUEUE_BACKPRESSURE_NANOS)) {
+                logger.error("[!]jsonQueue full, dropped a response line. Lines dropped so far: " + jsonQueue.getOverflowCount());
+            }
+        }
     }
 
     public synchronized void appendResponseQueue(byte[] queue) {
@@ -518,9 +511,9 @@ public class TinygDriver extends Observable {
             ser.priorityWrite(CommandManager.CMD_APPLY_PAUSE);
             PAUSED = choice;
         } else { // set to resume
-            ser.priorityWrite(CommandManager.CMD_QUERY_OK_PROMPT);
+            priorityWrite(CommandManager.CMD_QUERY_OK_PROMPT);
             ser.priorityWrite(CommandManager.CMD_APPLY_RESUME);
-            ser.priorityWrite(CommandManager.CMD_QUERY_OK_PROMPT);
+            priorityWrite(CommandManager.CMD_QUERY_OK_PROMPT);
             PAUSED = false;
         }
     }
@@ -537,6 +530,10 @@ public class TinygDriver extends Observable {
         return (this.ser.initialize(portName, dataRate));
     }
 
+    public boolean initialize(Transport transport) throws IOException {
+        return (this.ser.initialize(transport));
+    }
+
     public void disconnect() throws SerialPortException {
         this.ser.disconnect();
     }
@@ -556,11 +553,18 @@ public class TinygDriver extends Observable {
      */
     public synchronized void write(String msg) throws Exception {
 
-        TinygDriver.getInstance().serialWriter.addCommandToBuffer(msg);
+        TinygDriver.getInstance().serialWriter.addCommandToBuffer(TinygCommand.of(msg));
         if(!Main.LOGLEVEL.equals("OFF")){
             Main.print("+" + msg);
         }
     }
+
+    public synchronized void write(TinygCommand cmd) throws Exception {
+        serialWriter.addCommandToBuffer(cmd);
+        if(!Main.LOGLEVEL.equals("OFF")){
+            Main.print("+" + cmd);
+        }
+    }
     
    
 
@@ -575,7 +579,11 @@ public class TinygDriver extends Observable {
         if (!msg.contains("\n")) {
             msg = msg + "\n";
         }
-        ser.write(msg);
+        if (msg.startsWith("{")) {
+            //JSON lines get a footer back like any other line, so they have to be in flight
+            serialWriter.getFlowController().sent(msg.length());
+        }
+        ser.priorityWrite(msg);
         if(!Main.LOGLEVEL.equals("OFF")){
             Main.print("+" + msg);
         }
@@ -600,7 +608,7 @@ public class TinygDriver extends Observable {
 
     public String getPortName() {
         // Return the serial port name that is connected.
-        return ser.serialPort.getPortName();
+        return ser.getPortName();
     }
 
     public List<Axis> getInternalAllAxis() {
@@ -0,0 +1,376 @@
+/*
+ * Copyright (C) 2014 Synthetos LLC. All Rights reserved.
+ * http://www.synthetos.com
+ */
+package tgfx.tinyg;
+
+import org.json.JSONException;
+import static tgfx.tinyg.MnemonicManager.MNEMONIC_ID_NONE;
+
+/**
+ * A pull parser for the JSON lines TinyG sends back.
+ * <p>
+ * TinyG responses are small, shallow objects made of mnemonics, numbers,
+ * short strings and number arrays (the footer and queue reports). Rather
+ * than building a <code>JSONObject</code> for each line, this walks the bytes
+ * once and hands every value to a {@link Handler} keyed by its mnemonic id
+ * (see {@link MnemonicManager#mnemonicId}). Nothing is allocated per line.
+ * <p>
+ * Single group keys like <code>xvm</code> or <code>1ma</code> are split into
+ * their group and mnemonic the same way MnemonicManager.lookupSingleGroup()
+ * does, so the handler sees them as a one value group.
+ * <p>
+ * A parser instance is not thread safe, each thread needs its own.
+ *
+ */
+public class TinygPullParser {
+
+    /**
+     * Receives the values of a parsed line. The parent is the mnemonic id of
+     * the enclosing object, MNEMONIC_ID_NONE at the top level.
+     */
+    public interface Handler {
+
+        void beginGroup(int parent, int mnemonic);
+
+        void endGroup(int parent, int mnemonic);
+
+        void numberValue(int parent, int mnemonic, double value);
+
+        void booleanValue(int parent, int mnemonic, boolean value);
+
+        //The bytes are handed over raw, escape sequences are not decoded.
+        void stringValue(int parent, int mnemonic, byte[] buf, int offset, int length);
+
+        //Only the number elements of an array are kept.
+        void arrayValue(int parent, int mnemonic, double[] values, int count);
+
+        //The value of an unknown mnemonic is skipped.
+        void unknownMnemonic(int parent, byte[] buf, int offset, int length);
+    }
+    private static final int MAX_DEPTH = 8;
+    private static final int MAX_ARRAY_VALUES = 16;
+    private static final double[] POW10 = new double[19];
+
+    static {
+        POW10[0] = 1;
+        for (int i = 1; i < POW10.length; i++) {
+            POW10[i] = POW10[i - 1] * 10;
+        }
+    }
+    private final double[] arrayValues = new double[MAX_ARRAY_VALUES];
+    private byte[] buf;
+    private int pos;
+    private int end;
+    private Handler handler;
+
+    public void parse(byte[] buf, int offset, int length, Handler handler) throws JSONException {
+        this.buf = buf;
+        this.pos = offset;
+        this.end = offset + length;
+        this.handler = handler;
+        try {
+            skipWhitespace();
+            expect('{');
+            parseObject(MNEMONIC_ID_NONE, 0);
+        } finally {
+            this.buf = null;
+            this.handler = null;
+        }
+    }
+
+    //Called with the opening brace already consumed.
+    private void parseObject(int parent, int depth) throws JSONException {
+        if (depth >= MAX_DEPTH) {
+            throw error("JSON nested too deep");
+        }
+        skipWhitespace();
+        if (peek() == '}') {
+            pos++;
+            return;
+        }
+        while (true) {
+            skipWhitespace();
+            expect('"');
+            int keyStart = pos;
+            int keyEnd = skipString();
+            skipWhitespace();
+            expect(':');
+            skipWhitespace();
+            parseMember(parent, keyStart, keyEnd - keyStart, depth);
+            skipWhitespace();
+            byte b = next();
+            if (b == '}') {
+                return;
+            }
+            if (b != ',') {
+                throw error("Expected , or }");
+            }
+        }
+    }
+
+    private void parseMember(int parent, int keyStart, int keyLength, int depth) throws JSONException {
+        int groupChar = MNEMONIC_ID_NONE;
+        int mnemonic = MNEMONIC_ID_NONE;
+        if (keyLength > 1) {
+            groupChar = MnemonicManager.mnemonicId(buf, keyStart, 1);
+            int rest = MnemonicManager.mnemonicId(buf, keyStart + 1, keyLength - 1);
+            if ((MnemonicManager.isAxisGroup(groupChar) && MnemonicManager.isAxisMnemonic(rest))
+                    || (MnemonicManager.isMotorGroup(groupChar) && MnemonicManager.isMotorMnemonic(rest))) {
+                mnemonic = rest;
+            } else {
+                groupChar = MNEMONIC_ID_NONE;
+            }
+        }
+        if (groupChar != MNEMONIC_ID_NONE) {
+            //Single group value like {"xvm":16000}
+            handler.beginGroup(parent, groupChar);
+            parseValue(groupChar, mnemonic, depth + 1);
+            handler.endGroup(parent, groupChar);
+            return;
+        }
+        mnemonic = MnemonicManager.mnemonicId(buf, keyStart, keyLength);
+        if (mnemonic == MNEMONIC_ID_NONE) {
+            handler.unknownMnemonic(parent, buf, keyStart, keyLength);
+            skipValue(depth);
+            return;
+        }
+        parseValue(parent, mnemonic, depth);
+    }
+
+    private void parseValue(int parent, int mnemonic, int depth) throws JSONException {
+        byte b = peek();
+        switch (b) {
+            case '{':
+                pos++;
+                handler.beginGroup(parent, mnemonic);
+                parseObject(mnemonic, depth + 1);
+                handler.endGroup(parent, mnemonic);
+                break;
+            case '[':
+                pos++;
+                handler.arrayValue(parent, mnemonic, arrayValues, parseArray(depth));
+                break;
+            case '"':
+                pos++;
+                int start = pos;
+                int stringEnd = skipString();
+                handler.stringValue(parent, mnemonic, buf, start, stringEnd - start);
+                break;
+            case 't':
+                expectLiteral("true");
+                handler.booleanValue(parent, mnemonic, true);
+                break;
+            case 'f':
+                expectLiteral("false");
+                handler.booleanValue(parent, mnemonic, false);
+                break;
+            case 'n':
+                expectLiteral("null");
+                break;
+            default:
+                handler.numberValue(parent, mnemonic, parseNumber());
+        }
+    }
+
+    //Called with the opening bracket already consumed.
+    private int parseArray(int depth) throws JSONException {
+        int count = 0;
+        skipWhitespace();
+        if (peek() == ']') {
+            pos++;
+            return 0;
+        }
+        while (true) {
+            skipWhitespace();
+            byte b = peek();
+            if ((b == '-' || (b >= '0' && b <= '9')) && count < MAX_ARRAY_VALUES) {
+                arrayValues[count++] = parseNumber();
+            } else {
+                skipValue(depth);
+            }
+            skipWhitespace();
+            b = next();
+            if (b == ']') {
+                return count;
+            }
+            if (b != ',') {
+                throw error("Expected , or ]");
+            }
+        }
+    }
+
+    private void skipValue(int depth) throws JSONException {
+        if (depth >= MAX_DEPTH) {
+            throw error("JSON nested too deep");
+        }
+        byte b = peek();
+        switch (b) {
+            case '{':
+            case '[':
+                pos++;
+                byte close = b == '{' ? (byte) '}' : (byte) ']';
+                skipWhitespace();
+                if (peek() == close) {
+                    pos++;
+                    return;
+                }
+                while (true) {
+                    skipWhitespace();
+                    if (close == '}') {
+                        expect('"');
+                        skipString();
+                        skipWhitespace();
+                        expect(':');
+                        skipWhitespace();
+                    }
+                    skipValue(depth + 1);
+                    skipWhitespace();
+                    byte n = next();
+                    if (n == close) {
+                        return;
+                    }
+                    if (n != ',') {
+                        throw error("Malformed JSON");
+                    }
+                }
+            case '"':
+                pos++;
+                skipString();
+                break;
+            case 't':
+                expectLiteral("true");
+                break;
+            case 'f':
+                expectLiteral("false");
+                break;
+            case 'n':
+                expectLiteral("null");
+                break;
+            default:
+                parseNumber();
+        }
+    }
+
+    //Called with the opening quote consumed, returns the index of the closing one.
+    private int skipString() throws JSONException {
+        while (pos < end) {
+            byte b = buf[pos];
+            if (b == '"') {
+                return pos++;
+            }
+            pos += b == '\\' ? 2 : 1;
+        }
+        throw error("Unterminated string");
+    }
+
+    private double parseNumber() throws JSONException {
+        boolean negative = false;
+        if (pos < end && buf[pos] == '-') {
+            negative = true;
+            pos++;
+        }
+        long mantissa = 0;
+        int digits = 0;
+        int scale = 0;
+        int start = pos;
+        while (pos < end && buf[pos] >= '0' && buf[pos] <= '9') {
+            if (digits < 18) {
+                mantissa = mantissa * 10 + (buf[pos] - '0');
+                if (mantissa != 0) {
+                    digits++;
+                }
+            } else {
+                scale--;  //Too many digits to hold, drop the low order ones.
+            }
+            pos++;
+        }
+        if (pos < end && buf[pos] == '.') {
+            pos++;
+            while (pos < end && buf[pos] >= '0' && buf[pos] <= '9') {
+                if (digits < 18) {
+                    mantissa = mantissa * 10 + (buf[pos] - '0');
+                    if (mantissa != 0) {
+                        digits++;
+                    }
+                    scale++;
+                }
+                pos++;
+            }
+        }
+        if (pos == start) {
+            throw error("Expected a value");
+        }
+        int exponent = 0;
+        if (pos < end && (buf[pos] == 'e' || buf[pos] == 'E')) {
+            pos++;
+            boolean negativeExponent = false;
+            if (pos < end && (buf[pos] == '-' || buf[pos] == '+')) {
+                negativeExponent = buf[pos] == '-';
+                pos++;
+            }
+            while (pos < end && buf[pos] >= '0' && buf[pos] <= '9') {
+                if (exponent < 1000) {
+                    exponent = exponent * 10 + (buf[pos] - '0');
+                }
+                pos++;
+            }
+            if (negativeExponent) {
+                exponent = -exponent;
+            }
+        }
+        double value = scale(mantissa, exponent - scale);
+        return negative ? -value : value;
+    }
+
+    private static double scale(long mantissa, int exponent) {
+        if (mantissa == 0 || exponent == 0) {
+            return mantissa;
+        }
+        if (exponent > 0 && exponent < POW10.length) {
+            return mantissa * POW10[exponent];
+        }
+        if (exponent < 0 && -exponent < POW10.length) {
+            return mantissa / POW10[-exponent];
+        }
+        return mantissa * Math.pow(10, exponent);
+    }
+
+    private void expectLiteral(String literal) throws JSONException {
+        for (int i = 0; i < literal.length(); i++) {
+            if (next() != literal.charAt(i)) {
+                throw error("Expected " + literal);
+            }
+        }
+    }
+
+    private void expect(char c) throws JSONException {
+        if (next() != c) {
+            throw error("Expected " + c);
+        }
+    }
+
+    private byte next() throws JSONException {
+        if (pos >= end) {
+            throw error("Unexpected end of line");
+        }
+        return buf[pos++];
+    }
+
+    private byte peek() throws JSONException {
+        if (pos >= end) {
+            throw error("Unexpected end of line");
+        }
+        return buf[pos];
+    }
+
+    private void skipWhitespace() {
+        while (pos < end && (buf[pos] == ' ' || buf[pos] == '\t' || buf[pos] == '\r' || buf[pos] == '\n')) {
+            pos++;
+        }
+    }
+
+    private JSONException error(String message) {
+        return new JSONException(message + " at " + pos);
+    }
+}
@@ -0,0 +1,89 @@
+/*
+ * Copyright (C) 2014 Synthetos LLC. All Rights reserved.
+ * http://www.synthetos.com
+ */
+package tgfx.transport;
+
+import java.io.IOException;
+
+/**
+ * The <code>LoopbackTransport</code> class connects tgFX to something in the
+ * same process, no port and no board.
+ * <p>
+ * Bytes tgFX writes go to the {@link Device}, and the device answers with
+ * {@link #deliver(byte[], int, int)}. Without a device every byte written
+ * comes straight back, which is enough to exercise the framer and the
+ * parser. Deliveries are serialized, so the listener sees one thread at a
+ * time no matter how many threads the device answers from.
+ */
+public class LoopbackTransport implements Transport {
+
+    public interface Device {
+
+        /**
+         * Called on the SerialOutput thread, buf is only valid during the
+         * call.
+         */
+        void received(byte[] buf, int offset, int length);
+    }
+    private final String name;
+    private volatile Device device;
+    private volatile Listener listener;
+    private volatile boolean open = false;
+
+    public LoopbackTransport() {
+        this("loopback");
+    }
+
+    public LoopbackTransport(String name) {
+        this.name = name;
+    }
+
+    public void setDevice(Device device) {
+        this.device = device;
+    }
+
+    @Override
+    public void open(Listener listener) throws IOException {
+        this.listener = listener;
+        open = true;
+    }
+
+    @Override
+    public void close() throws IOException {
+        open = false;
+    }
+
+    @Override
+    public boolean isOpen() {
+        return open;
+    }
+
+    @Override
+    public void write(byte[] buf, int offset, int length) throws IOException {
+        if (!open) {
+            throw new IOException(name + " is closed");
+        }
+        Device d = device;
+        if (d == null) {
+            deliver(buf, offset, length);
+        } else {
+            d.received(buf, offset, length);
+        }
+    }
+
+    /**
+     * Hands bytes from the device to tgFX.
+     */
+    public synchronized void deliver(byte[] buf, int offset, int length) {
+        Listener l = listener;
+        if (open && l != null) {
+            l.bytesReceived(buf, offset, length);
+        }
+    }
+
+    @Override
+    public String getName() {
+        return name;
+    }
+}
@@ -0,0 +1,106 @@
+/*
+ * Copyright (C) 2014 Synthetos LLC. All Rights reserved.
+ * http://www.synthetos.com
+ */
+package tgfx.transport;
+
+import java.io.IOException;
+import jssc.SerialPort;
+import jssc.SerialPortEvent;
+import jssc.SerialPortEventListener;
+import jssc.SerialPortException;
+import jssc.SerialPortTimeoutException;
+import org.apache.log4j.Logger;
+
+/**
+ * The <code>SerialTransport</code> class talks to a TinyG on a local serial
+ * port through jssc, with RTS/CTS flow control.
+ * <p>
+ * jssc only writes whole arrays. A write of part of an array is copied into
+ * a reusable array of exactly that length, one per length.
+ */
+public class SerialTransport implements Transport, SerialPortEventListener {
+
+    private static final Logger logger = Logger.getLogger(SerialTransport.class);
+    private static final int MAX_CACHED_WRITE = 1024;
+    private final String portName;
+    private final int dataRate;
+    private final byte[][] writeArrays = new byte[MAX_CACHED_WRITE + 1][];
+    private SerialPort serialPort;
+    private volatile Listener listener;
+
+    public SerialTransport(String portName, int dataRate) {
+        this.portName = portName;
+        this.dataRate = dataRate;
+    }
+
+    @Override
+    public void open(Listener listener) throws IOException {
+        this.listener = listener;
+        serialPort = new SerialPort(portName);
+        try {
+            serialPort.openPort();
+            serialPort.setParams(dataRate,
+                    SerialPort.DATABITS_8,
+                    SerialPort.STOPBITS_1,
+                    SerialPort.PARITY_NONE);
+            serialPort.setFlowControlMode(SerialPort.FLOWCONTROL_RTSCTS_IN | SerialPort.FLOWCONTROL_RTSCTS_OUT);
+            serialPort.setRTS(true);
+            serialPort.addEventListener(this);
+        } catch (SerialPortException ex) {
+            throw new IOException(ex.getMessage(), ex);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (serialPort != null && serialPort.isOpened()) {
+            try {
+                serialPort.closePort();
+            } catch (SerialPortException ex) {
+                throw new IOException(ex.getMessage(), ex);
+            }
+        }
+    }
+
+    @Override
+    public boolean isOpen() {
+        return serialPort != null && serialPort.isOpened();
+    }
+
+    @Override
+    public void write(byte[] buf, int offset, int length) throws IOException {
+        byte[] bytes = buf;
+        if (offset != 0 || length != buf.length) {
+            bytes = length <= MAX_CACHED_WRITE ? writeArrays[length] : new byte[length];
+            if (bytes == null) {
+                bytes = writeArrays[length] = new byte[length];
+            }
+            System.arraycopy(buf, offset, bytes, 0, length);
+        }
+        try {
+            serialPort.writeBytes(bytes);
+        } catch (SerialPortException ex) {
+            throw new IOException(ex.getMessage(), ex);
+        }
+    }
+
+    @Override
+    public String getName() {
+        return portName;
+    }
+
+    @Override
+    public void serialEvent(SerialPortEvent event) {
+        if (event.isRXCHAR()) {
+            byte[] tmpBuffer;
+            try {
+                tmpBuffer = serialPort.readBytes(event.getEventValue(), serialPort.getInputBufferBytesCount());
+            } catch (SerialPortException | SerialPortTimeoutException ex) {
+                logger.error("Error reading from " + portName + ": " + ex.getMessage());
+                return;
+            }
+            listener.bytesReceived(tmpBuffer, 0, tmpBuffer.length);
+        }
+    }
+}
@@ -0,0 +1,89 @@
+/*
+ * Copyright (C) 2014 Synthetos LLC. All Rights reserved.
+ * http://www.synthetos.com
+ */
+package tgfx.transport;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import org.apache.log4j.Logger;
+
+/**
+ * The <code>TcpTransport</code> class talks to a TinyG behind a
+ * serial-over-network bridge (ser2net, an ESP8266 bridge, ...) or to a
+ * simulator listening on a socket.
+ * <p>
+ * Nagle is turned off, TinyG lines are short and we want them on the wire
+ * now. A reader thread hands whatever the socket returns to the listener.
+ */
+public class TcpTransport implements Transport {
+
+    private static final Logger logger = Logger.getLogger(TcpTransport.class);
+    private static final int CONNECT_TIMEOUT = 2000;
+    private final String host;
+    private final int port;
+    private Socket socket;
+    private OutputStream output;
+    private volatile boolean open = false;
+
+    public TcpTransport(String host, int port) {
+        this.host = host;
+        this.port = port;
+    }
+
+    @Override
+    public void open(final Listener listener) throws IOException {
+        socket = new Socket();
+        socket.setTcpNoDelay(true);
+        socket.connect(new InetSocketAddress(host, port), CONNECT_TIMEOUT);
+        output = socket.getOutputStream();
+        final InputStream input = socket.getInputStream();
+        open = true;
+        Thread reader = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                byte[] buf = new byte[4096];
+                try {
+                    int n;
+                    while ((n = input.read(buf)) > 0) {
+                        listener.bytesReceived(buf, 0, n);
+                    }
+                } catch (IOException ex) {
+                    if (open) {
+                        logger.error("Error reading from " + getName() + ": " + ex.getMessage());
+                    }
+                }
+                open = false;
+            }
+        }, "TcpTransport " + getName());
+        reader.setDaemon(true);
+        reader.start();
+    }
+
+    @Override
+    public void close() throws IOException {
+        open = false;
+        if (socket != null) {
+            socket.close();
+        }
+    }
+
+    @Override
+    public boolean isOpen() {
+        return open;
+    }
+
+    @Override
+    public void write(byte[] buf, int offset, int length) throws IOException {
+        output.write(buf, offset, length);
+        output.flush();
+    }
+
+    @Override
+    public String getName() {
+        return host + ":" + port;
+    }
+}
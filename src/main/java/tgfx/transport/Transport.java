@@ -0,0 +1,47 @@
+/*
+ * Copyright (C) 2014 Synthetos LLC. All Rights reserved.
+ * http://www.synthetos.com
+ */
+package tgfx.transport;
+
+import java.io.IOException;
+
+/**
+ * The <code>Transport</code> interface is the byte pipe between tgFX and a
+ * TinyG. The SerialDriver frames and parses what comes in and writes what
+ * goes out, without caring what carries the bytes.
+ * <p>
+ * A transport calls its {@link Listener} from one thread at a time. The
+ * SerialOutput thread is the only caller of {@link #write(byte[], int, int)}.
+ *
+ * @see SerialTransport
+ * @see TcpTransport
+ * @see LoopbackTransport
+ * @see tgfx.SerialDriver
+ */
+public interface Transport {
+
+    public interface Listener {
+
+        /**
+         * @param buf bytes read from TinyG, only valid during the call
+         */
+        void bytesReceived(byte[] buf, int offset, int length);
+    }
+
+    /**
+     * Opens the transport, received bytes go to the listener from then on.
+     */
+    void open(Listener listener) throws IOException;
+
+    void close() throws IOException;
+
+    boolean isOpen();
+
+    void write(byte[] buf, int offset, int length) throws IOException;
+
+    /**
+     * @return a name for the UI and the log, like the serial port name
+     */
+    String getName();
+}
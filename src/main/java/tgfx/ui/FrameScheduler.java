@@ -0,0 +1,124 @@
+/*
+ * Copyright (C) 2014 Synthetos LLC. All Rights reserved.
+ * http://www.synthetos.com
+ */
+package tgfx.ui;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import javafx.animation.AnimationTimer;
+import org.apache.log4j.Logger;
+
+/**
+ * The <code>FrameScheduler</code> class repaints parts of the GUI at most
+ * once a frame, however often the models behind them change.
+ * <p>
+ * Each part of the GUI, like the preview, the buffer gauge or the settings
+ * of one axis, is a region with a painter. Any thread marks a region dirty,
+ * which is one bit in an AtomicLong and puts nothing in the FX event queue.
+ * On every pulse the dirty regions are painted once each, with whatever
+ * the models hold by then. A burst of axis settings at connect time or
+ * status reports at 50Hz end up as one repaint a frame.
+ * <p>
+ * Regions are registered on the FX thread before the scheduler is started,
+ * there can be up to {@link #MAX_REGIONS}.
+ */
+public class FrameScheduler extends AnimationTimer {
+
+    private static final Logger logger = Logger.getLogger(FrameScheduler.class);
+    public static final int MAX_REGIONS = 64;
+    private final AtomicLong dirty = new AtomicLong();
+    private final Runnable[] painters = new Runnable[MAX_REGIONS];
+    private final String[] names = new String[MAX_REGIONS];
+    private final ConcurrentHashMap<String, Integer> regionsByName = new ConcurrentHashMap<>();
+    private int regionCount = 0;
+    //Metrics, only touched by the FX thread
+    private volatile long frames = 0;
+    private volatile long paints = 0;
+
+    /**
+     * @param name how the region is marked by name, like "axis X"
+     * @param painter brings the region up to date, runs on the FX thread
+     * @return the region, for {@link #markDirty(int)}
+     */
+    public synchronized int register(String name, Runnable painter) {
+        if (regionCount == MAX_REGIONS) {
+            throw new IllegalStateException("No room for region " + name);
+        }
+        int region = regionCount++;
+        painters[region] = painter;
+        names[region] = name;
+        regionsByName.put(name, region);
+        return region;
+    }
+
+    /**
+     * Has the region painted on the next pulse. Safe from any thread.
+     */
+    public void markDirty(int region) {
+        long bit = 1L << region;
+        long d;
+        do {
+            d = dirty.get();
+            if ((d & bit) != 0) {
+                return;  //Already waiting for the next pulse
+            }
+        } while (!dirty.compareAndSet(d, d | bit));
+    }
+
+    /**
+     * @return false if there is no region of that name
+     */
+    public boolean markDirty(String name) {
+        Integer region = regionsByName.get(name);
+        if (region == null) {
+            return false;
+        }
+        markDirty(region);
+        return true;
+    }
+
+    public boolean isDirty(int region) {
+        return (dirty.get() & (1L << region)) != 0;
+    }
+
+    @Override
+    public void handle(long now) {
+        paintDirty();
+    }
+
+    /**
+     * Paints the dirty regions in the order they were registered.
+     *
+     * @return how many were painted
+     */
+    int paintDirty() {
+        long d = dirty.getAndSet(0);
+        if (d == 0) {
+            return 0;
+        }
+        frames++;
+        int painted = 0;
+        while (d != 0) {
+            int region = Long.numberOfTrailingZeros(d);
+            d &= d - 1;
+            try {
+                painters[region].run();
+            } catch (Exception ex) {
+                //One region must not keep the others from being painted
+                logger.error("[!]Error painting " + names[region] + ": " + ex.getMessage(), ex);
+            }
+            painted++;
+        }
+        paints += painted;
+        return painted;
+    }
+
+    public long getFrames() {
+        return frames;
+    }
+
+    public long getPaints() {
+        return paints;
+    }
+}
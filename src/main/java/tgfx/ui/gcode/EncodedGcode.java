@@ -0,0 +1,90 @@
+/*
+ * Copyright (C) 2014 Synthetos LLC. All Rights reserved.
+ * http://www.synthetos.com
+ */
+package tgfx.ui.gcode;
+
+import java.nio.charset.StandardCharsets;
+import tgfx.tinyg.TinygCommand;
+
+/**
+ * The <code>EncodedGcode</code> class is a run of lines of a GcodeDocument
+ * made ready to send by the {@link GcodePreprocessor}.
+ * <p>
+ * Every line is already numbered, wrapped as {"gc":"line"}\n and encoded,
+ * one after the other in one byte array. Next to it is the metadata of each
+ * line: where its payload ends and whether it is a comment. Comment lines
+ * have no payload, they only go to the console.
+ */
+public final class EncodedGcode {
+
+    public static final byte COMMENT = 1;
+    private final int firstLine;
+    private final byte[] payloads;
+    private final int[] ends;
+    private final byte[] flags;
+
+    EncodedGcode(int firstLine, byte[] payloads, int[] ends, byte[] flags) {
+        this.firstLine = firstLine;
+        this.payloads = payloads;
+        this.ends = ends;
+        this.flags = flags;
+    }
+
+    /**
+     * @return the line of the document the first line is
+     */
+    public int getFirstLine() {
+        return firstLine;
+    }
+
+    public int getLineCount() {
+        return ends.length;
+    }
+
+    /**
+     * @param i the line, counted from {@link #getFirstLine()}
+     */
+    public boolean isComment(int i) {
+        return (flags[i] & COMMENT) != 0;
+    }
+
+    /**
+     * @return where the payload of the line starts in {@link #payloads()}
+     */
+    public int getPayloadStart(int i) {
+        return i == 0 ? 0 : ends[i - 1];
+    }
+
+    public int getPayloadLength(int i) {
+        return ends[i] - getPayloadStart(i);
+    }
+
+    /**
+     * @return the payloads of all lines, no copy
+     */
+    public byte[] payloads() {
+        return payloads;
+    }
+
+    /**
+     * @return the bytes of all payloads
+     */
+    public int getPayloadBytes() {
+        return ends.length == 0 ? 0 : ends[ends.length - 1];
+    }
+
+    /**
+     * @return a pooled command for a line that is not a comment
+     */
+    public TinygCommand command(int i) {
+        return TinygCommand.gcode(payloads, getPayloadStart(i), getPayloadLength(i));
+    }
+
+    /**
+     * @return the payload of the line as text
+     */
+    public String getPayload(int i) {
+        return new String(payloads, getPayloadStart(i), getPayloadLength(i), StandardCharsets.US_ASCII);
+    }
+}
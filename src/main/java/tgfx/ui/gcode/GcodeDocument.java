@@ -0,0 +1,296 @@
+/*
+ * Copyright (C) 2014 Synthetos LLC. All Rights reserved.
+ * http://www.synthetos.com
+ */
+package tgfx.ui.gcode;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+
+/**
+ * The <code>GcodeDocument</code> class is a read-only G-code file that is
+ * read straight from a memory mapping of the file, line by line as it is
+ * needed.
+ * <p>
+ * Opening a file makes one sequential pass over it to index where every
+ * line starts. Blank lines are left out like the Gcode tab always did, and
+ * the pass stops at the first line with a byte TinyG would take as a
+ * command, see {@link #getBadLine()}. The index is an int per line, a long
+ * for files over 2GB, and the lines themselves stay in the page cache
+ * instead of the heap. A line only becomes a String when it is asked for,
+ * numbered with an N the way the Gcode tab shows and sends it.
+ * <p>
+ * All reads are absolute, so the table and the file sender can read at
+ * the same time. A document can also be {@link #map(File) mapped} first and
+ * indexed on another thread, the lines indexed so far can be read while the
+ * rest is still being indexed.
+ */
+public class GcodeDocument implements Closeable {
+
+    private static final int SEGMENT_BITS = 30;
+    private static final long SEGMENT_SIZE = 1L << SEGMENT_BITS;
+    //How often the IndexListener hears about progress, must be a power of 2
+    public static final int NOTIFY_LINES = 16384;
+    private final File file;
+    private final RandomAccessFile raf;
+    private final MappedByteBuffer[] segments;
+    private final long size;
+    //Start of every line, offsets when the file is under 2GB, longOffsets otherwise
+    private volatile int[] offsets;
+    private volatile long[] longOffsets;
+    private volatile int lineCount = 0;
+    private volatile int badLine = -1;
+    private boolean indexed = false;
+    private IndexListener listener;
+
+    /**
+     * Hears how far indexing has come.
+     */
+    public interface IndexListener {
+
+        /**
+         * Called from the indexing thread every {@link #NOTIFY_LINES} lines.
+         *
+         * @param lineCount the lines that can be read by now
+         * @param position how far into the file indexing is
+         * @return false to stop indexing
+         */
+        boolean linesIndexed(int lineCount, long position);
+    }
+
+    private GcodeDocument(File file) throws IOException {
+        this.file = file;
+        this.raf = new RandomAccessFile(file, "r");
+        try {
+            FileChannel channel = raf.getChannel();
+            size = channel.size();
+            segments = new MappedByteBuffer[(int) ((size + SEGMENT_SIZE - 1) >>> SEGMENT_BITS)];
+            for (int i = 0; i < segments.length; i++) {
+                long start = (long) i << SEGMENT_BITS;
+                segments[i] = channel.map(FileChannel.MapMode.READ_ONLY, start, Math.min(SEGMENT_SIZE, size - start));
+            }
+        } catch (IOException ex) {
+            raf.close();
+            throw ex;
+        }
+    }
+
+    /**
+     * Maps the file and indexes its lines.
+     */
+    public static GcodeDocument open(File file) throws IOException {
+        GcodeDocument document = map(file);
+        document.index(null);
+        return document;
+    }
+
+    /**
+     * Maps the file, it has no lines until it is {@link #index indexed}.
+     */
+    public static GcodeDocument map(File file) throws IOException {
+        return new GcodeDocument(file);
+    }
+
+    /**
+     * Indexes the lines of the file, once.
+     *
+     * @param listener hears how far indexing has come, may be null
+     * @return false if the listener stopped indexing
+     */
+    public synchronized boolean index(IndexListener listener) {
+        if (indexed) {
+            throw new IllegalStateException(file + " is already indexed");
+        }
+        indexed = true;
+        this.listener = listener;
+        try {
+            return indexLines();
+        } finally {
+            this.listener = null;
+        }
+    }
+
+    private boolean indexLines() {
+        //About 24 bytes a line in most CAM output, the array grows if not
+        int capacity = (int) Math.min(Integer.MAX_VALUE - 8, Math.max(16, size / 24));
+        if (size <= Integer.MAX_VALUE) {
+            offsets = new int[capacity];
+        } else {
+            longOffsets = new long[capacity];
+        }
+        long lineStart = 0;
+        boolean blank = true;
+        boolean bad = false;
+        for (int s = 0; s < segments.length; s++) {
+            MappedByteBuffer segment = segments[s];
+            long base = (long) s << SEGMENT_BITS;
+            int limit = segment.limit();
+            for (int i = 0; i < limit; i++) {
+                byte b = segment.get(i);
+                if (b == '\n') {
+                    if (!addLine(lineStart, blank, bad)) {
+                        return badLine >= 0;
+                    }
+                    lineStart = base + i + 1;
+                    blank = true;
+                    bad = false;
+                } else if (b != '\r') {
+                    blank = false;
+                    bad |= GcodeLine.isBadByte(b);
+                }
+            }
+        }
+        if (!addLine(lineStart, blank, bad)) {
+            return badLine >= 0;
+        }
+        trim();
+        return true;
+    }
+
+    /**
+     * @return false if the line is bad or the listener stopped indexing
+     */
+    private boolean addLine(long start, boolean blank, boolean bad) {
+        if (blank) {
+            return true;
+        }
+        if (bad) {
+            badLine = lineCount;
+            trim();
+            return false;
+        }
+        if (offsets != null) {
+            if (lineCount == offsets.length) {
+                offsets = Arrays.copyOf(offsets, grow(offsets.length));
+            }
+            offsets[lineCount] = (int) start;
+        } else {
+            if (lineCount == longOffsets.length) {
+                longOffsets = Arrays.copyOf(longOffsets, grow(longOffsets.length));
+            }
+            longOffsets[lineCount] = start;
+        }
+        lineCount++;
+        if (listener != null && (lineCount & (NOTIFY_LINES - 1)) == 0) {
+            return listener.linesIndexed(lineCount, start);
+        }
+        return true;
+    }
+
+    private static int grow(int length) {
+        if (length == Integer.MAX_VALUE - 8) {
+            throw new IllegalStateException("Too many lines");
+        }
+        return (int) Math.min(Integer.MAX_VALUE - 8, length * 2L);
+    }
+
+    private void trim() {
+        if (offsets != null) {
+            offsets = Arrays.copyOf(offsets, lineCount);
+        } else {
+            longOffsets = Arrays.copyOf(longOffsets, lineCount);
+        }
+    }
+
+    byte byteAt(long position) {
+        return segments[(int) (position >>> SEGMENT_BITS)].get((int) (position & (SEGMENT_SIZE - 1)));
+    }
+
+    /**
+     * @return where the line starts in the file
+     */
+    public long getOffset(int line) {
+        if (line < 0 || line >= lineCount) {
+            throw new IndexOutOfBoundsException("Line " + line + " of " + lineCount);
+        }
+        return offsets != null ? offsets[line] : longOffsets[line];
+    }
+
+    /**
+     * @return the length of the line as it is in the file, without the
+     * line end
+     */
+    public int getRawLength(int line) {
+        long start = getOffset(line);
+        long end = start;
+        while (end < size && byteAt(end) != '\n') {
+            end++;
+        }
+        if (end > start && byteAt(end - 1) == '\r') {
+            end--;
+        }
+        return (int) (end - start);
+    }
+
+    /**
+     * @return the line as it is in the file
+     */
+    public String getRawLine(int line) {
+        long start = getOffset(line);
+        int length = getRawLength(line);
+        char[] chars = new char[length];
+        for (int i = 0; i < length; i++) {
+            chars[i] = (char) (byteAt(start + i) & 0xff);
+        }
+        return new String(chars);
+    }
+
+    /**
+     * @return the line with an N number in front unless it has one, the
+     * way it is shown and sent
+     */
+    public String getLine(int line) {
+        String raw = getRawLine(line);
+        if (raw.length() > 0 && (raw.charAt(0) == 'N' || raw.charAt(0) == 'n')) {
+            return raw;
+        }
+        return "N" + line + " " + raw;
+    }
+
+    /**
+     * @return the lines indexed so far, blank lines left out
+     */
+    public int getLineCount() {
+        return lineCount;
+    }
+
+    /**
+     * @return the line that holds a !, ~ or Ctrl-X, -1 if there is none. No
+     * lines from there on are indexed.
+     */
+    public int getBadLine() {
+        return badLine;
+    }
+
+    public File getFile() {
+        return file;
+    }
+
+    public long getSize() {
+        return size;
+    }
+
+    /**
+     * @return the heap the line index takes
+     */
+    public long getIndexBytes() {
+        if (offsets != null) {
+            return 4L * offsets.length;
+        }
+        return longOffsets != null ? 8L * longOffsets.length : 0;
+    }
+
+    /**
+     * Closes the file. The mapping goes away once nothing uses the
+     * document anymore.
+     */
+    @Override
+    public void close() throws IOException {
+        raf.close();
+    }
+}
@@ -11,6 +11,17 @@ import javafx.beans.property.SimpleStringProperty;
  * @author ril3y
  */
 public class GcodeLine {
+    //0x21 = !, 0x18 = Ctrl-X, 0x7e = ~
+    //These are considered bad bytes in gcode files.  These will trigger tinyg to throw interrupts
+    private static final byte[] BAD_BYTES = {(byte) 0x21, (byte) 0x18, (byte) 0x7e};
+    //BAD_BYTES by value, so checking a byte is one lookup
+    private static final boolean[] IS_BAD_BYTE = new boolean[256];
+
+    static {
+        for (byte b : BAD_BYTES) {
+            IS_BAD_BYTE[b & 0xff] = true;
+        }
+    }
     public SimpleStringProperty codeLine;// = new SimpleStringProperty();// = new SimpleStringProperty("<gcodeLine>");
     public int gcodeLineNumber;
     
@@ -31,6 +42,14 @@ public class GcodeLine {
     public String getGcodeLineJsonified(){
         return("{\"gc\":\""+codeLine.get()+"\"}\n");
     }
+
+    /**
+     * @return true for a byte TinyG would take as a command in a line of
+     * gcode
+     */
+    public static boolean isBadByte(byte b) {
+        return IS_BAD_BYTE[b & 0xff];
+    }
     
     
     
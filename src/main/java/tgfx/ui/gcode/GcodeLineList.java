@@ -0,0 +1,187 @@
+/*
+ * Copyright (C) 2014 Synthetos LLC. All Rights reserved.
+ * http://www.synthetos.com
+ */
+package tgfx.ui.gcode;
+
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import javafx.beans.InvalidationListener;
+import javafx.collections.ListChangeListener;
+import javafx.collections.ObservableList;
+
+/**
+ * The <code>GcodeLineList</code> class shows the lines of a GcodeDocument in
+ * the Gcode table, while the document is still being indexed.
+ * <p>
+ * A GcodeLine is only made when the table asks for a row. The loader
+ * {@link #publish(int) publishes} the lines indexed so far in chunks, and
+ * every chunk is one change to the table instead of one per line, so the
+ * table can be scrolled before the file is loaded. The list can not be
+ * changed any other way. Only used on the FX thread.
+ */
+class GcodeLineList extends AbstractList<GcodeLine> implements ObservableList<GcodeLine> {
+
+    private final GcodeDocument document;
+    private int size = 0;
+    private final List<ListChangeListener<? super GcodeLine>> listChangeListeners = new ArrayList<>();
+    private final List<InvalidationListener> invalidationListeners = new ArrayList<>();
+
+    GcodeLineList(GcodeDocument document) {
+        this.document = document;
+    }
+
+    GcodeDocument getDocument() {
+        return document;
+    }
+
+    /**
+     * Adds the lines up to count to the list, the document must have
+     * indexed them.
+     */
+    void publish(int count) {
+        if (count <= size) {
+            return;
+        }
+        int from = size;
+        size = count;
+        Added change = new Added(from, count);
+        for (InvalidationListener listener : new ArrayList<>(invalidationListeners)) {
+            listener.invalidated(this);
+        }
+        for (ListChangeListener<? super GcodeLine> listener : new ArrayList<>(listChangeListeners)) {
+            change.reset();
+            listener.onChanged(change);
+        }
+    }
+
+    @Override
+    public GcodeLine get(int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("Line " + index + " of " + size);
+        }
+        return new GcodeLine(document.getLine(index), index);
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public void addListener(ListChangeListener<? super GcodeLine> listener) {
+        listChangeListeners.add(listener);
+    }
+
+    @Override
+    public void removeListener(ListChangeListener<? super GcodeLine> listener) {
+        listChangeListeners.remove(listener);
+    }
+
+    @Override
+    public void addListener(InvalidationListener listener) {
+        invalidationListeners.add(listener);
+    }
+
+    @Override
+    public void removeListener(InvalidationListener listener) {
+        invalidationListeners.remove(listener);
+    }
+
+    @Override
+    public boolean addAll(GcodeLine... elements) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public boolean setAll(GcodeLine... elements) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public boolean setAll(Collection<? extends GcodeLine> col) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public boolean removeAll(GcodeLine... elements) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public boolean retainAll(GcodeLine... elements) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void remove(int from, int to) {
+        throw new UnsupportedOperationException();
+    }
+
+    /**
+     * Lines from..to were added at the end.
+     */
+    private class Added extends ListChangeListener.Change<GcodeLine> {
+
+        private final int from;
+        private final int to;
+        private boolean onChange = false;
+        private boolean done = false;
+
+        Added(int from, int to) {
+            super(GcodeLineList.this);
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        public boolean next() {
+            if (done) {
+                onChange = false;
+                return false;
+            }
+            done = true;
+            onChange = true;
+            return true;
+        }
+
+        @Override
+        public void reset() {
+            done = false;
+            onChange = false;
+        }
+
+        @Override
+        public int getFrom() {
+            checkState();
+            return from;
+        }
+
+        @Override
+        public int getTo() {
+            checkState();
+            return to;
+        }
+
+        @Override
+        public List<GcodeLine> getRemoved() {
+            checkState();
+            return Collections.emptyList();
+        }
+
+        @Override
+        protected int[] getPermutation() {
+            checkState();
+            return new int[0];
+        }
+
+        private void checkState() {
+            if (!onChange) {
+                throw new IllegalStateException("Call next() first");
+            }
+        }
+    }
+}
@@ -0,0 +1,163 @@
+/*
+ * Copyright (C) 2014 Synthetos LLC. All Rights reserved.
+ * http://www.synthetos.com
+ */
+package tgfx.ui.gcode;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * The <code>GcodePreprocessor</code> class turns lines of a GcodeDocument
+ * into {@link EncodedGcode} on a ForkJoinPool, so the file sender only
+ * copies bytes into the writer queue.
+ * <p>
+ * A range of lines is split into chunks of {@link #CHUNK_LINES}. Lines start
+ * right after a newline, so chunks never split one. Every chunk is done in
+ * one pass over its bytes: the N number is put in front, a line with a
+ * comment is marked, the rest is wrapped as {"gc":"line"}\n and encoded as
+ * ASCII the way TinygCommand.gcode() does. Bad bytes and blank lines never
+ * get here, the document leaves them out when it is indexed.
+ */
+public class GcodePreprocessor {
+
+    //Small enough that a JobStreamer window spreads over the cores, big enough to be worth a task
+    public static final int CHUNK_LINES = 64;
+    private static final byte[] GCODE_PREFIX = {'{', '"', 'g', 'c', '"', ':', '"'};
+    private static final byte[] GCODE_SUFFIX = {'"', '}', '\n'};
+    //N, up to 10 digits and a space, plus the wrapping
+    private static final int MAX_EXTRA = 12 + GCODE_PREFIX.length + GCODE_SUFFIX.length;
+    private final ForkJoinPool pool;
+
+    GcodePreprocessor(int parallelism) {
+        pool = new ForkJoinPool(parallelism);
+    }
+
+    public static GcodePreprocessor getInstance() {
+        return GcodePreprocessorHolder.INSTANCE;
+    }
+
+    private static class GcodePreprocessorHolder {
+
+        private static final GcodePreprocessor INSTANCE = new GcodePreprocessor(Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Starts encoding lines from..to of the document.
+     *
+     * @return the chunks in line order, once done
+     */
+    public ForkJoinTask<List<EncodedGcode>> submit(GcodeDocument document, int from, int to) {
+        return pool.submit(new EncodeTask(document, from, to));
+    }
+
+    /**
+     * Encodes lines from..to of the document and waits for it.
+     */
+    public List<EncodedGcode> encode(GcodeDocument document, int from, int to) {
+        return pool.invoke(new EncodeTask(document, from, to));
+    }
+
+    private static class EncodeTask extends RecursiveTask<List<EncodedGcode>> {
+
+        private static final long serialVersionUID = 1L;
+        private final GcodeDocument document;
+        private final int from;
+        private final int to;
+
+        EncodeTask(GcodeDocument document, int from, int to) {
+            this.document = document;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected List<EncodedGcode> compute() {
+            if (to - from <= CHUNK_LINES) {
+                return Collections.singletonList(encodeChunk(document, from, to));
+            }
+            //Split on a multiple of CHUNK_LINES so only the last chunk is short
+            int middle = from + ((to - from) / CHUNK_LINES + 1) / 2 * CHUNK_LINES;
+            EncodeTask left = new EncodeTask(document, from, middle);
+            left.fork();
+            List<EncodedGcode> right = new EncodeTask(document, middle, to).compute();
+            List<EncodedGcode> chunks = new ArrayList<>(left.join());
+            chunks.addAll(right);
+            return chunks;
+        }
+    }
+
+    static EncodedGcode encodeChunk(GcodeDocument document, int from, int to) {
+        int lines = to - from;
+        long start = lines == 0 ? 0 : document.getOffset(from);
+        long end = to < document.getLineCount() ? document.getOffset(to) : document.getSize();
+        long capacity = end - start + (long) lines * MAX_EXTRA;
+        if (capacity > Integer.MAX_VALUE - 8) {
+            throw new IllegalArgumentException("Lines " + from + " to " + to + " are too long");
+        }
+        byte[] payloads = new byte[(int) capacity];
+        int[] ends = new int[lines];
+        byte[] flags = new byte[lines];
+        long size = document.getSize();
+        int pos = 0;
+        for (int i = 0; i < lines; i++) {
+            int line = from + i;
+            long p = document.getOffset(line);
+            int lineStart = pos;
+            System.arraycopy(GCODE_PREFIX, 0, payloads, pos, GCODE_PREFIX.length);
+            pos += GCODE_PREFIX.length;
+            byte first = document.byteAt(p);
+            if (first != 'N' && first != 'n') {
+                pos = putNumber(payloads, pos, line);
+            }
+            boolean comment = false;
+            for (; p < size; p++) {
+                byte b = document.byteAt(p);
+                if (b == '\n') {
+                    break;
+                }
+                if (b == '(') {
+                    comment = true;
+                }
+                payloads[pos++] = b >= 0 ? b : (byte) '?';
+            }
+            if (payloads[pos - 1] == '\r') {
+                pos--;
+            }
+            if (comment) {
+                //Comments only go to the console, the text is read from the document
+                flags[i] = EncodedGcode.COMMENT;
+                pos = lineStart;
+            } else {
+                System.arraycopy(GCODE_SUFFIX, 0, payloads, pos, GCODE_SUFFIX.length);
+                pos += GCODE_SUFFIX.length;
+            }
+            ends[i] = pos;
+        }
+        return new EncodedGcode(from, payloads, ends, flags);
+    }
+
+    /**
+     * Puts "N" + line + " " at pos.
+     *
+     * @return the position after it
+     */
+    private static int putNumber(byte[] b, int pos, int line) {
+        b[pos++] = 'N';
+        int digits = 1;
+        for (int v = line / 10; v > 0; v /= 10) {
+            digits++;
+        }
+        for (int i = pos + digits - 1; i >= pos; i--) {
+            b[i] = (byte) ('0' + line % 10);
+            line /= 10;
+        }
+        pos += digits;
+        b[pos++] = ' ';
+        return pos;
+    }
+}
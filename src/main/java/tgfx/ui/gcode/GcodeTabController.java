@@ -4,15 +4,14 @@
  */
 package tgfx.ui.gcode;
 
-import java.io.BufferedReader;
-import java.io.DataInputStream;
 import java.io.File;
-import java.io.FileInputStream;
-import java.io.FileNotFoundException;
-import java.io.InputStreamReader;
+import java.io.IOException;
 import java.net.URL;
+import java.util.Collections;
 import java.util.Date;
+import java.util.List;
 import java.util.ResourceBundle;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.logging.Level;
 import javafx.animation.FadeTransition;
 import javafx.application.Platform;
@@ -22,6 +21,7 @@ import javafx.beans.value.ObservableValue;
 import javafx.collections.FXCollections;
 import javafx.collections.ObservableList;
 import javafx.concurrent.Task;
+import javafx.concurrent.WorkerStateEvent;
 import javafx.event.ActionEvent;
 import javafx.event.EventHandler;
 import javafx.fxml.FXML;
@@ -29,6 +29,7 @@ import javafx.fxml.Initializable;
 import javafx.scene.control.Button;
 import javafx.scene.control.ChoiceBox;
 import javafx.scene.control.MenuItem;
+import javafx.scene.control.ProgressBar;
 import javafx.scene.control.TableColumn;
 import javafx.scene.control.TableView;
 import javafx.scene.control.TextArea;
@@ -46,9 +47,11 @@ import javafx.util.Duration;
 import jfxtras.labs.scene.control.gauge.Lcd;
 import org.apache.log4j.Logger;
 import tgfx.Main;
+import tgfx.PlannerMonitor;
 import tgfx.render.CNCMachine;
 import tgfx.render.Draw2d;
 import tgfx.tinyg.CommandManager;
+import tgfx.tinyg.TinygCommand;
 import tgfx.tinyg.TinygDriver;
 import tgfx.ui.tgfxsettings.TgfxSettingsController;
 
@@ -59,13 +62,14 @@ import tgfx.ui.tgfxsettings.TgfxSettingsController;
  */
 public class GcodeTabController implements Initializable {
 
-    private byte[] BAD_BYTES = {(byte) 0x21, (byte) 0x18, (byte) 0x7e};
     private double scaleAmount;
     private int buildNumber;
     private String buildDate;
-    private boolean taskActive = false;
     static final Logger logger = Logger.getLogger(GcodeTabController.class);
     public ObservableList data; //List to store the gcode file
+    private volatile GcodeDocument document; //The loaded gcode file, data is a view of it
+    private Task<ModalCheckpoints> loader; //Indexing a gcode file, null when not loading
+    private volatile ModalCheckpoints checkpoints; //Of the loaded gcode file, for running from a line
     public static StackPane gcodePane = new StackPane(); //Holds CNCMachine  This needs to be before CNCMachine()
     private static CNCMachine cncMachine = new CNCMachine();
     private final EventHandler keyPress;
@@ -85,6 +89,10 @@ public class GcodeTabController implements Initializable {
     @FXML
     private static Text timeLeftTxt;
     @FXML
+    private static Text ackLatencyTxt;
+    @FXML
+    private static Text plannerOccupancyTxt;
+    @FXML
     private Lcd xLcd, yLcd, zLcd, aLcd, velLcd; //DRO Lcds
     @FXML
     StackPane machineWorkspace;
@@ -104,6 +112,10 @@ public class GcodeTabController implements Initializable {
     private Button Run, Connect, gcodeZero, btnClearScreen, pauseResume, btnTest, btnHandleInhibitAllAxis;
     @FXML
     private GridPane coordLocationGridPane;
+    @FXML
+    private HBox loadingBar;
+    @FXML
+    private ProgressBar loadProgress;
     private float zScale = 0.1f;
     String cmd;
     @FXML // ResourceBundle that was given to the FXMLLoader
@@ -619,7 +631,7 @@ public class GcodeTabController implements Initializable {
                     TinygDriver.getInstance().serialWriter.notifyAck();
                     TinygDriver.getInstance().serialWriter.clearQueueBuffer();
                     cncMachine.clearScreen();
-                    isSendingFile.set(false); //We set this to false to allow us to jog again
+                    setIsFileSending(false); //We set this to false to allow us to jog again
 
                 } catch (Exception ex) {
                     logger.error("handleReset " + ex.getMessage());
@@ -637,7 +649,7 @@ public class GcodeTabController implements Initializable {
 
                     logger.info("[!]Stopping Job Clearing Serial Queue...\n");
                     CommandManager.stopTinyGMovement();
-                    isSendingFile.set(false); //We set this to false to allow us to jog again
+                    setIsFileSending(false); //We set this to false to allow us to jog again
 
 
                 } catch (Exception ex) {
@@ -667,152 +679,233 @@ public class GcodeTabController implements Initializable {
 //        }
     }
 
-    public Task fileSenderTask() {
-        return new Task() {
-            @Override
-            protected Object call() throws Exception {
-                StringBuilder line = new StringBuilder();
-                int gcodeCharLength = data.size();
-                String tmp;
-                for (int i = 0; i < gcodeCharLength; i++) {
-                    GcodeLine _gcl = (GcodeLine) data.get(i);
-
-                    if (isTaskActive() == false) {
-                        //Cancel Button was pushed
-                        tgfx.Main.postConsoleMessage("[!]File Sending Task Killed....\n");
-                        break;
-                    } else {
-                        if (_gcl.getCodeLine().equals("")) {
-                            //Blank Line.. Passing.. 
-                            continue;
-                        }
-
-                        if (_gcl.getCodeLine().toLowerCase().contains("(")) {
-                            TinygDriver.getInstance().write("**COMMENT**" + _gcl.getCodeLine());
-//                            tgfx.Main.postConsoleMessage("GCODE COMMENT:" + _gcl.getCodeLine());
-                            continue;
-
-                        }
-
-                        line.setLength(0);
-                        line.append("{\"gc\":\"").append(_gcl.getCodeLine()).append("\"}\n");
-                        TinygDriver.getInstance().write(line.toString());
-
-                    }
-                }
-                TinygDriver.getInstance().write("**FILEDONE**");
-                return true;
-            }
-        };
-    }
-
     public static void setIsFileSending(boolean flag) {
+        boolean wasSending = isSendingFile.get();
         isSendingFile.set(flag);
+        if (wasSending && !flag) {
+            //Dump the line latencies of the job, the last few lines may still be waiting on their footer
+            String summary = TinygDriver.getInstance().serialWriter.getLatency().summary();
+            tgfx.Main.postConsoleMessage("[+]Line latencies for this job:\n" + summary);
+            PlannerMonitor monitor = TinygDriver.getInstance().serialWriter.getPlannerMonitor();
+            monitor.endJob();
+            tgfx.Main.postConsoleMessage("[+]Planner starvation for this job:\n" + monitor.report());
+        }
     }
 
     @FXML
     private void handleRunFile(ActionEvent evt) {
+        runFile(0);
+    }
+
+    @FXML
+    private void handleRunFromLine(ActionEvent evt) {
+        int line = gcodeView.getSelectionModel().getSelectedIndex();
+        if (line < 0) {
+            tgfx.Main.postConsoleMessage("[!]Select the line to run from first.\n");
+            return;
+        }
+        runFile(line);
+    }
+
+    /**
+     * Starts the job at fromLine, after the preamble that restores the modal
+     * state the file has there.
+     */
+    private void runFile(int fromLine) {
+        if (loader != null) {
+            tgfx.Main.postConsoleMessage("[!]Still loading the gcode file.\n");
+            return;
+        }
+        GcodeDocument doc = document;
+        if (doc == null) {
+            tgfx.Main.postConsoleMessage("[!]No gcode file loaded.\n");
+            return;
+        }
         if (!isSendingFile.get()) {
+            List<String> preamble = Collections.emptyList();
+            if (fromLine > 0) {
+                preamble = checkpoints.stateAt(doc, fromLine).preamble();
+                tgfx.Main.postConsoleMessage("[+]Running from line " + fromLine + " after:\n");
+                for (String line : preamble) {
+                    tgfx.Main.postConsoleMessage("  " + line + "\n");
+                }
+            }
             isSendingFile.set(true); //disables jogging while file is running
-            taskActive = true; //Set the thread condition to start
-            Task fileSend = fileSenderTask();
-            Thread fsThread = new Thread(fileSend);
-            fsThread.setName("FileSender");
+            TinygDriver.getInstance().serialWriter.getLatency().reset();
+            TinygDriver.getInstance().serialWriter.getPlannerMonitor().startJob();
             timeStartDt = new Date();
 //            updateProgress(1);
-            fsThread.start();
+            //The writer pulls the lines from the file as TinyG takes them, Stop cancels it
+            TinygDriver.getInstance().serialWriter.startJob(
+                    new JobStreamer(doc, GcodePreprocessor.getInstance(), fromLine, preamble));
         }
     }
 
-    public synchronized boolean isTaskActive() {
-        return taskActive;
-    }
-
-    public synchronized void setTaskActive(boolean boolTask) {
-        taskActive = boolTask;
+    private void closeDocument() {
+        GcodeDocument doc = document;
+        document = null;
+        checkpoints = null;
+        if (doc != null) {
+            try {
+                doc.close();
+            } catch (IOException ex) {
+                logger.error("Error closing " + doc.getFile() + ": " + ex.getMessage());
+            }
+        }
     }
 
     @FXML
     private void handleOpenFile(ActionEvent event) {
+        if (loader != null) {
+            tgfx.Main.postConsoleMessage("[!]Still loading a gcode file, cancel it first.\n");
+            return;
+        }
+        tgfx.Main.postConsoleMessage("[+]Loading a gcode file.....\n");
+        FileChooser fc = new FileChooser();
+        fc.setTitle("Open GCode File");
 
-        Platform.runLater(new Runnable() {
-            @Override
-            public void run() {
-//                logger.debug("handleOpenFile");
-
-                try {
-                    tgfx.Main.postConsoleMessage("[+]Loading a gcode file.....\n");
-                    FileChooser fc = new FileChooser();
-                    fc.setTitle("Open GCode File");
+        String HOME_DIR = System.getenv("HOME"); //Get Home DIR in OSX
+        if (HOME_DIR == null) {
+            HOME_DIR = System.getProperty("user.home");  //Get Home DIR in Windows
+        }
 
-                    String HOME_DIR = System.getenv("HOME"); //Get Home DIR in OSX
-                    if (HOME_DIR == null) {
-                        HOME_DIR = System.getProperty("user.home");  //Get Home DIR in Windows
-                    }
+        fc.setInitialDirectory(new File(HOME_DIR));  //This will find osx users home dir
+        File f = fc.showOpenDialog(null);
+        if (f == null) {
+            return;
+        }
+        final GcodeDocument doc;
+        try {
+            doc = GcodeDocument.map(f);
+        } catch (IOException ex) {
+            logger.error("Error opening gcode file: " + ex.getMessage());
+            return;
+        }
 
-                    fc.setInitialDirectory(new File(HOME_DIR));  //This will find osx users home dir
-                    File f = fc.showOpenDialog(null);
-                    FileInputStream fstream = new FileInputStream(f);
-                    DataInputStream in = new DataInputStream((fstream));
-                    BufferedReader br = new BufferedReader(new InputStreamReader(in));
-                    String strLine;
+        //Clear the list if there was a previous file loaded, the new one fills in as it is indexed
+        closeDocument();
+        totalGcodeLines = 0;
+        final GcodeLineList lines = new GcodeLineList(doc);
+        data = lines;
+        gcodeView.setItems(data);
 
-                    data.removeAll(data);
-                    //Clear the list if there was a previous file loaded
+        final Task<ModalCheckpoints> task = fileLoaderTask(lines);
+        task.setOnSucceeded(new EventHandler<WorkerStateEvent>() {
+            @Override
+            public void handle(WorkerStateEvent t) {
+                loadFinished(lines, task.getValue());
+            }
+        });
+        task.setOnCancelled(new EventHandler<WorkerStateEvent>() {
+            @Override
+            public void handle(WorkerStateEvent t) {
+                loadFinished(lines, null);
+            }
+        });
+        task.setOnFailed(new EventHandler<WorkerStateEvent>() {
+            @Override
+            public void handle(WorkerStateEvent t) {
+                logger.error("Error loading gcode file: " + task.getException().getMessage());
+                loadFinished(lines, null);
+            }
+        });
+        loader = task;
+        loadProgress.progressProperty().bind(task.progressProperty());
+        loadingBar.setVisible(true);
+        loadingBar.setManaged(true);
+        Thread loaderThread = new Thread(task);
+        loaderThread.setName("FileLoader");
+        loaderThread.setDaemon(true);
+        loaderThread.start();
+    }
 
-                    int _linenumber = 0;
-                    while ((strLine = br.readLine()) != null) {
+    @FXML
+    private void handleCancelLoad(ActionEvent evt) {
+        if (loader != null) {
+            loader.cancel();
+        }
+    }
 
-                        if (!strLine.equals("")) {
-                            //Do not add empty lines to the list
-                            //gcodesList.appendText(strLine + "\n");
-                            if (!strLine.toUpperCase().startsWith("N")) {
-                                strLine = "N" + String.valueOf(_linenumber) + " " + strLine;
-                            }
-                            if (normalizeGcodeLine(strLine)) {
-                                data.add(new GcodeLine(strLine, _linenumber));
-                                _linenumber++;
-                            } else {
-                                Main.postConsoleMessage("ERROR: Your gcode file contains an invalid character.. Either !,% or ~. Remove this character and try again.");
-                                Main.postConsoleMessage("  Line " + _linenumber);
-                                data.clear(); //Remove all other previous entered lines
-                                break;
-                            }
+    /**
+     * Indexes the document of the lines and publishes what is indexed to
+     * the table, a chunk at a time. Then scans it for the modal checkpoints
+     * that running from a line needs.
+     *
+     * @return the checkpoints, null if it was cancelled
+     */
+    private Task<ModalCheckpoints> fileLoaderTask(final GcodeLineList lines) {
+        return new Task<ModalCheckpoints>() {
+            //Only one chunk waits on the FX thread at a time, it publishes whatever is indexed by then
+            private final AtomicBoolean publishing = new AtomicBoolean(false);
 
+            @Override
+            protected ModalCheckpoints call() throws Exception {
+                final GcodeDocument doc = lines.getDocument();
+                //Indexing is the first half of the progress bar, the scan the second
+                boolean indexed = doc.index(new GcodeDocument.IndexListener() {
+                    @Override
+                    public boolean linesIndexed(int lineCount, long position) {
+                        updateProgress(position, 2 * doc.getSize());
+                        if (publishing.compareAndSet(false, true)) {
+                            Platform.runLater(new Runnable() {
+                                @Override
+                                public void run() {
+                                    publishing.set(false);
+                                    if (data == lines) {
+                                        lines.publish(doc.getLineCount());
+                                    }
+                                }
+                            });
                         }
+                        return !isCancelled();
                     }
-                    totalGcodeLines = _linenumber;
-//                    logger.info("File Loading Complete");
-                } catch (FileNotFoundException ex) {
-                    logger.error("File Not Found.");
-                } catch (Exception ex) {
-                    logger.error(ex.getMessage());
+                });
+                if (!indexed) {
+                    return null;
                 }
+                return ModalCheckpoints.build(doc, ModalCheckpoints.DEFAULT_INTERVAL, new GcodeDocument.IndexListener() {
+                    @Override
+                    public boolean linesIndexed(int lineCount, long position) {
+                        updateProgress(doc.getSize() + position, 2 * doc.getSize());
+                        return !isCancelled();
+                    }
+                });
             }
-        });
+        };
     }
 
-    private boolean normalizeGcodeLine(String gcl) {
-        byte[] tmpLine = gcl.getBytes();
-        //0x21 = !
-        //0x18 = Ctrl-X
-        //0x7e = ~
-        //0x25 = %
-        //These are considered bad bytes in gcode files.  These will trigger tinyg to throw interrupts
-
-        for (int i = 0; i < tmpLine.length; i++) {
-        }
-
-        for (int i = 0; i < BAD_BYTES.length; i++) {
-            for (int j = 0; j < gcl.length(); j++) {
-                if (gcl.charAt(j) == BAD_BYTES[i]) {
-                    //Bad Byte Found
-                    logger.error("Bad Byte Char Detected: " + BAD_BYTES[i]);
-                    return false;
-                }
+    /**
+     * Runs on the FX thread once the loader is done, however it ended.
+     */
+    private void loadFinished(GcodeLineList lines, ModalCheckpoints modalCheckpoints) {
+        boolean complete = modalCheckpoints != null;
+        loader = null;
+        loadProgress.progressProperty().unbind();
+        loadingBar.setVisible(false);
+        loadingBar.setManaged(false);
+        GcodeDocument doc = lines.getDocument();
+        if (!complete || doc.getBadLine() >= 0) {
+            if (!complete) {
+                tgfx.Main.postConsoleMessage("[!]Loading " + doc.getFile().getName() + " cancelled.\n");
+            } else {
+                Main.postConsoleMessage("ERROR: Your gcode file contains an invalid character.. Either !,% or ~. Remove this character and try again.");
+                Main.postConsoleMessage("  Line " + doc.getBadLine());
+            }
+            try {
+                doc.close();
+            } catch (IOException ex) {
+                logger.error("Error closing " + doc.getFile() + ": " + ex.getMessage());
             }
+            data = FXCollections.observableArrayList();
+            gcodeView.setItems(data);
+            return;
         }
-        return true;
+        lines.publish(doc.getLineCount());
+        checkpoints = modalCheckpoints;
+        document = doc;
+        totalGcodeLines = doc.getLineCount();
+        logger.info("Indexed " + totalGcodeLines + " lines of " + doc.getFile().getName()
+                + " in " + doc.getIndexBytes() + " bytes");
     }
 
     /*######################################
@@ -879,6 +972,8 @@ public class GcodeTabController implements Initializable {
 
             timeElapsedTxt.setText(String.format("%02d:%02d", elapsed / 60000, (elapsed / 1000) % 60));
             timeLeftTxt.setText(String.format("%02d:%02d", remain / 60000, (remain / 1000) % 60));
+            ackLatencyTxt.setText(TinygDriver.getInstance().serialWriter.getLatency().shortSummary());
+            plannerOccupancyTxt.setText(TinygDriver.getInstance().serialWriter.getPlannerMonitor().sparkline());
         }
     }
 }
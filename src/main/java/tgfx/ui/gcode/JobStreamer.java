@@ -0,0 +1,115 @@
+/*
+ * Copyright (C) 2014 Synthetos LLC. All Rights reserved.
+ * http://www.synthetos.com
+ */
+package tgfx.ui.gcode;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ForkJoinTask;
+import tgfx.JobSource;
+import tgfx.PlannerStreamer;
+import tgfx.SerialWriter;
+import tgfx.tinyg.TinygCommand;
+
+/**
+ * The <code>JobStreamer</code> class streams a GcodeDocument to the
+ * SerialWriter, which pulls the next line when it has room for it.
+ * <p>
+ * Lines are encoded by the GcodePreprocessor {@link #STREAM_LINES} at a
+ * time, a few times what TinyG can hold in its planner and RX buffer. While
+ * the writer works through one window the next is encoded, so at most two
+ * windows are on the heap whatever the size of the job, and cancelling only
+ * drops those two.
+ * <p>
+ * A job can start at any line of the document, after a preamble that
+ * brings the machine to the state the file has it in there, see
+ * {@link ModalCheckpoints}.
+ */
+public class JobStreamer implements JobSource {
+
+    //Shortest line that goes out, {"gc":"N1 X1"}\n
+    private static final int MIN_LINE_BYTES = 16;
+    //The most lines TinyG can have taken and not run yet
+    static final int IN_FLIGHT_LINES = PlannerStreamer.PLANNER_BUFFERS + SerialWriter.BUFFER_SIZE / MIN_LINE_BYTES;
+    public static final int STREAM_LINES = 8 * IN_FLIGHT_LINES;
+    private final GcodeDocument document;
+    private final GcodePreprocessor preprocessor;
+    private final int lineCount;
+    private final List<String> preamble;
+    private int preambleSent = 0;
+    private List<EncodedGcode> window = Collections.emptyList();
+    private int chunk = 0;
+    private EncodedGcode current;
+    private int index = 0;
+    private volatile ForkJoinTask<List<EncodedGcode>> ahead;  //cancelled from other threads
+    private boolean done = false;
+    private volatile boolean cancelled = false;
+
+    public JobStreamer(GcodeDocument document, GcodePreprocessor preprocessor) {
+        this(document, preprocessor, 0, Collections.<String>emptyList());
+    }
+
+    /**
+     * @param fromLine the first line of the document that is sent
+     * @param preamble G-code lines that go out before it
+     */
+    public JobStreamer(GcodeDocument document, GcodePreprocessor preprocessor, int fromLine, List<String> preamble) {
+        this.document = document;
+        this.preprocessor = preprocessor;
+        this.lineCount = document.getLineCount();
+        this.preamble = preamble;
+        ahead = encode(fromLine);
+    }
+
+    private ForkJoinTask<List<EncodedGcode>> encode(int from) {
+        if (from >= lineCount) {
+            return null;
+        }
+        return preprocessor.submit(document, from, Math.min(from + STREAM_LINES, lineCount));
+    }
+
+    @Override
+    public TinygCommand next() {
+        if (cancelled || done) {
+            return null;
+        }
+        if (preambleSent < preamble.size()) {
+            return TinygCommand.gcode(preamble.get(preambleSent++));
+        }
+        while (current == null || index == current.getLineCount()) {
+            if (chunk < window.size()) {
+                current = window.get(chunk++);
+                index = 0;
+                continue;
+            }
+            if (ahead == null) {
+                done = true;
+                return TinygCommand.FILE_DONE;
+            }
+            try {
+                window = ahead.join();
+            } catch (CancellationException ex) {
+                return null;  //Cancelled while we waited for it
+            }
+            chunk = 0;
+            EncodedGcode last = window.get(window.size() - 1);
+            ahead = encode(last.getFirstLine() + last.getLineCount());
+        }
+        int i = index++;
+        if (current.isComment(i)) {
+            return TinygCommand.comment(document.getLine(current.getFirstLine() + i));
+        }
+        return current.command(i);
+    }
+
+    @Override
+    public void cancel() {
+        cancelled = true;
+        ForkJoinTask<List<EncodedGcode>> task = ahead;
+        if (task != null) {
+            task.cancel(false);
+        }
+    }
+}
@@ -0,0 +1,82 @@
+/*
+ * Copyright (C) 2014 Synthetos LLC. All Rights reserved.
+ * http://www.synthetos.com
+ */
+package tgfx.ui.gcode;
+
+/**
+ * The <code>ModalCheckpoints</code> class holds the {@link ModalState} of a
+ * GcodeDocument every {@link #getInterval()} lines, so a job can be resumed
+ * from any line.
+ * <p>
+ * The checkpoints are worked out in one pass over the file when it is
+ * loaded. The state before line n is then checkpoint n / interval with at
+ * most interval - 1 lines replayed on top. A checkpoint is 6 bytes of modes
+ * and 6 doubles, in two arrays for all of them.
+ */
+public final class ModalCheckpoints {
+
+    public static final int DEFAULT_INTERVAL = 1000;
+    private final int interval;
+    private final int count;
+    private final byte[] modes;
+    private final double[] values;
+
+    private ModalCheckpoints(int interval, int count) {
+        this.interval = interval;
+        this.count = count;
+        this.modes = new byte[count * ModalState.MODES];
+        this.values = new double[count * ModalState.VALUES];
+    }
+
+    /**
+     * Scans every line of the document.
+     *
+     * @param interval lines from one checkpoint to the next
+     * @param listener hears how far the scan has come and can stop it, may
+     * be null
+     * @return null if the listener stopped the scan
+     */
+    public static ModalCheckpoints build(GcodeDocument document, int interval, GcodeDocument.IndexListener listener) {
+        int lines = document.getLineCount();
+        ModalCheckpoints checkpoints = new ModalCheckpoints(interval, (lines + interval - 1) / interval);
+        ModalState state = new ModalState();
+        for (int line = 0; line < lines; line++) {
+            if (line % interval == 0) {
+                state.store(checkpoints.modes, checkpoints.values, line / interval);
+            }
+            state.apply(document, line);
+            if (listener != null && ((line + 1) & (GcodeDocument.NOTIFY_LINES - 1)) == 0
+                    && !listener.linesIndexed(line + 1, document.getOffset(line))) {
+                return null;
+            }
+        }
+        return checkpoints;
+    }
+
+    /**
+     * @return the state just before line of the document
+     */
+    public ModalState stateAt(GcodeDocument document, int line) {
+        if (line < 0 || line > document.getLineCount()) {
+            throw new IndexOutOfBoundsException("Line " + line + " of " + document.getLineCount());
+        }
+        if (count == 0) {
+            return new ModalState();
+        }
+        int c = Math.min(line / interval, count - 1);
+        ModalState state = ModalState.load(modes, values, c);
+        for (int i = c * interval; i < line; i++) {
+            state.apply(document, i);
+        }
+        return state;
+    }
+
+    public int getInterval() {
+        return interval;
+    }
+
+    public int getCount() {
+        return count;
+    }
+}
@@ -0,0 +1,362 @@
+/*
+ * Copyright (C) 2014 Synthetos LLC. All Rights reserved.
+ * http://www.synthetos.com
+ */
+package tgfx.ui.gcode;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The <code>ModalState</code> class is the modal state of the machine after
+ * some lines of a G-code file: units, distance mode, plane, coordinate
+ * system, motion mode, feed, spindle and the last position of every axis.
+ * <p>
+ * It is worked out from the file alone, so anything the file has not set
+ * yet is unknown: -1 for modes, NaN for numbers. A state can be
+ * {@link #preamble() turned back into G-code} that brings the machine to
+ * it, which is how a job is resumed from a line.
+ */
+public class ModalState {
+
+    //Axes in the order of MachineSnapshot
+    private static final char[] AXIS_LETTERS = {'X', 'Y', 'Z', 'A'};
+    static final int AXES = AXIS_LETTERS.length;
+    //Fields of a state in ModalCheckpoints
+    static final int MODES = 6;
+    static final int VALUES = 2 + AXES;
+    private int units = -1;  //0 for inches, 1 for mm, like MachineSnapshot
+    private int distanceMode = -1;  //0 for absolute, 1 for incremental
+    private int plane = -1;  //17, 18 or 19
+    private int coordinateSystem = -1;  //1 for G54 to 6 for G59
+    private int motionMode = -1;  //0 to 3 for G0 to G3
+    private int spindle = -1;  //3, 4 or 5 for M3 to M5
+    private double feed = Double.NaN;
+    private double speed = Double.NaN;
+    private final double[] position = {Double.NaN, Double.NaN, Double.NaN, Double.NaN};
+    //Axis words of the line being scanned
+    private final double[] words = new double[AXES];
+
+    /**
+     * Brings the state up to date with a line of the document.
+     */
+    public void apply(GcodeDocument document, int line) {
+        long p = document.getOffset(line);
+        long size = document.getSize();
+        for (int i = 0; i < AXES; i++) {
+            words[i] = Double.NaN;
+        }
+        //G10, G28, G30, G53 and G92 use the axis words of their line in their own way
+        int nonModal = -1;
+        while (p < size) {
+            byte b = document.byteAt(p++);
+            if (b == '\n' || b == ';') {
+                break;
+            }
+            if (b == '(') {
+                while (p < size && document.byteAt(p) != ')' && document.byteAt(p) != '\n') {
+                    p++;
+                }
+                continue;
+            }
+            char letter = Character.toUpperCase((char) (b & 0xff));
+            if (letter < 'A' || letter > 'Z') {
+                continue;
+            }
+            //The number of the word, spaces are allowed in between
+            while (p < size && document.byteAt(p) == ' ') {
+                p++;
+            }
+            boolean negative = false;
+            if (p < size && (document.byteAt(p) == '-' || document.byteAt(p) == '+')) {
+                negative = document.byteAt(p++) == '-';
+            }
+            double value = 0;
+            double scale = 0;
+            boolean digits = false;
+            for (; p < size; p++) {
+                byte c = document.byteAt(p);
+                if (c >= '0' && c <= '9') {
+                    digits = true;
+                    if (scale == 0) {
+                        value = value * 10 + (c - '0');
+                    } else {
+                        value += (c - '0') * scale;
+                        scale /= 10;
+                    }
+                } else if (c == '.' && scale == 0) {
+                    scale = 0.1;
+                } else {
+                    break;
+                }
+            }
+            if (!digits) {
+                continue;
+            }
+            if (negative) {
+                value = -value;
+            }
+            switch (letter) {
+                case 'G':
+                    int code = (int) Math.round(value * 10);
+                    if (code == 100 || (code >= 280 && code <= 283) || code == 300 || code == 530 || code == 920) {
+                        nonModal = code;
+                    }
+                    word(code);
+                    break;
+                case 'M':
+                    int m = (int) value;
+                    if (m >= 3 && m <= 5) {
+                        spindle = m;
+                    }
+                    break;
+                case 'F':
+                    feed = value;
+                    break;
+                case 'S':
+                    speed = value;
+                    break;
+                default:
+                    int axis = axis(letter);
+                    if (axis >= 0) {
+                        words[axis] = value;
+                    }
+            }
+        }
+        //Axis words go last, the line may set the distance mode after them
+        for (int i = 0; i < AXES; i++) {
+            if (Double.isNaN(words[i])) {
+                continue;
+            }
+            switch (nonModal) {
+                case -1:
+                    position[i] = distanceMode == 1 ? position[i] + words[i] : words[i];
+                    break;
+                case 920:
+                    position[i] = words[i];  //The current position is now this
+                    break;
+                case 100:
+                    break;  //Offsets, not a move
+                default:
+                    position[i] = Double.NaN;  //Through home or in machine coordinates
+            }
+        }
+        if ((nonModal >= 280 && nonModal <= 283) || nonModal == 300) {
+            //Ends up at the home position, wherever that is in work coordinates.
+            //G28.1 to G28.3 set or find home, which moves the origin under us too.
+            for (int i = 0; i < AXES; i++) {
+                position[i] = Double.NaN;
+            }
+        }
+    }
+
+    private void word(int code) {
+        switch (code) {
+            case 0:
+            case 10:
+            case 20:
+            case 30:
+                motionMode = code / 10;
+                break;
+            case 170:
+            case 180:
+            case 190:
+                plane = code / 10;
+                break;
+            case 200:
+                units = 0;
+                break;
+            case 210:
+                units = 1;
+                break;
+            case 540:
+            case 550:
+            case 560:
+            case 570:
+            case 580:
+            case 590:
+                coordinateSystem = code / 10 - 53;
+                break;
+            case 900:
+                distanceMode = 0;
+                break;
+            case 910:
+                distanceMode = 1;
+                break;
+        }
+    }
+
+    private static int axis(char letter) {
+        for (int i = 0; i < AXES; i++) {
+            if (AXIS_LETTERS[i] == letter) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * @return the lines that bring the machine to this state, after a
+     * retract to machine Z0
+     * @see #preamble(double)
+     */
+    public List<String> preamble() {
+        return preamble(Double.NaN);
+    }
+
+    /**
+     * @param clearance the work Z to retract to before anything moves, NaN
+     * for machine Z0 with G53
+     * @return the lines that bring the machine to this state, only what the
+     * file has set. The tool goes up first, then XY and A with a rapid, then
+     * the spindle starts and Z comes down last at the feed. An arc motion
+     * mode is left to the first line, it has to say G2 or G3 anyway.
+     */
+    public List<String> preamble(double clearance) {
+        List<String> lines = new ArrayList<>();
+        StringBuilder modes = new StringBuilder();
+        if (units >= 0) {
+            modes.append(units == 0 ? "G20" : "G21");
+        }
+        if (plane >= 0) {
+            append(modes, "G" + plane);
+        }
+        if (coordinateSystem >= 0) {
+            append(modes, "G" + (53 + coordinateSystem));
+        }
+        //Moves back are absolute whatever the file uses
+        append(modes, "G90");
+        lines.add(modes.toString());
+        //Clear of the work before anything moves sideways
+        lines.add(Double.isNaN(clearance) ? "G53 G0 Z0" : "G0 Z" + format(clearance));
+        int motion = 0;
+        StringBuilder rapid = new StringBuilder("G0");
+        for (int i = 0; i < AXES; i++) {
+            if (i != 2 && !Double.isNaN(position[i])) {
+                rapid.append(' ').append(AXIS_LETTERS[i]).append(format(position[i]));
+            }
+        }
+        if (rapid.length() > 2) {
+            lines.add(rapid.toString());
+        }
+        if (spindle == 3 || spindle == 4) {
+            lines.add("M" + spindle + (Double.isNaN(speed) ? "" : " S" + format(speed)));
+        }
+        boolean feedSet = false;
+        if (!Double.isNaN(position[2])) {
+            if (Double.isNaN(feed)) {
+                lines.add("G0 Z" + format(position[2]));
+            } else {
+                lines.add("G1 Z" + format(position[2]) + " F" + format(feed));
+                motion = 1;
+                feedSet = true;
+            }
+        }
+        StringBuilder rest = new StringBuilder();
+        if ((motionMode == 0 || motionMode == 1) && motionMode != motion) {
+            rest.append('G').append(motionMode);
+        }
+        if (!feedSet && !Double.isNaN(feed)) {
+            append(rest, "F" + format(feed));
+        }
+        if (distanceMode == 1) {
+            append(rest, "G91");
+        }
+        if (rest.length() > 0) {
+            lines.add(rest.toString());
+        }
+        return lines;
+    }
+
+    private static void append(StringBuilder line, String word) {
+        if (line.length() > 0) {
+            line.append(' ');
+        }
+        line.append(word);
+    }
+
+    private static String format(double value) {
+        BigDecimal rounded = BigDecimal.valueOf(value).setScale(4, RoundingMode.HALF_UP).stripTrailingZeros();
+        if (rounded.signum() == 0) {
+            return "0";
+        }
+        return rounded.toPlainString();
+    }
+
+    /**
+     * Stores the state as checkpoint c.
+     */
+    void store(byte[] modes, double[] values, int c) {
+        int m = c * MODES;
+        modes[m] = (byte) units;
+        modes[m + 1] = (byte) distanceMode;
+        modes[m + 2] = (byte) plane;
+        modes[m + 3] = (byte) coordinateSystem;
+        modes[m + 4] = (byte) motionMode;
+        modes[m + 5] = (byte) spindle;
+        int v = c * VALUES;
+        values[v] = feed;
+        values[v + 1] = speed;
+        System.arraycopy(position, 0, values, v + 2, AXES);
+    }
+
+    /**
+     * @return the state stored as checkpoint c
+     */
+    static ModalState load(byte[] modes, double[] values, int c) {
+        ModalState state = new ModalState();
+        int m = c * MODES;
+        state.units = modes[m];
+        state.distanceMode = modes[m + 1];
+        state.plane = modes[m + 2];
+        state.coordinateSystem = modes[m + 3];
+        state.motionMode = modes[m + 4];
+        state.spindle = modes[m + 5];
+        int v = c * VALUES;
+        state.feed = values[v];
+        state.speed = values[v + 1];
+        System.arraycopy(values, v + 2, state.position, 0, AXES);
+        return state;
+    }
+
+    public int getUnits() {
+        return units;
+    }
+
+    public int getDistanceMode() {
+        return distanceMode;
+    }
+
+    public int getPlane() {
+        return plane;
+    }
+
+    public int getCoordinateSystem() {
+        return coordinateSystem;
+    }
+
+    public int getMotionMode() {
+        return motionMode;
+    }
+
+    public int getSpindle() {
+        return spindle;
+    }
+
+    public double getFeed() {
+        return feed;
+    }
+
+    public double getSpeed() {
+        return speed;
+    }
+
+    /**
+     * @param axis MachineSnapshot.AXIS_X to AXIS_A
+     */
+    public double getPosition(int axis) {
+        return position[axis];
+    }
+}
@@ -0,0 +1,108 @@
+/*
+ * Copyright (C) 2014 Synthetos LLC. All Rights reserved.
+ * http://www.synthetos.com
+ */
+package tgfx.utility;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * The <code>LatencyHistogram</code> class counts latencies from a nanosecond
+ * to centuries in a fixed set of buckets, without locks and without
+ * allocating.
+ * <p>
+ * Buckets are log-linear like an HdrHistogram: every power of two is split
+ * into 32 equal buckets, so a percentile is never off by more than about 3%.
+ * Values below 64 are counted exactly. Recording is one atomic increment and
+ * can be done from any thread, reading while others record gives a view
+ * that may be a few counts behind.
+ */
+public class LatencyHistogram {
+
+    private static final int SUB_BUCKET_BITS = 6;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int HALF = SUB_BUCKETS / 2;
+    private static final int BUCKETS = SUB_BUCKETS + (64 - SUB_BUCKET_BITS) * HALF;
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+    private final AtomicLong totalCount = new AtomicLong();
+    private final AtomicLong max = new AtomicLong();
+
+    /**
+     * @param value a latency in whatever unit the caller reads them back in,
+     * negative values count as 0
+     */
+    public void record(long value) {
+        if (value < 0) {
+            value = 0;
+        }
+        counts.incrementAndGet(index(value));
+        totalCount.incrementAndGet();
+        long m;
+        while (value > (m = max.get()) && !max.compareAndSet(m, value)) {
+        }
+    }
+
+    static int index(long value) {
+        if (value < SUB_BUCKETS) {
+            return (int) value;
+        }
+        int shift = 64 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS;
+        int top = (int) (value >>> shift);  //HALF..SUB_BUCKETS-1
+        return SUB_BUCKETS + (shift - 1) * HALF + (top - HALF);
+    }
+
+    /**
+     * @return the highest value that is counted in the bucket
+     */
+    static long highestValue(int index) {
+        if (index < SUB_BUCKETS) {
+            return index;
+        }
+        int k = index - SUB_BUCKETS;
+        int shift = k / HALF + 1;
+        long top = k % HALF + HALF;
+        return ((top + 1) << shift) - 1;
+    }
+
+    public long getCount() {
+        return totalCount.get();
+    }
+
+    public long getMax() {
+        return max.get();
+    }
+
+    /**
+     * @param percentile 0 to 100
+     * @return the value at or below which that percentage of the recorded
+     * values fall, 0 if nothing was recorded
+     */
+    public long getValueAtPercentile(double percentile) {
+        long total = totalCount.get();
+        if (total == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(percentile / 100.0 * total));
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += counts.get(i);
+            if (seen >= rank) {
+                return Math.min(highestValue(i), max.get());
+            }
+        }
+        return max.get();
+    }
+
+    /**
+     * Forgets everything recorded. Values recorded while this runs may or
+     * may not survive it.
+     */
+    public void reset() {
+        for (int i = 0; i < BUCKETS; i++) {
+            counts.set(i, 0);
+        }
+        totalCount.set(0);
+        max.set(0);
+    }
+}
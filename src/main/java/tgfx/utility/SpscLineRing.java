@@ -0,0 +1,218 @@
+/*
+ * Copyright (C) 2014 Synthetos LLC. All Rights reserved.
+ * http://www.synthetos.com
+ */
+package tgfx.utility;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * The
+ * <code>SpscLineRing</code> class hands lines from exactly one producer
+ * thread to exactly one consumer thread without locks.
+ * <p>
+ * Callers with more than one producer thread have to serialize their offers.
+ * <p>
+ * Every slot is a byte array allocated up front. The producer copies a line
+ * into the next free slot, and the consumer reads it in place and then
+ * releases it. A slot only grows when a line does not fit, and it stays grown.
+ * A full ring never throws. {@link #offer(byte[], int, int, long)} waits up
+ * to its timeout for the consumer, which is our backpressure. After that the
+ * line is dropped and counted in {@link #getOverflowCount()}.
+ * <p>
+ * How the consumer waits for a line is set by the {@link WaitStrategy}:
+ * SPIN burns a core for the lowest latency, YIELD gives the core away between
+ * checks, PARK sleeps until the producer wakes it.
+ *
+ * @see tgfx.tinyg.TinygDriver#jsonQueue
+ */
+public class SpscLineRing {
+
+    public enum WaitStrategy {
+
+        SPIN, YIELD, PARK
+    }
+    //head and tail live in one array, far enough apart not to share a cache line
+    private static final int HEAD = 7;
+    private static final int TAIL = 23;
+    private static final long PRODUCER_PARK_NANOS = TimeUnit.MICROSECONDS.toNanos(50);
+    private final AtomicLongArray cursors = new AtomicLongArray(31);
+    private final byte[][] slots;
+    private final int[] lengths;
+    private final int mask;
+    private volatile WaitStrategy waitStrategy;
+    private volatile Thread waitingConsumer;
+    //Producer side, only written by the producer thread
+    private long cachedHead = 0;
+    private volatile long offeredCount = 0;
+    private volatile long overflowCount = 0;
+    private volatile long backpressureCount = 0;
+    private volatile int highWaterMark = 0;
+
+    /**
+     * @param capacity the number of slots, rounded up to a power of two
+     * @param slotSize the initial size of each slot in bytes
+     * @param waitStrategy how the consumer waits for a line
+     */
+    public SpscLineRing(int capacity, int slotSize, WaitStrategy waitStrategy) {
+        int size = Integer.highestOneBit(Math.max(2, capacity) - 1) << 1;
+        slots = new byte[size][];
+        for (int i = 0; i < size; i++) {
+            slots[i] = new byte[slotSize];
+        }
+        lengths = new int[size];
+        mask = size - 1;
+        this.waitStrategy = waitStrategy;
+    }
+
+    /**
+     * Copies a line into the ring without waiting.
+     *
+     * @return false if the ring was full, the line was not added
+     */
+    public boolean offer(byte[] src, int offset, int length) {
+        long tail = cursors.get(TAIL);
+        if (tail - cachedHead > mask) {
+            cachedHead = cursors.get(HEAD);
+            if (tail - cachedHead > mask) {
+                return false;
+            }
+        }
+        int index = (int) tail & mask;
+        if (slots[index].length < length) {
+            slots[index] = new byte[Integer.highestOneBit(length) << 1];
+        }
+        System.arraycopy(src, offset, slots[index], 0, length);
+        lengths[index] = length;
+        //A full volatile write, a lazySet could be reordered with the read of
+        //waitingConsumer below and we would miss a parked consumer.
+        cursors.set(TAIL, tail + 1);
+        offeredCount++;
+        int used = (int) (tail + 1 - cachedHead);
+        if (used > highWaterMark) {
+            highWaterMark = used;
+        }
+        Thread waiter = waitingConsumer;
+        if (waiter != null) {
+            LockSupport.unpark(waiter);
+        }
+        return true;
+    }
+
+    /**
+     * Copies a line into the ring, waiting up to timeoutNanos for the consumer
+     * to free a slot if the ring is full.
+     *
+     * @return false if the line had to be dropped, it is counted as overflow
+     */
+    public boolean offer(byte[] src, int offset, int length, long timeoutNanos) {
+        if (offer(src, offset, length)) {
+            return true;
+        }
+        backpressureCount++;
+        long deadline = System.nanoTime() + timeoutNanos;
+        while (System.nanoTime() - deadline < 0) {
+            if (waitStrategy == WaitStrategy.PARK) {
+                LockSupport.parkNanos(PRODUCER_PARK_NANOS);
+            } else {
+                Thread.yield();
+            }
+            if (offer(src, offset, length)) {
+                return true;
+            }
+        }
+        overflowCount++;
+        return false;
+    }
+
+    /**
+     * Waits for the next line.
+     *
+     * @return the length of the line now at the head, read it with buffer()
+     * and give the slot back with release()
+     */
+    public int take() throws InterruptedException {
+        long head = cursors.get(HEAD);
+        while (cursors.get(TAIL) == head) {
+            if (Thread.interrupted()) {
+                throw new InterruptedException();
+            }
+            switch (waitStrategy) {
+                case SPIN:
+                    break;
+                case YIELD:
+                    Thread.yield();
+                    break;
+                default:
+                    waitingConsumer = Thread.currentThread();
+                    if (cursors.get(TAIL) == head) {
+                        LockSupport.park(this);
+                    }
+                    waitingConsumer = null;
+            }
+        }
+        return lengths[(int) head & mask];
+    }
+
+    /**
+     * @return the slot at the head, only valid between take() and release()
+     */
+    public byte[] buffer() {
+        return slots[(int) cursors.get(HEAD) & mask];
+    }
+
+    public void release() {
+        cursors.lazySet(HEAD, cursors.get(HEAD) + 1);
+    }
+
+    public int size() {
+        return (int) (cursors.get(TAIL) - cursors.get(HEAD));
+    }
+
+    public int capacity() {
+        return mask + 1;
+    }
+
+    public WaitStrategy getWaitStrategy() {
+        return waitStrategy;
+    }
+
+    public void setWaitStrategy(WaitStrategy waitStrategy) {
+        this.waitStrategy = waitStrategy;
+        Thread waiter = waitingConsumer;
+        if (waiter != null) {
+            LockSupport.unpark(waiter);
+        }
+    }
+
+    /**
+     * @return the number of lines added to the ring
+     */
+    public long getOfferedCount() {
+        return offeredCount;
+    }
+
+    /**
+     * @return the number of lines dropped because the ring stayed full
+     */
+    public long getOverflowCount() {
+        return overflowCount;
+    }
+
+    /**
+     * @return the number of times the producer found the ring full and had
+     * to wait
+     */
+    public long getBackpressureCount() {
+        return backpressureCount;
+    }
+
+    /**
+     * @return the most slots that were ever in use at once
+     */
+    public int getHighWaterMark() {
+        return highWaterMark;
+    }
+}
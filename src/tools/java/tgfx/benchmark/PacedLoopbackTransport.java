@@ -0,0 +1,156 @@
+/*
+ * Copyright (C) 2014 Synthetos LLC. All Rights reserved.
+ * http://www.synthetos.com
+ */
+package tgfx.benchmark;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.concurrent.locks.LockSupport;
+import tgfx.ResponseFooterScanner;
+import tgfx.transport.LoopbackTransport;
+
+/**
+ * The <code>PacedLoopbackTransport</code> class is a loopback that takes as
+ * long as a serial line at a given baud rate would, and measures what goes
+ * over it.
+ * <p>
+ * Each direction is its own wire, 10 bits a byte with 8N1. A write or a
+ * delivery waits until the wire has carried the bytes queued ahead of it
+ * and its own, the way a port write blocks under RTS/CTS. Every line written
+ * is timestamped as it is handed to the wire, and every footer delivered
+ * closes the oldest open line, which gives the send-to-ack latency of each
+ * line.
+ */
+public class PacedLoopbackTransport extends LoopbackTransport {
+
+    private static final int BITS_PER_BYTE = 10;
+    private final int baudRate;
+    private long txFreeNanos = 0;
+    private long rxFreeNanos = 0;
+    private volatile long txBytes = 0;
+    private volatile long rxBytes = 0;
+    private final long[] footer = new long[ResponseFooterScanner.FOOTER_ELEMENTS];
+    //Send times of the lines waiting for a footer, oldest first. Guarded by this.
+    private long[] sendTimes = new long[1024];
+    private int sendHead = 0;
+    private int sendCount = 0;
+    //Send-to-ack latency of every acked line. Guarded by this.
+    private long[] latencies = new long[4096];
+    private int latencyCount = 0;
+    private long firstSendNanos = 0;
+    private long lastAckNanos = 0;
+
+    /**
+     * @param baudRate the simulated line speed, 0 for no pacing
+     */
+    public PacedLoopbackTransport(int baudRate) {
+        super(baudRate == 0 ? "loopback" : "loopback@" + baudRate);
+        this.baudRate = baudRate;
+    }
+
+    @Override
+    public void write(byte[] buf, int offset, int length) throws IOException {
+        long now = System.nanoTime();
+        synchronized (this) {
+            if (firstSendNanos == 0) {
+                firstSendNanos = now;
+            }
+            for (int i = offset; i < offset + length; i++) {
+                if (buf[i] == '\n') {
+                    sent(now);
+                }
+            }
+        }
+        txFreeNanos = pace(txFreeNanos, length);
+        txBytes += length;
+        super.write(buf, offset, length);
+    }
+
+    @Override
+    public void deliver(byte[] buf, int offset, int length) {
+        rxFreeNanos = pace(rxFreeNanos, length);
+        rxBytes += length;
+        if (ResponseFooterScanner.scan(buf, offset, length, footer)) {
+            acked(System.nanoTime());
+        }
+        super.deliver(buf, offset, length);
+    }
+
+    /**
+     * Waits until the wire that is free at freeNanos has carried length more
+     * bytes.
+     *
+     * @return when the wire is free again
+     */
+    private long pace(long freeNanos, int length) {
+        if (baudRate == 0) {
+            return 0;
+        }
+        long now = System.nanoTime();
+        long done = Math.max(now, freeNanos) + length * BITS_PER_BYTE * 1000000000L / baudRate;
+        while ((now = System.nanoTime()) < done) {
+            LockSupport.parkNanos(done - now);
+        }
+        return done;
+    }
+
+    private void sent(long now) {
+        if (sendCount == sendTimes.length) {
+            long[] bigger = new long[sendTimes.length * 2];
+            for (int i = 0; i < sendCount; i++) {
+                bigger[i] = sendTimes[(sendHead + i) % sendTimes.length];
+            }
+            sendTimes = bigger;
+            sendHead = 0;
+        }
+        sendTimes[(sendHead + sendCount) % sendTimes.length] = now;
+        sendCount++;
+    }
+
+    private synchronized void acked(long now) {
+        if (sendCount == 0) {
+            return;
+        }
+        long sentAt = sendTimes[sendHead];
+        sendHead = (sendHead + 1) % sendTimes.length;
+        sendCount--;
+        if (latencyCount == latencies.length) {
+            latencies = Arrays.copyOf(latencies, latencies.length * 2);
+        }
+        latencies[latencyCount++] = now - sentAt;
+        lastAckNanos = now;
+    }
+
+    public int getBaudRate() {
+        return baudRate;
+    }
+
+    public long getTxBytes() {
+        return txBytes;
+    }
+
+    public long getRxBytes() {
+        return rxBytes;
+    }
+
+    public synchronized int getAckedLines() {
+        return latencyCount;
+    }
+
+    /**
+     * @return nanoseconds from the first line written to the last footer
+     */
+    public synchronized long getElapsedNanos() {
+        return lastAckNanos - firstSendNanos;
+    }
+
+    /**
+     * @return the send-to-ack latencies of all acked lines, sorted
+     */
+    public synchronized long[] getSortedLatencies() {
+        long[] sorted = Arrays.copyOf(latencies, latencyCount);
+        Arrays.sort(sorted);
+        return sorted;
+    }
+}
@@ -0,0 +1,314 @@
+/*
+ * Copyright (C) 2014 Synthetos LLC. All Rights reserved.
+ * http://www.synthetos.com
+ */
+package tgfx.benchmark;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+import tgfx.JobSource;
+import tgfx.SerialDriver;
+import tgfx.SerialWriter;
+import tgfx.simulator.TinygSimulator;
+import tgfx.tinyg.TinygCommand;
+import tgfx.tinyg.TinygDriver;
+import tgfx.ui.gcode.GcodeDocument;
+import tgfx.ui.gcode.GcodePreprocessor;
+import tgfx.ui.gcode.JobStreamer;
+
+/**
+ * The <code>StreamingBenchmark</code> class streams a G-code file through
+ * the real sending path, TinygDriver, SerialWriter, SerialDriver and the
+ * ResponseParser, to a {@link TinygSimulator} on a
+ * {@link PacedLoopbackTransport}, and reports how it went.
+ * <p>
+ * Every combination of flow control mode and baud rate is one run, and every
+ * run prints one JSON object on a line of its own: lines/s from the first
+ * line written to the last footer, the p50, p99 and p999 send-to-ack latency,
+ * how long the planner ran dry mid-job, and the bytes on the wire. Runs are
+ * comparable between versions as long as the file and the options are the
+ * same.
+ * <p>
+ * No FX toolkit is needed. The file is opened as a GcodeDocument and streamed
+ * by a JobStreamer the SerialWriter pulls from, like
+ * GcodeTabController.runFile does it. Only comment lines and the end of file
+ * token are held back, they go to the UI and never reach the wire.
+ * <pre>
+ * mvn -P tools test-compile exec:exec -Dbenchmark.args="--file extras/braid.gcode \
+ *     --modes credit,planner --bauds 115200,230400 --time-scale 10 --out results.jsonl"
+ * </pre>
+ * <p>
+ * It lives in src/tools/java with the simulator, which is only compiled
+ * with the tests, so neither ships in the application jar.
+ */
+public class StreamingBenchmark {
+
+    public enum Mode {
+
+        //Footer credit straight from the read loop, no planner pacing
+        CREDIT("credit", true, false),
+        //Footer credit plus pacing on queue reports
+        PLANNER("planner", true, true),
+        //Footer credit only once the ResponseParser got to the line
+        PARSER_CREDIT("parser-credit", false, false);
+        private final String name;
+        private final boolean footerFastPath;
+        private final boolean plannerStreaming;
+
+        private Mode(String name, boolean footerFastPath, boolean plannerStreaming) {
+            this.name = name;
+            this.footerFastPath = footerFastPath;
+            this.plannerStreaming = plannerStreaming;
+        }
+
+        public static Mode byName(String name) {
+            for (Mode mode : values()) {
+                if (mode.name.equals(name)) {
+                    return mode;
+                }
+            }
+            throw new IllegalArgumentException("Unknown flow control mode " + name);
+        }
+
+        @Override
+        public String toString() {
+            return name;
+        }
+    }
+    private static final long STALL_NANOS = TimeUnit.SECONDS.toNanos(10);
+    private File file = new File("extras/braid.gcode");
+    private List<Mode> modes = new ArrayList<>();
+    private List<Integer> baudRates = new ArrayList<>();
+    private double timeScale = 10;
+    private int plannerDepth = 28;
+    private int rxBufferSize = 254;
+    private int repeat = 1;
+    private PrintStream out = System.out;
+
+    public static void main(String[] args) throws Exception {
+        StreamingBenchmark benchmark = new StreamingBenchmark();
+        benchmark.parseArgs(args);
+        benchmark.run();
+        System.exit(0);
+    }
+
+    private void parseArgs(String[] args) throws IOException {
+        for (int i = 0; i < args.length; i++) {
+            String arg = args[i];
+            if (i + 1 == args.length) {
+                throw new IllegalArgumentException(arg + " needs a value");
+            }
+            String value = args[++i];
+            switch (arg) {
+                case "--file":
+                    file = new File(value);
+                    break;
+                case "--modes":
+                    for (String name : value.split(",")) {
+                        modes.add(Mode.byName(name.trim()));
+                    }
+                    break;
+                case "--bauds":
+                    for (String baud : value.split(",")) {
+                        baudRates.add(Integer.valueOf(baud.trim()));
+                    }
+                    break;
+                case "--time-scale":
+                    timeScale = Double.parseDouble(value);
+                    break;
+                case "--planner-depth":
+                    plannerDepth = Integer.parseInt(value);
+                    break;
+                case "--rx-buffer":
+                    rxBufferSize = Integer.parseInt(value);
+                    break;
+                case "--repeat":
+                    repeat = Integer.parseInt(value);
+                    break;
+                case "--out":
+                    out = new PrintStream(new FileOutputStream(value, true), true, "US-ASCII");
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown option " + arg);
+            }
+        }
+        if (modes.isEmpty()) {
+            modes.add(Mode.CREDIT);
+            modes.add(Mode.PLANNER);
+            modes.add(Mode.PARSER_CREDIT);
+        }
+        if (baudRates.isEmpty()) {
+            baudRates.add(115200);
+            baudRates.add(230400);
+        }
+    }
+
+    public void run() throws Exception {
+        try (GcodeDocument doc = GcodeDocument.open(file)) {
+            if (doc.getBadLine() >= 0) {
+                throw new IOException(file + " has a bad byte on line " + doc.getBadLine());
+            }
+            TinygDriver tg = TinygDriver.getInstance();
+            startThread(tg.serialWriter, "SerialWriter");
+            startThread(tg.resParse, "ResponseParser");
+            for (int r = 0; r < repeat; r++) {
+                for (Mode mode : modes) {
+                    for (int baudRate : baudRates) {
+                        out.println(runOnce(tg, doc, mode, baudRate));
+                    }
+                }
+            }
+        }
+    }
+
+    private static void startThread(Runnable runnable, String name) {
+        Thread t = new Thread(runnable, name);
+        t.setDaemon(true);
+        t.start();
+    }
+
+    /**
+     * The job as the Gcode tab streams it, less what only goes to the UI.
+     */
+    private static class WireJob implements JobSource {
+
+        private final JobStreamer streamer;
+
+        WireJob(JobStreamer streamer) {
+            this.streamer = streamer;
+        }
+
+        @Override
+        public TinygCommand next() {
+            TinygCommand cmd = streamer.next();
+            while (cmd != null && cmd.getType() == TinygCommand.Type.COMMENT) {
+                cmd.release();
+                cmd = streamer.next();
+            }
+            return cmd == TinygCommand.FILE_DONE ? null : cmd;
+        }
+
+        @Override
+        public void cancel() {
+            streamer.cancel();
+        }
+    }
+
+    /**
+     * @return the lines of the document that go out on the wire, every one
+     * but the comments
+     */
+    static int wireLines(GcodeDocument doc) {
+        int lines = 0;
+        for (int i = 0; i < doc.getLineCount(); i++) {
+            if (doc.getRawLine(i).indexOf('(') < 0) {
+                lines++;
+            }
+        }
+        return lines;
+    }
+
+    private String runOnce(TinygDriver tg, GcodeDocument doc, Mode mode, int baudRate) throws Exception {
+        SerialWriter writer = tg.serialWriter;
+        PacedLoopbackTransport wire = new PacedLoopbackTransport(baudRate);
+        TinygSimulator sim = new TinygSimulator(wire);
+        sim.setTimeScale(timeScale);
+        sim.setPlannerDepth(plannerDepth);
+        sim.setRxBufferSize(rxBufferSize);
+        sim.setQueueReports(mode.plannerStreaming ? 1 : 0);
+        sim.start();
+        SerialDriver.getInstance().setFooterFastPath(mode.footerFastPath);
+        writer.getPlannerStreamer().setEnabled(mode.plannerStreaming);
+        writer.resetBuffer();
+        long batchWrites = writer.getBatchWrites();
+        long batchedLines = writer.getBatchedLines();
+        long rxMismatches = writer.getFlowController().getRxMismatches();
+        tg.initialize(wire);
+
+        int lines = wireLines(doc);
+        writer.startJob(new WireJob(new JobStreamer(doc, GcodePreprocessor.getInstance())));
+        boolean completed = awaitAcks(wire, lines);
+
+        tg.disconnect();
+        writer.clearQueueBuffer();
+        sim.stop();
+        return result(mode, wire, sim, lines, completed,
+                writer.getBatchWrites() - batchWrites,
+                writer.getBatchedLines() - batchedLines,
+                writer.getFlowController().getRxMismatches() - rxMismatches);
+    }
+
+    /**
+     * Waits for a footer for every line, or until the acks stop coming.
+     *
+     * @return false if the stream stalled
+     */
+    private static boolean awaitAcks(PacedLoopbackTransport wire, int lines) throws InterruptedException {
+        int acked = -1;
+        long progressNanos = System.nanoTime();
+        while (wire.getAckedLines() < lines) {
+            if (wire.getAckedLines() != acked) {
+                acked = wire.getAckedLines();
+                progressNanos = System.nanoTime();
+            } else if (System.nanoTime() - progressNanos > STALL_NANOS) {
+                return false;
+            }
+            Thread.sleep(1);
+        }
+        return true;
+    }
+
+    private String result(Mode mode, PacedLoopbackTransport wire, TinygSimulator sim, int lines,
+            boolean completed, long batchWrites, long batchedLines, long rxMismatches) {
+        long[] latencies = wire.getSortedLatencies();
+        double seconds = wire.getElapsedNanos() / 1e9;
+        String version = StreamingBenchmark.class.getPackage().getImplementationVersion();
+        StringBuilder sb = new StringBuilder(512);
+        sb.append("{\"benchmark\":\"streaming\"");
+        sb.append(",\"version\":\"").append(version == null ? "dev" : version).append('"');
+        sb.append(",\"file\":\"").append(file.getName()).append('"');
+        sb.append(",\"mode\":\"").append(mode).append('"');
+        sb.append(",\"baud\":").append(wire.getBaudRate());
+        sb.append(",\"timeScale\":").append(number(timeScale));
+        sb.append(",\"plannerDepth\":").append(plannerDepth);
+        sb.append(",\"rxBuffer\":").append(rxBufferSize);
+        sb.append(",\"completed\":").append(completed);
+        sb.append(",\"lines\":").append(lines);
+        sb.append(",\"ackedLines\":").append(latencies.length);
+        sb.append(",\"seconds\":").append(number(seconds));
+        sb.append(",\"linesPerSecond\":").append(number(seconds > 0 ? latencies.length / seconds : 0));
+        sb.append(",\"latencyP50Micros\":").append(percentileMicros(latencies, 0.50));
+        sb.append(",\"latencyP99Micros\":").append(percentileMicros(latencies, 0.99));
+        sb.append(",\"latencyP999Micros\":").append(percentileMicros(latencies, 0.999));
+        sb.append(",\"latencyMaxMicros\":").append(percentileMicros(latencies, 1.0));
+        sb.append(",\"plannerEmptyMillis\":").append(TimeUnit.NANOSECONDS.toMillis(sim.getStarvedNanos()));
+        sb.append(",\"plannerStarvations\":").append(sim.getStarvations());
+        sb.append(",\"txBytes\":").append(wire.getTxBytes());
+        sb.append(",\"rxBytes\":").append(wire.getRxBytes());
+        sb.append(",\"rxOverflows\":").append(sim.getRxOverflows());
+        sb.append(",\"maxRxOccupancy\":").append(sim.getMaxRxOccupancy());
+        sb.append(",\"batchWrites\":").append(batchWrites);
+        sb.append(",\"batchedLines\":").append(batchedLines);
+        sb.append(",\"rxMismatches\":").append(rxMismatches);
+        sb.append('}');
+        return sb.toString();
+    }
+
+    private static long percentileMicros(long[] sorted, double percentile) {
+        if (sorted.length == 0) {
+            return 0;
+        }
+        int index = (int) Math.ceil(percentile * sorted.length) - 1;
+        return TimeUnit.NANOSECONDS.toMicros(sorted[Math.max(0, index)]);
+    }
+
+    private static String number(double value) {
+        return String.format(Locale.US, "%.3f", value);
+    }
+}
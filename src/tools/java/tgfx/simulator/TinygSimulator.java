@@ -0,0 +1,666 @@
+/*
+ * Copyright (C) 2014 Synthetos LLC. All Rights reserved.
+ * http://www.synthetos.com
+ */
+package tgfx.simulator;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+import org.apache.log4j.Logger;
+import tgfx.transport.LoopbackTransport;
+
+/**
+ * The <code>TinygSimulator</code> class stands in for a TinyG on the other
+ * end of a {@link LoopbackTransport}, so the whole streaming path can run and
+ * be measured without a board.
+ * <p>
+ * It models the two buffers that pace tgFX:
+ * <ul>
+ * <li>An RX buffer of {@link #setRxBufferSize(int)} bytes. Bytes that arrive
+ * while it is full are dropped and counted, like a real overrun.</li>
+ * <li>A planner of {@link #setPlannerDepth(int)} moves. A motion line is only
+ * read out of the RX buffer when the planner has a free slot, and is acked
+ * with a footer as soon as it is queued. Queued moves run one after another
+ * for as long as their length and feed rate take, scaled by
+ * {@link #setTimeScale(double)}.</li>
+ * </ul>
+ * Every line read gets <code>{"r":{...},"f":[1,0,rx_recvd,checksum]}</code>.
+ * The checksum is not TinyG's hash, tgFX does not check it. Status reports
+ * go out every <code>si</code> milliseconds while the machine moves, queue
+ * reports whenever the planner count changes and <code>qv</code> is set.
+ * <code>!</code>, <code>~</code>, <code>%</code> and 0x18 are picked out of
+ * the incoming bytes as they arrive, like the firmware does. Settings and
+ * queries are echoed back as they came in, except sr which is answered with
+ * a status report.
+ * <p>
+ * The planner counts how often and how long it ran dry in the middle of a
+ * job, which is what a streaming change has to improve.
+ *
+ * @see tgfx.SerialDriver#initialize(tgfx.transport.Transport)
+ */
+public class TinygSimulator implements LoopbackTransport.Device, Runnable {
+
+    private static final Logger logger = Logger.getLogger(TinygSimulator.class);
+    private static final long IDLE_PARK_NANOS = TimeUnit.MICROSECONDS.toNanos(200);
+    //A planner that stays empty this long ended the job, it did not starve
+    private static final long CYCLE_END_NANOS = TimeUnit.MILLISECONDS.toNanos(500);
+    private static final int STAT_STOP = 3;
+    private static final int STAT_RUN = 5;
+    private static final int STAT_HOLD = 6;
+    private final LoopbackTransport transport;
+    private volatile Thread simThread;
+    private volatile boolean RUN = false;
+    //Configuration
+    private int rxBufferSize = 254;
+    private int plannerDepth = 28;
+    private volatile double timeScale = 1.0;
+    private volatile double defaultFeedRate = 800;
+    private volatile double rapidRate = 16000;
+    private volatile long minSegmentNanos = TimeUnit.MILLISECONDS.toNanos(2);
+    private volatile int statusInterval = 100;
+    private volatile int queueReports = 1;
+    //RX buffer, guarded by rxLock
+    private final Object rxLock = new Object();
+    private byte[] rxBuf = new byte[rxBufferSize];
+    private int rxHead = 0;
+    private int rxCount = 0;
+    //Real-time commands, set by the output thread, acted on by ours
+    private volatile boolean holdRequested = false;
+    private volatile boolean resumeRequested = false;
+    private volatile boolean flushRequested = false;
+    private volatile boolean resetRequested = false;
+    //Planner, only touched by the simulator thread
+    private long[] plannerNanos = new long[plannerDepth];
+    private double[] plannerFeed = new double[plannerDepth];
+    private int plannerHead = 0;
+    private int plannerCount = 0;
+    private long moveStartNanos = 0;
+    private boolean held = false;
+    private int lastReportedPba = -1;
+    private int added = 0;
+    private int removed = 0;
+    private long nextStatusNanos = 0;
+    private boolean reportedStopped = true;
+    private long emptySinceNanos = 0;
+    private boolean inCycle = false;
+    //G-code state
+    private final double[] position = new double[3];
+    private boolean absolute = true;
+    private int motionMode = 0;
+    private double feedRate = 0;
+    private int lineNumber = 0;
+    private byte[] line = new byte[256];
+    private final StringBuilder response = new StringBuilder(256);
+    private byte[] out = new byte[256];
+    //Metrics
+    private volatile long linesReceived = 0;
+    private volatile long motionLines = 0;
+    private volatile long bytesReceived = 0;
+    private volatile long rxOverflows = 0;
+    private volatile int maxRxOccupancy = 0;
+    private volatile long starvations = 0;
+    private volatile long starvedNanos = 0;
+    private volatile long statusReports = 0;
+    private volatile long queueReportsSent = 0;
+
+    public TinygSimulator(LoopbackTransport transport) {
+        this.transport = transport;
+        transport.setDevice(this);
+    }
+
+    public synchronized void start() {
+        if (simThread == null) {
+            RUN = true;
+            Thread t = new Thread(this, "TinygSimulator");
+            t.setDaemon(true);
+            simThread = t;
+            t.start();
+        }
+    }
+
+    public synchronized void stop() throws InterruptedException {
+        Thread t = simThread;
+        if (t != null) {
+            RUN = false;
+            LockSupport.unpark(t);
+            t.join();
+            simThread = null;
+        }
+    }
+
+    @Override
+    public void received(byte[] buf, int offset, int length) {
+        synchronized (rxLock) {
+            for (int i = offset; i < offset + length; i++) {
+                byte b = buf[i];
+                switch (b) {
+                    case '!':
+                        holdRequested = true;
+                        continue;
+                    case '~':
+                        resumeRequested = true;
+                        continue;
+                    case '%':
+                        flushRequested = true;
+                        continue;
+                    case 0x18:
+                        resetRequested = true;
+                        continue;
+                }
+                if (rxCount == rxBuf.length) {
+                    rxOverflows++;
+                    continue;
+                }
+                rxBuf[(rxHead + rxCount) % rxBuf.length] = b;
+                rxCount++;
+            }
+            bytesReceived += length;
+            if (rxCount > maxRxOccupancy) {
+                maxRxOccupancy = rxCount;
+            }
+        }
+        Thread t = simThread;
+        if (t != null) {
+            LockSupport.unpark(t);
+        }
+    }
+
+    @Override
+    public void run() {
+        while (RUN) {
+            long now = System.nanoTime();
+            realtimeCommands(now);
+            runPlanner(now);
+            boolean busy = readLines(now);
+            reports(now);
+            if (!busy) {
+                LockSupport.parkNanos(this, IDLE_PARK_NANOS);
+            }
+        }
+    }
+
+    private void realtimeCommands(long now) {
+        if (resetRequested) {
+            resetRequested = false;
+            synchronized (rxLock) {
+                rxHead = 0;
+                rxCount = 0;
+            }
+            plannerCount = 0;
+            held = false;
+            inCycle = false;
+            position[0] = position[1] = position[2] = 0;
+            absolute = true;
+            motionMode = 0;
+            feedRate = 0;
+            lineNumber = 0;
+            send("{\"msg\":\"SYSTEM READY\"}");
+        }
+        if (holdRequested) {
+            holdRequested = false;
+            if (!held && plannerCount > 0) {
+                //Remember how much of the running move is left
+                plannerNanos[plannerHead] = Math.max(0, plannerNanos[plannerHead] - (now - moveStartNanos));
+            }
+            held = true;
+        }
+        if (flushRequested) {
+            flushRequested = false;
+            if (held) {
+                synchronized (rxLock) {
+                    rxHead = 0;
+                    rxCount = 0;
+                }
+                removed += plannerCount;
+                plannerCount = 0;
+                inCycle = false;
+            }
+        }
+        if (resumeRequested) {
+            resumeRequested = false;
+            if (held) {
+                held = false;
+                moveStartNanos = now;
+            }
+        }
+    }
+
+    private void runPlanner(long now) {
+        while (!held && plannerCount > 0 && now - moveStartNanos >= plannerNanos[plannerHead]) {
+            moveStartNanos += plannerNanos[plannerHead];
+            plannerHead = (plannerHead + 1) % plannerNanos.length;
+            plannerCount--;
+            removed++;
+            if (plannerCount == 0) {
+                emptySinceNanos = now;
+            }
+        }
+        if (inCycle && plannerCount == 0 && now - emptySinceNanos > CYCLE_END_NANOS) {
+            inCycle = false;
+        }
+    }
+
+    /**
+     * Reads every line the planner has room for.
+     *
+     * @return true if a line was read
+     */
+    private boolean readLines(long now) {
+        boolean any = false;
+        int length;
+        while ((length = nextLine()) > 0) {
+            boolean motion = isMotion(line, length);
+            if (motion && (plannerCount == plannerNanos.length || held)) {
+                break;  //TinyG stops reading until the planner has a free slot
+            }
+            consume(length);
+            any = true;
+            linesReceived++;
+            if (motion) {
+                queueMove(now, length);
+            }
+            respond(length);
+        }
+        return any;
+    }
+
+    /**
+     * Copies the next complete line out of the RX buffer without removing it.
+     *
+     * @return its length including the newline, or 0 if there is none
+     */
+    private int nextLine() {
+        synchronized (rxLock) {
+            for (int i = 0; i < rxCount; i++) {
+                if (rxBuf[(rxHead + i) % rxBuf.length] == '\n') {
+                    int length = i + 1;
+                    if (line.length < length) {
+                        line = new byte[rxBuf.length];
+                    }
+                    for (int j = 0; j < length; j++) {
+                        line[j] = rxBuf[(rxHead + j) % rxBuf.length];
+                    }
+                    return length;
+                }
+            }
+        }
+        return 0;
+    }
+
+    private void consume(int length) {
+        synchronized (rxLock) {
+            rxHead = (rxHead + length) % rxBuf.length;
+            rxCount -= length;
+        }
+    }
+
+    private boolean isMotion(byte[] buf, int length) {
+        int start = gcodeStart(buf, length);
+        if (start < 0) {
+            return false;
+        }
+        for (int i = start; i < length; i++) {
+            char c = (char) (buf[i] | 0x20);
+            if (c == 'x' || c == 'y' || c == 'z') {
+                return true;
+            }
+            if (c == '(' || buf[i] == '"') {
+                break;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return where the G-code starts, inside {"gc":"..."} or the whole line
+     * in text mode, -1 if this is not G-code
+     */
+    private static int gcodeStart(byte[] buf, int length) {
+        if (length > 0 && buf[0] != '{') {
+            return 0;
+        }
+        if (length > 7 && buf[1] == '"' && (buf[2] | 0x20) == 'g' && (buf[3] | 0x20) == 'c'
+                && buf[4] == '"' && buf[5] == ':' && buf[6] == '"') {
+            return 7;
+        }
+        return -1;
+    }
+
+    private void queueMove(long now, int length) {
+        int start = gcodeStart(line, length);
+        double[] target = {position[0], position[1], position[2]};
+        double feed = Double.NaN;
+        int i = start;
+        while (i < length) {
+            char c = (char) (line[i] | 0x20);
+            if (c == '(' || line[i] == '"' || line[i] == '\n') {
+                break;
+            }
+            if (c < 'a' || c > 'z') {
+                i++;
+                continue;
+            }
+            int end = i + 1;
+            while (end < length && (line[end] == '-' || line[end] == '.' || line[end] == ' '
+                    || (line[end] >= '0' && line[end] <= '9'))) {
+                end++;
+            }
+            double value;
+            try {
+                value = Double.parseDouble(new String(line, i + 1, end - i - 1).trim());
+            } catch (NumberFormatException ex) {
+                i = end;
+                continue;
+            }
+            switch (c) {
+                case 'g':
+                    if (value == 0 || value == 1 || value == 2 || value == 3) {
+                        motionMode = (int) value;
+                    } else if (value == 90) {
+                        absolute = true;
+                    } else if (value == 91) {
+                        absolute = false;
+                    }
+                    break;
+                case 'x':
+                    target[0] = absolute ? value : position[0] + value;
+                    break;
+                case 'y':
+                    target[1] = absolute ? value : position[1] + value;
+                    break;
+                case 'z':
+                    target[2] = absolute ? value : position[2] + value;
+                    break;
+                case 'f':
+                    feed = value;
+                    break;
+            }
+            i = end;
+        }
+        if (!Double.isNaN(feed)) {
+            feedRate = feed;
+        }
+        double dx = target[0] - position[0];
+        double dy = target[1] - position[1];
+        double dz = target[2] - position[2];
+        double distance = Math.sqrt(dx * dx + dy * dy + dz * dz);
+        double rate = motionMode == 0 ? rapidRate : (feedRate > 0 ? feedRate : defaultFeedRate);
+        long nanos = Math.max(minSegmentNanos, (long) (distance / rate * 60e9));
+        nanos = (long) (nanos / timeScale);
+        System.arraycopy(target, 0, position, 0, 3);
+
+        if (plannerCount == 0) {
+            moveStartNanos = now;
+            if (inCycle && !held) {
+                //We were moving and ran dry, the machine had to stop and wait for us
+                starvations++;
+                starvedNanos += now - emptySinceNanos;
+            }
+        }
+        int slot = (plannerHead + plannerCount) % plannerNanos.length;
+        plannerNanos[slot] = nanos;
+        plannerFeed[slot] = rate;
+        plannerCount++;
+        added++;
+        inCycle = true;
+        lineNumber++;
+        motionLines++;
+        reportedStopped = false;
+    }
+
+    private void respond(int length) {
+        int bodyEnd = length - 1;
+        while (bodyEnd > 0 && (line[bodyEnd - 1] == '\r' || line[bodyEnd - 1] == ' ')) {
+            bodyEnd--;
+        }
+        if (bodyEnd == 0) {
+            return;  //Blank line
+        }
+        response.setLength(0);
+        response.append("{\"r\":");
+        if (line[0] != '{') {
+            //Text mode G-code, answer it like {"gc":"..."}
+            response.append("{\"gc\":\"");
+            appendAscii(line, 0, bodyEnd);
+            response.append("\"}");
+        } else if (startsWith(line, bodyEnd, "{\"sr\":")) {
+            response.append("{\"sr\":");
+            appendStatus();
+            response.append('}');
+        } else {
+            applySetting(bodyEnd);
+            appendAscii(line, 0, bodyEnd);
+        }
+        response.append(",\"f\":[1,0,").append(length).append(',')
+                .append(Math.abs(response.toString().hashCode()) % 10000).append("]}");
+        send(response);
+    }
+
+    private void applySetting(int bodyEnd) {
+        if (startsWith(line, bodyEnd, "{\"si\":")) {
+            Integer value = intValue(bodyEnd, 6);
+            if (value != null) {
+                statusInterval = value;
+            }
+        } else if (startsWith(line, bodyEnd, "{\"qv\":")) {
+            Integer value = intValue(bodyEnd, 6);
+            if (value != null) {
+                queueReports = value;
+            }
+        }
+    }
+
+    private Integer intValue(int bodyEnd, int start) {
+        int end = start;
+        while (end < bodyEnd && line[end] >= '0' && line[end] <= '9') {
+            end++;
+        }
+        return end > start ? Integer.valueOf(new String(line, start, end - start)) : null;
+    }
+
+    private static boolean startsWith(byte[] buf, int length, String prefix) {
+        if (length < prefix.length()) {
+            return false;
+        }
+        for (int i = 0; i < prefix.length(); i++) {
+            if (buf[i] != prefix.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void appendAscii(byte[] buf, int offset, int length) {
+        for (int i = offset; i < length; i++) {
+            response.append((char) buf[i]);
+        }
+    }
+
+    private void appendStatus() {
+        response.append("{\"line\":").append(lineNumber);
+        response.append(",\"posx\":");
+        appendFixed(position[0]);
+        response.append(",\"posy\":");
+        appendFixed(position[1]);
+        response.append(",\"posz\":");
+        appendFixed(position[2]);
+        response.append(",\"vel\":");
+        appendFixed(!held && plannerCount > 0 ? plannerFeed[plannerHead] : 0);
+        response.append(",\"stat\":").append(held ? STAT_HOLD : (plannerCount > 0 ? STAT_RUN : STAT_STOP));
+        response.append('}');
+    }
+
+    private void appendFixed(double value) {
+        long thousandths = Math.round(value * 1000);
+        if (thousandths < 0) {
+            response.append('-');
+            thousandths = -thousandths;
+        }
+        response.append(thousandths / 1000).append('.');
+        long fraction = thousandths % 1000;
+        if (fraction < 100) {
+            response.append('0');
+        }
+        if (fraction < 10) {
+            response.append('0');
+        }
+        response.append(fraction);
+    }
+
+    private void reports(long now) {
+        int interval = statusInterval;
+        if (interval > 0 && now - nextStatusNanos >= 0) {
+            nextStatusNanos = now + TimeUnit.MILLISECONDS.toNanos(interval);
+            boolean moving = plannerCount > 0 && !held;
+            if (moving || !reportedStopped) {
+                //TinyG reports while it moves and once more when it stops
+                reportedStopped = !moving;
+                response.setLength(0);
+                response.append("{\"sr\":");
+                appendStatus();
+                response.append('}');
+                send(response);
+                statusReports++;
+            }
+        }
+        int pba = plannerNanos.length - plannerCount;
+        if (queueReports > 0 && pba != lastReportedPba) {
+            lastReportedPba = pba;
+            response.setLength(0);
+            if (queueReports == 1) {
+                response.append("{\"qr\":").append(pba).append('}');
+            } else {
+                response.append("{\"qr\":[").append(pba).append(',').append(added)
+                        .append(',').append(removed).append("]}");
+            }
+            added = 0;
+            removed = 0;
+            send(response);
+            queueReportsSent++;
+        }
+    }
+
+    private void send(CharSequence text) {
+        int length = text.length() + 1;
+        if (out.length < length) {
+            out = new byte[length * 2];
+        }
+        for (int i = 0; i < text.length(); i++) {
+            out[i] = (byte) text.charAt(i);
+        }
+        out[length - 1] = '\n';
+        transport.deliver(out, 0, length);
+    }
+
+    /**
+     * Only takes effect before start().
+     */
+    public void setRxBufferSize(int rxBufferSize) {
+        this.rxBufferSize = rxBufferSize;
+        rxBuf = new byte[rxBufferSize];
+    }
+
+    public int getRxBufferSize() {
+        return rxBufferSize;
+    }
+
+    /**
+     * Only takes effect before start().
+     */
+    public void setPlannerDepth(int plannerDepth) {
+        this.plannerDepth = plannerDepth;
+        plannerNanos = new long[plannerDepth];
+        plannerFeed = new double[plannerDepth];
+    }
+
+    public int getPlannerDepth() {
+        return plannerDepth;
+    }
+
+    /**
+     * @param timeScale how many times faster than real time moves run
+     */
+    public void setTimeScale(double timeScale) {
+        this.timeScale = timeScale;
+    }
+
+    public double getTimeScale() {
+        return timeScale;
+    }
+
+    /**
+     * @param defaultFeedRate mm/min for feeds in a file that never sets F
+     */
+    public void setDefaultFeedRate(double defaultFeedRate) {
+        this.defaultFeedRate = defaultFeedRate;
+    }
+
+    public void setRapidRate(double rapidRate) {
+        this.rapidRate = rapidRate;
+    }
+
+    /**
+     * @param minSegmentNanos the shortest a move can take, however short it
+     * is
+     */
+    public void setMinSegmentNanos(long minSegmentNanos) {
+        this.minSegmentNanos = minSegmentNanos;
+    }
+
+    /**
+     * @param statusInterval ms between status reports, {"si":n} sets it too
+     */
+    public void setStatusInterval(int statusInterval) {
+        this.statusInterval = statusInterval;
+    }
+
+    /**
+     * @param queueReports 0 off, 1 single {"qr":pba}, 2 triple, {"qv":n}
+     * sets it too
+     */
+    public void setQueueReports(int queueReports) {
+        this.queueReports = queueReports;
+    }
+
+    public long getLinesReceived() {
+        return linesReceived;
+    }
+
+    public long getMotionLines() {
+        return motionLines;
+    }
+
+    public long getBytesReceived() {
+        return bytesReceived;
+    }
+
+    /**
+     * @return bytes dropped because the RX buffer was full, tgFX overran it
+     */
+    public long getRxOverflows() {
+        return rxOverflows;
+    }
+
+    public int getMaxRxOccupancy() {
+        return maxRxOccupancy;
+    }
+
+    /**
+     * @return how often the planner ran dry in the middle of a job
+     */
+    public long getStarvations() {
+        return starvations;
+    }
+
+    public long getStarvedNanos() {
+        return starvedNanos;
+    }
+
+    public long getStatusReports() {
+        return statusReports;
+    }
+
+    public long getQueueReports() {
+        return queueReportsSent;
+    }
+}
@@ -0,0 +1,64 @@
+/*
+ * Copyright (C) 2014 Synthetos LLC. All Rights reserved.
+ * http://www.synthetos.com
+ */
+package tgfx;
+
+import org.junit.Test;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+/**
+ * Junit test for PlannerMonitor
+ */
+public class PlannerMonitorTest {
+
+    private static final long MS = 1000000L;
+
+    /**
+     * The empty planner at the start of a job is no starvation, a drained
+     * one later is, and its time goes to the cause at its reports.
+     */
+    @Test
+    public void testStarvation() {
+        System.out.println("starvation");
+        PlannerMonitor monitor = new PlannerMonitor(28, 16);
+        monitor.startJob();
+        long t = System.nanoTime();
+        monitor.sample(28, PlannerMonitor.Cause.HOST_QUEUE_EMPTY, t);
+        monitor.sample(4, PlannerMonitor.Cause.SERIAL_BUSY, t += 10 * MS);
+        assertEquals(0, monitor.getStarvations());
+        monitor.sample(27, PlannerMonitor.Cause.FLOW_CONTROL, t += 10 * MS);
+        monitor.sample(28, PlannerMonitor.Cause.HOST_QUEUE_EMPTY, t += 30 * MS);
+        monitor.sample(10, PlannerMonitor.Cause.SERIAL_BUSY, t += 20 * MS);
+        assertEquals(1, monitor.getStarvations());
+        assertEquals(50 * MS, monitor.getStarvedNanos());
+        assertEquals(1, monitor.getCauseEpisodes(PlannerMonitor.Cause.FLOW_CONTROL));
+        assertEquals(30 * MS, monitor.getCauseNanos(PlannerMonitor.Cause.FLOW_CONTROL));
+        assertEquals(20 * MS, monitor.getCauseNanos(PlannerMonitor.Cause.HOST_QUEUE_EMPTY));
+        assertEquals(10 * MS, monitor.getOccupancyNanos()[24]);
+        monitor.endJob();
+        assertFalse(monitor.isJobActive());
+        monitor.sample(28, PlannerMonitor.Cause.HOST_QUEUE_EMPTY, t += 10 * MS);
+        assertEquals(1, monitor.getStarvations());
+    }
+
+    /**
+     * The ring keeps the newest samples, oldest first.
+     */
+    @Test
+    public void testRing() {
+        System.out.println("ring");
+        PlannerMonitor monitor = new PlannerMonitor(28, 4);
+        for (int i = 0; i < 6; i++) {
+            monitor.sample(28 - i, PlannerMonitor.Cause.SERIAL_IDLE, i);
+        }
+        long[] nanos = new long[8];
+        int[] occupancies = new int[8];
+        assertEquals(4, monitor.copySamples(nanos, occupancies));
+        for (int i = 0; i < 4; i++) {
+            assertEquals(i + 2, nanos[i]);
+            assertEquals(i + 2, occupancies[i]);
+        }
+    }
+}
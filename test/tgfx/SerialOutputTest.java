@@ -0,0 +1,131 @@
+/*
+ * Copyright (C) 2014 Synthetos LLC. All Rights reserved.
+ * http://www.synthetos.com
+ */
+package tgfx;
+
+import java.io.ByteArrayOutputStream;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import org.junit.Test;
+import tgfx.tinyg.TinygCommand;
+import tgfx.transport.LoopbackTransport;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Junit test for SerialOutput
+ */
+public class SerialOutputTest {
+
+    /**
+     * A loopback device that records what is written. The first write blocks
+     * until the test lets it go.
+     */
+    private static class RecordingDevice implements LoopbackTransport.Device {
+
+        final ByteArrayOutputStream written = new ByteArrayOutputStream();
+        final CountDownLatch firstWrite = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+
+        @Override
+        public void received(byte[] buf, int offset, int length) {
+            firstWrite.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException ex) {
+                return;
+            }
+            synchronized (written) {
+                written.write(buf, offset, length);
+            }
+        }
+
+        String text() {
+            synchronized (written) {
+                return new String(written.toByteArray());
+            }
+        }
+    }
+
+    /**
+     * A feedhold goes out after the bulk chunk being written, not after the
+     * rest of the batch or the lines queued behind it.
+     */
+    @Test
+    public void testRealtimePreemptsBulk() throws Exception {
+        System.out.println("realtime preempts bulk");
+        RecordingDevice port = new RecordingDevice();
+        LoopbackTransport loopback = new LoopbackTransport();
+        loopback.setDevice(port);
+        loopback.open(null);
+        SerialOutput output = new SerialOutput();
+        output.setTransport(loopback);
+        output.start();
+        String line = "{\"gc\":\"g1f300x10.000y20.000z-1.000\"}\n";
+        TinygCommand batch = TinygCommand.batch();
+        batch.append(TinygCommand.of(line));
+        batch.append(TinygCommand.of(line));
+        output.bulk(batch);
+        assertTrue(port.firstWrite.await(1, TimeUnit.SECONDS));
+        output.realtime(SerialOutput.REALTIME_FEEDHOLD);
+        port.release.countDown();
+        long deadline = System.currentTimeMillis() + 1000;
+        while (port.text().length() < 2 * line.length() + 1 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(1);
+        }
+        String text = port.text();
+        assertEquals(SerialOutput.DEFAULT_BULK_CHUNK, text.indexOf('!'));
+        assertEquals(line + line, text.replace("!", ""));
+        assertEquals(1, output.getPreemptions());
+        assertEquals(1, output.getRealtimeWrites());
+        output.stop();
+    }
+
+    /**
+     * The write listener hears about a batch once all of its bytes are on
+     * the port, with the number of lines in it.
+     */
+    @Test
+    public void testWriteListener() throws Exception {
+        System.out.println("writeListener");
+        final RecordingDevice port = new RecordingDevice();
+        port.release.countDown();
+        LoopbackTransport loopback = new LoopbackTransport();
+        loopback.setDevice(port);
+        loopback.open(null);
+        SerialOutput output = new SerialOutput();
+        output.setTransport(loopback);
+        final int[] heard = new int[2];
+        final CountDownLatch written = new CountDownLatch(1);
+        output.setWriteListener(new SerialOutput.WriteListener() {
+            @Override
+            public void linesWritten(int lines) {
+                heard[0] = lines;
+                heard[1] = port.text().length();
+                written.countDown();
+            }
+        });
+        output.start();
+        String line = "{\"gc\":\"g1f300x10.000y20.000z-1.000\"}\n";
+        TinygCommand batch = TinygCommand.batch();
+        batch.append(TinygCommand.of(line));
+        batch.append(TinygCommand.of(line));
+        output.bulk(batch);
+        assertTrue(written.await(1, TimeUnit.SECONDS));
+        assertEquals(2, heard[0]);
+        assertEquals(2 * line.length(), heard[1]);
+        output.stop();
+    }
+
+    @Test
+    public void testIsRealtimeCommand() {
+        System.out.println("isRealtimeCommand");
+        assertTrue(SerialOutput.isRealtimeCommand("!\n"));
+        assertTrue(SerialOutput.isRealtimeCommand("%"));
+        assertTrue(SerialOutput.isRealtimeCommand("\u0018"));
+        assertFalse(SerialOutput.isRealtimeCommand("!!"));
+        assertFalse(SerialOutput.isRealtimeCommand("{\"gc\":\"?\"}\n"));
+    }
+}
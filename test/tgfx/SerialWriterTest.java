@@ -0,0 +1,73 @@
+/*
+ * Copyright (C) 2014 Synthetos LLC. All Rights reserved.
+ * http://www.synthetos.com
+ */
+package tgfx;
+
+import java.util.concurrent.LinkedBlockingQueue;
+import org.junit.Test;
+import tgfx.metrics.MetricsRegistry;
+import tgfx.metrics.StripedCounter;
+import tgfx.tinyg.TinygCommand;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+/**
+ * Junit test for SerialWriter
+ */
+public class SerialWriterTest {
+
+    private static class Lines implements JobSource {
+
+        private int line = 0;
+        private volatile boolean cancelled = false;
+
+        @Override
+        public TinygCommand next() {
+            return cancelled ? null : TinygCommand.gcode("G1 X" + line++);
+        }
+
+        @Override
+        public void cancel() {
+            cancelled = true;
+        }
+    }
+
+    /**
+     * A job line held back from a batch is dropped with the job, it does
+     * not go out after it.
+     */
+    @Test
+    public void testCancelPending() {
+        System.out.println("cancelPending");
+        StripedCounter dropped = MetricsRegistry.getInstance().counter("writer.droppedLines");
+        SerialWriter writer = new SerialWriter(new LinkedBlockingQueue<TinygCommand>());
+        writer.startJob(new Lines());
+        assertSame(TinygCommand.JOB_START, writer.nextCommand());
+        assertEquals("{\"gc\":\"G1 X0\"}\n", writer.nextCommand().toString());
+        TinygCommand held = writer.nextCommand();
+        assertEquals("{\"gc\":\"G1 X1\"}\n", held.toString());
+        writer.holdBack(held);
+        long before = dropped.get();
+        writer.cancelJob();
+        assertEquals(null, writer.nextCommand());
+        assertEquals(before + 1, dropped.get());
+    }
+
+    /**
+     * A queued line held back stays when the job is cancelled.
+     */
+    @Test
+    public void testKeepQueuedPending() {
+        System.out.println("keepQueuedPending");
+        SerialWriter writer = new SerialWriter(new LinkedBlockingQueue<TinygCommand>());
+        writer.startJob(new Lines());
+        writer.addCommandToBuffer(TinygCommand.gcode("G0 Z5"));
+        assertSame(TinygCommand.JOB_START, writer.nextCommand());
+        TinygCommand held = writer.nextCommand();
+        writer.holdBack(held);
+        writer.cancelJob();
+        assertSame(held, writer.nextCommand());
+        assertEquals(null, writer.nextCommand());
+    }
+}
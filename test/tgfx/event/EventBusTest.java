@@ -0,0 +1,96 @@
+/*
+ * Copyright (C) 2014 Synthetos LLC. All Rights reserved.
+ * http://www.synthetos.com
+ */
+package tgfx.event;
+
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.concurrent.Executor;
+import org.junit.Test;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+/**
+ * Junit test for EventBus
+ */
+public class EventBusTest {
+
+    private static class QueuedExecutor implements Executor {
+
+        final List<Runnable> queued = new ArrayList<>();
+
+        @Override
+        public void execute(Runnable command) {
+            queued.add(command);
+        }
+
+        void runAll() {
+            for (Runnable r : queued) {
+                r.run();
+            }
+            queued.clear();
+        }
+    }
+
+    private static class Recorder implements TinygEventListener {
+
+        final List<TinygEvent> events = new ArrayList<>();
+
+        @Override
+        public void onEvent(TinygEvent event) {
+            events.add(event);
+        }
+    }
+
+    /**
+     * A subscriber that is behind gets the latest buffer update only, and
+     * every console line.
+     */
+    @Test
+    public void testConflation() {
+        System.out.println("conflation");
+        EventBus bus = new EventBus();
+        QueuedExecutor executor = new QueuedExecutor();
+        Recorder recorder = new Recorder();
+        bus.subscribe(recorder, executor);
+        bus.publish(EventType.BUFFER_UPDATE, "10");
+        bus.publish(EventType.TEXTMODE_REPORT, "a");
+        bus.publish(EventType.BUFFER_UPDATE, "20");
+        bus.publish(EventType.TEXTMODE_REPORT, "b");
+        bus.publish(EventType.BUFFER_UPDATE, "30");
+        assertEquals(3, executor.queued.size());
+        executor.runAll();
+        assertEquals(3, recorder.events.size());
+        assertEquals("30", recorder.events.get(0).getArgument());
+        assertEquals("a", recorder.events.get(1).getArgument());
+        assertEquals("b", recorder.events.get(2).getArgument());
+        bus.publish(EventType.BUFFER_UPDATE, "40");
+        executor.runAll();
+        assertEquals("40", recorder.events.get(3).getArgument());
+    }
+
+    /**
+     * Subscribers only get the types they asked for, on their own executor,
+     * and nothing once they unsubscribed.
+     */
+    @Test
+    public void testSubscriptions() {
+        System.out.println("subscriptions");
+        EventBus bus = new EventBus();
+        Recorder all = new Recorder();
+        Recorder status = new Recorder();
+        bus.subscribe(all, EventBus.DIRECT);
+        bus.subscribe(status, EventBus.DIRECT, EnumSet.of(EventType.STATUS_REPORT));
+        bus.publish(EventType.STATUS_REPORT, null);
+        bus.publish(EventType.BUILD_OK, null);
+        assertEquals(2, all.events.size());
+        assertEquals(1, status.events.size());
+        assertSame(TinygEvent.of(EventType.STATUS_REPORT, null), status.events.get(0));
+        bus.unsubscribe(all);
+        bus.publish(EventType.STATUS_REPORT, null);
+        assertEquals(2, all.events.size());
+        assertEquals(2, status.events.size());
+    }
+}
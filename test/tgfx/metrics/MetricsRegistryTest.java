@@ -0,0 +1,105 @@
+/*
+ * Copyright (C) 2014 Synthetos LLC. All Rights reserved.
+ * http://www.synthetos.com
+ */
+package tgfx.metrics;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.util.Map;
+import org.junit.Test;
+import tgfx.utility.LatencyHistogram;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Junit test for MetricsRegistry
+ */
+public class MetricsRegistryTest {
+
+    /**
+     * Counts from several threads all add up.
+     */
+    @Test
+    public void testStripedCounter() throws Exception {
+        System.out.println("striped counter");
+        final StripedCounter counter = new StripedCounter();
+        Thread[] threads = new Thread[4];
+        for (int i = 0; i < threads.length; i++) {
+            threads[i] = new Thread() {
+                @Override
+                public void run() {
+                    for (int j = 0; j < 100000; j++) {
+                        counter.increment();
+                    }
+                }
+            };
+            threads[i].start();
+        }
+        for (Thread t : threads) {
+            t.join();
+        }
+        assertEquals(400000, counter.get());
+    }
+
+    /**
+     * Counters are shared by name, histograms export their percentiles.
+     */
+    @Test
+    public void testSnapshot() {
+        System.out.println("snapshot");
+        MetricsRegistry registry = MetricsRegistry.getInstance();
+        assertSame(registry.counter("test.counter"), registry.counter("test.counter"));
+        registry.counter("test.counter").add(3);
+        registry.gauge("test.gauge", new Gauge() {
+            @Override
+            public long value() {
+                return 42;
+            }
+        });
+        LatencyHistogram histogram = new LatencyHistogram();
+        histogram.record(10);
+        registry.histogram("test.histogram", histogram);
+        Map<String, Long> values = registry.snapshot();
+        assertEquals(Long.valueOf(3), values.get("test.counter"));
+        assertEquals(Long.valueOf(42), values.get("test.gauge"));
+        assertEquals(Long.valueOf(1), values.get("test.histogram.count"));
+        assertEquals(Long.valueOf(10), values.get("test.histogram.p99"));
+        assertEquals(Long.valueOf(10), values.get("test.histogram.max"));
+    }
+
+    /**
+     * The CSV gets a header and a row per report, and rolls when it is too
+     * big.
+     */
+    @Test
+    public void testCsvRolls() throws Exception {
+        System.out.println("csv rolls");
+        File dir = new File(System.getProperty("java.io.tmpdir"), "tgfx-metrics-test-" + System.nanoTime());
+        File current = new File(dir, "tgfx-metrics.csv");
+        File rolled = new File(dir, "tgfx-metrics.1.csv");
+        MetricsRegistry registry = new MetricsRegistry();
+        registry.counter("test.lines").add(7);
+        try {
+            CsvReporter reporter = new CsvReporter(registry, dir, 1000);
+            reporter.setMaxBytes(1);
+            reporter.setMaxFiles(2);
+            reporter.report();
+            reporter.report();
+            reporter.report();
+            assertTrue(current.exists());
+            assertTrue(rolled.exists());
+            assertTrue(!new File(dir, "tgfx-metrics.2.csv").exists());
+            try (BufferedReader br = new BufferedReader(new FileReader(current))) {
+                assertEquals("time,test.lines", br.readLine());
+                assertTrue(br.readLine().matches("[0-9]+,7"));
+            }
+        } finally {
+            current.delete();
+            rolled.delete();
+            dir.delete();
+        }
+    }
+}
@@ -0,0 +1,105 @@
+/*
+ * Copyright (C) 2014 Synthetos LLC. All Rights reserved.
+ * http://www.synthetos.com
+ */
+package tgfx.simulator;
+
+import java.util.concurrent.TimeUnit;
+import org.junit.Test;
+import tgfx.transport.LoopbackTransport;
+import tgfx.transport.Transport;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Junit test for TinygSimulator
+ */
+public class TinygSimulatorTest {
+
+    private static class Collector implements Transport.Listener {
+
+        final StringBuilder text = new StringBuilder();
+
+        @Override
+        public synchronized void bytesReceived(byte[] buf, int offset, int length) {
+            for (int i = offset; i < offset + length; i++) {
+                text.append((char) buf[i]);
+            }
+        }
+
+        synchronized String text() {
+            return text.toString();
+        }
+
+        int count(String s) {
+            String t = text();
+            int n = 0;
+            for (int i = t.indexOf(s); i >= 0; i = t.indexOf(s, i + 1)) {
+                n++;
+            }
+            return n;
+        }
+    }
+
+    private static void write(LoopbackTransport loopback, String s) throws Exception {
+        byte[] bytes = s.getBytes("US-ASCII");
+        loopback.write(bytes, 0, bytes.length);
+    }
+
+    private static void waitFor(Collector c, String s, int count) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 2000;
+        while (c.count(s) < count && System.currentTimeMillis() < deadline) {
+            Thread.sleep(1);
+        }
+    }
+
+    /**
+     * Moves are acked as they go into the planner, the line after a full
+     * planner waits in the RX buffer until a move finishes.
+     */
+    @Test
+    public void testPlannerFullHoldsLines() throws Exception {
+        System.out.println("planner full holds lines");
+        LoopbackTransport loopback = new LoopbackTransport();
+        Collector collector = new Collector();
+        loopback.open(collector);
+        TinygSimulator sim = new TinygSimulator(loopback);
+        sim.setPlannerDepth(2);
+        sim.setStatusInterval(0);
+        sim.setMinSegmentNanos(TimeUnit.MILLISECONDS.toNanos(100));
+        sim.start();
+        write(loopback, "{\"gc\":\"g1f600x0.1\"}\n{\"gc\":\"x0.2\"}\n{\"gc\":\"x0.3\"}\n");
+        waitFor(collector, "\"f\":[1,0,", 2);
+        Thread.sleep(20);
+        assertEquals(2, collector.count("\"f\":[1,0,"));
+        assertTrue(collector.text().contains("{\"qr\":0}"));
+        waitFor(collector, "\"f\":[1,0,", 3);
+        assertEquals(3, collector.count("\"f\":[1,0,"));
+        assertTrue(collector.text().contains("\"f\":[1,0,20,"));
+        assertEquals(3, sim.getMotionLines());
+        assertEquals(0, sim.getRxOverflows());
+        sim.stop();
+    }
+
+    /**
+     * Settings are echoed, si is applied, and sr is answered with a status
+     * report.
+     */
+    @Test
+    public void testSettingsAndStatus() throws Exception {
+        System.out.println("settings and status");
+        LoopbackTransport loopback = new LoopbackTransport();
+        Collector collector = new Collector();
+        loopback.open(collector);
+        TinygSimulator sim = new TinygSimulator(loopback);
+        sim.setQueueReports(0);
+        sim.start();
+        write(loopback, "{\"si\":250}\n{\"sr\":\"\"}\n");
+        waitFor(collector, "\"f\":[1,0,", 2);
+        String text = collector.text();
+        assertTrue(text.startsWith("{\"r\":{\"si\":250},\"f\":[1,0,11,"));
+        assertTrue(text.contains("{\"r\":{\"sr\":{\"line\":0,\"posx\":0.000,"));
+        assertTrue(text.contains("\"stat\":3}}"));
+        sim.stop();
+    }
+}
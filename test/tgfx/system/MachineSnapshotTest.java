@@ -0,0 +1,36 @@
+/*
+ * Copyright (C) 2014 Synthetos LLC. All Rights reserved.
+ * http://www.synthetos.com
+ */
+package tgfx.system;
+
+import org.junit.Test;
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Junit test for MachineSnapshot
+ */
+public class MachineSnapshotTest {
+
+    /**
+     * A snapshot keeps its values while the builder moves on, and values
+     * a report leaves out carry over from the last one.
+     */
+    @Test
+    public void testBuilder() {
+        System.out.println("builder");
+        MachineSnapshot.Builder builder = new MachineSnapshot.Builder();
+        MachineSnapshot first = builder.lineNumber(10).machinePosition(MachineSnapshot.AXIS_X, 12.5)
+                .offset(MachineSnapshot.AXIS_X, 2.5).machineState(5).build();
+        MachineSnapshot second = builder.lineNumber(11).machinePosition(MachineSnapshot.AXIS_X, 13.0).build();
+        assertEquals(10, first.getLineNumber());
+        assertEquals(12.5, first.getMachinePosition(MachineSnapshot.AXIS_X), 0);
+        assertEquals(10.0, first.getWorkPosition(MachineSnapshot.AXIS_X), 0);
+        assertEquals(11, second.getLineNumber());
+        assertEquals(10.5, second.getWorkPosition(MachineSnapshot.AXIS_X), 0);
+        assertEquals(5, second.getMachineState());
+        assertEquals(1, first.getSequence());
+        assertEquals(2, second.getSequence());
+        assertEquals(0, MachineSnapshot.EMPTY.getSequence());
+    }
+}
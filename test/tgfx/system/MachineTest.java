@@ -0,0 +1,35 @@
+/*
+ * Copyright (C) 2014 Synthetos LLC. All Rights reserved.
+ * http://www.synthetos.com
+ */
+package tgfx.system;
+
+import org.junit.Test;
+import tgfx.tinyg.MnemonicManager;
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Junit test for Machine
+ */
+public class MachineTest {
+
+    /**
+     * The first status report is applied in full, even where it carries
+     * the same values as an empty snapshot.
+     */
+    @Test
+    public void testFirstSnapshot() {
+        System.out.println("firstSnapshot");
+        Machine machine = new Machine();
+        machine.m_mode.set(null);
+        machine.applyStatusReportValue(MnemonicManager.MNEMONIC_STATUS_REPORT_MOTION_MODE, 0);
+        machine.applyStatusReportValue(MnemonicManager.MNEMONIC_STATUS_REPORT_COORDNIATE_MODE, 1);
+        machine.applyStatusReportValue(MnemonicManager.MNEMONIC_STATUS_REPORT_UNIT, 1);
+        machine.applyStatusReportValue(MnemonicManager.MNEMONIC_STATUS_REPORT_LINE, 0);
+        machine.publishStatusReport();
+        machine.applySnapshot();
+        assertEquals("traverse", machine.getMotionMode().get());
+        assertEquals("g54", machine.gcm.getCurrentGcodeCoordinateSystemName().get());
+        assertEquals(0, machine.getAxisByName("X").getMachinePosition(), 0);
+    }
+}
@@ -0,0 +1,64 @@
+/*
+ * Copyright (C) 2014 Synthetos LLC. All Rights reserved.
+ * http://www.synthetos.com
+ */
+package tgfx.tinyg;
+
+import org.junit.Test;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Junit test for TinygCommand
+ */
+public class TinygCommandTest {
+
+    @Test
+    public void testEncoding() {
+        System.out.println("encoding");
+        TinygCommand gcode = TinygCommand.gcode("g1f300x10(rough)");
+        assertEquals("{\"gc\":\"g1f300x10(rough)\"}\n", gcode.toString());
+        assertEquals(TinygCommand.Type.GCODE, gcode.getType());
+        assertTrue(gcode.hasComment());
+        gcode.release();
+
+        assertEquals("{\"xam\":1}\n", TinygCommand.setting("x", MnemonicManager.MNEMONIC_AXIS_AXIS_MODE, 1).toString());
+        assertEquals("{\"1mi\":-8}\n", TinygCommand.setting("1", "mi", -8).toString());
+        assertEquals("{\"xvm\":16000}\n", TinygCommand.setting("x", "vm", "16000").toString());
+        assertEquals("{\"2\":{\"ma\":1}}\n", TinygCommand.groupSetting("2", "ma", 1).toString());
+    }
+
+    /**
+     * CommandManager constants are encoded once and shared.
+     */
+    @Test
+    public void testConstants() {
+        System.out.println("constants");
+        TinygCommand sr = TinygCommand.of(CommandManager.CMD_QUERY_STATUS_REPORT);
+        assertSame(sr, TinygCommand.of(CommandManager.CMD_QUERY_STATUS_REPORT));
+        assertEquals(CommandManager.CMD_QUERY_STATUS_REPORT, sr.toString());
+        assertEquals(TinygCommand.Type.QUERY, sr.getType());
+        assertFalse(sr.hasComment());
+        sr.release();
+        assertSame(sr, TinygCommand.of(CommandManager.CMD_QUERY_STATUS_REPORT));
+    }
+
+    /**
+     * A released command is reused with a clean payload.
+     */
+    @Test
+    public void testPool() {
+        System.out.println("pool");
+        TinygCommand first = TinygCommand.gcode("g0x1(comment)");
+        first.release();
+        TinygCommand second = null;
+        for (int i = 0; i < 1000 && second != first; i++) {
+            second = TinygCommand.gcode("g0x2");
+        }
+        assertSame(first, second);
+        assertEquals("{\"gc\":\"g0x2\"}\n", second.toString());
+        assertFalse(second.hasComment());
+    }
+}
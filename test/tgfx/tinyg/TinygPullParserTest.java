@@ -0,0 +1,100 @@
+/*
+ * Copyright (C) 2014 Synthetos LLC. All Rights reserved.
+ * http://www.synthetos.com
+ */
+package tgfx.tinyg;
+
+import java.util.ArrayList;
+import java.util.List;
+import org.json.JSONException;
+import org.junit.Test;
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Junit test for TinygPullParser
+ */
+public class TinygPullParserTest implements TinygPullParser.Handler {
+
+    private final List<String> events = new ArrayList<>();
+
+    private List<String> parse(String line) throws JSONException {
+        events.clear();
+        byte[] buf = line.getBytes();
+        new TinygPullParser().parse(buf, 0, buf.length, this);
+        return events;
+    }
+
+    @Test
+    public void testStatusReportAndFooter() throws JSONException {
+        System.out.println("status report");
+        parse("{\"r\":{\"sr\":{\"line\":12,\"posx\":-1.250,\"vel\":1234.5678,\"zzz\":{\"a\":[1]}}},\"f\":[1,0,10,885]}");
+        assertEquals("[begin null r, begin r sr, num sr line 12.0, num sr posx -1.25, num sr vel 1234.5678, "
+                + "unknown sr zzz, end r sr, end null r, array null f [1.0, 0.0, 10.0, 885.0]]", events.toString());
+    }
+
+    @Test
+    public void testSingleGroupKeys() throws JSONException {
+        System.out.println("single group keys");
+        parse("{\"r\":{\"xvm\":16000,\"1ma\":1},\"f\":[1,0,8,1234]}");
+        assertEquals("[begin null r, begin r x, num x vm 16000.0, end r x, begin r 1, num 1 ma 1.0, end r 1, "
+                + "end null r, array null f [1.0, 0.0, 8.0, 1234.0]]", events.toString());
+    }
+
+    @Test
+    public void testValues() throws JSONException {
+        System.out.println("values");
+        parse("{\"r\":{\"sys\":{\"fb\":380.08,\"mt\":1e3,\"id\":\"1H\",\"ee\":false,\"hp\":null}}}");
+        assertEquals("[begin null r, begin r sys, num sys fb 380.08, num sys mt 1000.0, string sys id 1H, "
+                + "boolean sys ee false, end r sys, end null r]", events.toString());
+        parse("{\"qr\":12}");
+        assertEquals("[num null qr 12.0]", events.toString());
+    }
+
+    @Test(expected = JSONException.class)
+    public void testMalformed() throws JSONException {
+        parse("{\"r\":{\"sr\":");
+    }
+
+    private static String name(int id) {
+        return MnemonicManager.mnemonicName(id);
+    }
+
+    @Override
+    public void beginGroup(int parent, int mnemonic) {
+        events.add("begin " + name(parent) + " " + name(mnemonic));
+    }
+
+    @Override
+    public void endGroup(int parent, int mnemonic) {
+        events.add("end " + name(parent) + " " + name(mnemonic));
+    }
+
+    @Override
+    public void numberValue(int parent, int mnemonic, double value) {
+        events.add("num " + name(parent) + " " + name(mnemonic) + " " + value);
+    }
+
+    @Override
+    public void booleanValue(int parent, int mnemonic, boolean value) {
+        events.add("boolean " + name(parent) + " " + name(mnemonic) + " " + value);
+    }
+
+    @Override
+    public void stringValue(int parent, int mnemonic, byte[] buf, int offset, int length) {
+        events.add("string " + name(parent) + " " + name(mnemonic) + " " + new String(buf, offset, length));
+    }
+
+    @Override
+    public void arrayValue(int parent, int mnemonic, double[] values, int count) {
+        StringBuilder sb = new StringBuilder("[");
+        for (int i = 0; i < count; i++) {
+            sb.append(i == 0 ? "" : ", ").append(values[i]);
+        }
+        events.add("array " + name(parent) + " " + name(mnemonic) + " " + sb.append("]"));
+    }
+
+    @Override
+    public void unknownMnemonic(int parent, byte[] buf, int offset, int length) {
+        events.add("unknown " + name(parent) + " " + new String(buf, offset, length));
+    }
+}
@@ -0,0 +1,71 @@
+/*
+ * Copyright (C) 2014 Synthetos LLC. All Rights reserved.
+ * http://www.synthetos.com
+ */
+package tgfx.transport;
+
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.ServerSocket;
+import java.net.Socket;
+import org.junit.Test;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Junit test for TcpTransport
+ */
+public class TcpTransportTest {
+
+    /**
+     * What we write reaches the other end of the socket, and what it answers
+     * reaches the listener.
+     */
+    @Test
+    public void testRoundTrip() throws Exception {
+        System.out.println("round trip");
+        final ServerSocket server = new ServerSocket(0);
+        Thread echo = new Thread() {
+            @Override
+            public void run() {
+                try (Socket s = server.accept()) {
+                    InputStream in = s.getInputStream();
+                    OutputStream out = s.getOutputStream();
+                    byte[] buf = new byte[256];
+                    int n;
+                    while ((n = in.read(buf)) > 0) {
+                        out.write(buf, 0, n);
+                    }
+                } catch (Exception ex) {
+                }
+            }
+        };
+        echo.start();
+        final ByteArrayOutputStream received = new ByteArrayOutputStream();
+        TcpTransport transport = new TcpTransport("127.0.0.1", server.getLocalPort());
+        transport.open(new Transport.Listener() {
+            @Override
+            public void bytesReceived(byte[] buf, int offset, int length) {
+                synchronized (received) {
+                    received.write(buf, offset, length);
+                }
+            }
+        });
+        assertTrue(transport.isOpen());
+        byte[] line = "xx{\"sr\":\"\"}\n".getBytes();
+        transport.write(line, 2, line.length - 2);
+        long deadline = System.currentTimeMillis() + 2000;
+        while (received.size() < line.length - 2 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(1);
+        }
+        synchronized (received) {
+            assertEquals("{\"sr\":\"\"}\n", new String(received.toByteArray()));
+        }
+        transport.close();
+        assertFalse(transport.isOpen());
+        echo.join(2000);
+        server.close();
+    }
+}
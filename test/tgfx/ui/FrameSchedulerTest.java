@@ -0,0 +1,52 @@
+/*
+ * Copyright (C) 2014 Synthetos LLC. All Rights reserved.
+ * http://www.synthetos.com
+ */
+package tgfx.ui;
+
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.Test;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Junit test for FrameScheduler
+ */
+public class FrameSchedulerTest {
+
+    /**
+     * A region marked many times between pulses is painted once, regions
+     * nobody marked are not painted at all.
+     */
+    @Test
+    public void testCoalescing() {
+        System.out.println("coalescing");
+        FrameScheduler frames = new FrameScheduler();
+        final List<String> painted = new ArrayList<>();
+        int preview = frames.register("preview", recorder(painted, "preview"));
+        frames.register("axis X", recorder(painted, "axis X"));
+        frames.register("axis Y", recorder(painted, "axis Y"));
+        for (int i = 0; i < 50; i++) {
+            frames.markDirty(preview);
+        }
+        assertTrue(frames.markDirty("axis Y"));
+        assertFalse(frames.markDirty("axis Q"));
+        assertEquals(2, frames.paintDirty());
+        assertEquals("preview", painted.get(0));
+        assertEquals("axis Y", painted.get(1));
+        assertFalse(frames.isDirty(preview));
+        assertEquals(0, frames.paintDirty());
+        assertEquals(1, frames.getFrames());
+    }
+
+    private static Runnable recorder(final List<String> painted, final String name) {
+        return new Runnable() {
+            @Override
+            public void run() {
+                painted.add(name);
+            }
+        };
+    }
+}
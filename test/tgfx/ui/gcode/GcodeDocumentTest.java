@@ -0,0 +1,73 @@
+/*
+ * Copyright (C) 2014 Synthetos LLC. All Rights reserved.
+ * http://www.synthetos.com
+ */
+package tgfx.ui.gcode;
+
+import java.io.IOException;
+import org.junit.Test;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+/**
+ * Junit test for GcodeDocument
+ */
+public class GcodeDocumentTest {
+
+    /**
+     * Blank lines are left out, line ends of either kind are dropped and
+     * lines without an N number get one.
+     */
+    @Test
+    public void testLines() throws IOException {
+        System.out.println("lines");
+        try (GcodeDocument doc = GcodeDocument.open(GcodeFiles.write("G21\r\n\r\nN5 G0 X1\n\nG1 Y2 F100"))) {
+            assertEquals(3, doc.getLineCount());
+            assertEquals(-1, doc.getBadLine());
+            assertEquals("N0 G21", doc.getLine(0));
+            assertEquals("N5 G0 X1", doc.getLine(1));
+            assertEquals("G1 Y2 F100", doc.getRawLine(2));
+            assertEquals("N2 G1 Y2 F100", doc.getLine(2));
+            assertEquals(12, doc.getIndexBytes());
+        }
+    }
+
+    /**
+     * Indexing stops at a line with a byte TinyG would take as a command.
+     */
+    @Test
+    public void testBadLine() throws IOException {
+        System.out.println("badLine");
+        try (GcodeDocument doc = GcodeDocument.open(GcodeFiles.write("G21\nG0 X1\nG0 X2 ~\nG0 X3\n"))) {
+            assertEquals(2, doc.getBadLine());
+            assertEquals(2, doc.getLineCount());
+        }
+    }
+
+    /**
+     * The listener hears about every chunk of lines and can stop indexing,
+     * what was indexed by then can be read.
+     */
+    @Test
+    public void testListener() throws IOException {
+        System.out.println("listener");
+        StringBuilder gcode = new StringBuilder();
+        for (int i = 0; i < 3 * GcodeDocument.NOTIFY_LINES; i++) {
+            gcode.append("G1 X").append(i).append('\n');
+        }
+        try (GcodeDocument doc = GcodeDocument.map(GcodeFiles.write(gcode.toString()))) {
+            final int[] calls = new int[1];
+            boolean complete = doc.index(new GcodeDocument.IndexListener() {
+                @Override
+                public boolean linesIndexed(int lineCount, long position) {
+                    calls[0]++;
+                    return lineCount < 2 * GcodeDocument.NOTIFY_LINES;
+                }
+            });
+            assertFalse(complete);
+            assertEquals(2, calls[0]);
+            assertEquals(2 * GcodeDocument.NOTIFY_LINES, doc.getLineCount());
+            assertEquals("N5 G1 X5", doc.getLine(5));
+        }
+    }
+}
@@ -0,0 +1,37 @@
+/*
+ * Copyright (C) 2014 Synthetos LLC. All Rights reserved.
+ * http://www.synthetos.com
+ */
+package tgfx.ui.gcode;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+/**
+ * Temporary G-code files for the tests of this package.
+ */
+final class GcodeFiles {
+
+    private GcodeFiles() {
+    }
+
+    /**
+     * @return a file holding contents, deleted when the VM exits
+     */
+    static File write(String contents) throws IOException {
+        File file = File.createTempFile("tgfx", ".gcode");
+        file.deleteOnExit();
+        try (FileOutputStream out = new FileOutputStream(file)) {
+            out.write(contents.getBytes("US-ASCII"));
+        }
+        return file;
+    }
+
+    /**
+     * @return contents written to a file and opened
+     */
+    static GcodeDocument open(String contents) throws IOException {
+        return GcodeDocument.open(write(contents));
+    }
+}
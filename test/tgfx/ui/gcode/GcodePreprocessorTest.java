@@ -0,0 +1,67 @@
+/*
+ * Copyright (C) 2014 Synthetos LLC. All Rights reserved.
+ * http://www.synthetos.com
+ */
+package tgfx.ui.gcode;
+
+import java.io.IOException;
+import java.util.List;
+import org.junit.Test;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Junit test for GcodePreprocessor
+ */
+public class GcodePreprocessorTest {
+
+    /**
+     * Lines come out numbered and wrapped the way the Gcode tab sent them,
+     * comments are marked and have no payload.
+     */
+    @Test
+    public void testEncode() throws IOException {
+        System.out.println("encode");
+        GcodePreprocessor preprocessor = new GcodePreprocessor(2);
+        try (GcodeDocument doc = GcodeFiles.open("G21\r\n\r\n(part 1)\nN7 G0 X1\nG1 Y2 F100")) {
+            List<EncodedGcode> chunks = preprocessor.encode(doc, 0, doc.getLineCount());
+            assertEquals(1, chunks.size());
+            EncodedGcode chunk = chunks.get(0);
+            assertEquals(4, chunk.getLineCount());
+            assertEquals("{\"gc\":\"N0 G21\"}\n", chunk.getPayload(0));
+            assertTrue(chunk.isComment(1));
+            assertEquals(0, chunk.getPayloadLength(1));
+            assertFalse(chunk.isComment(2));
+            assertEquals("{\"gc\":\"N7 G0 X1\"}\n", chunk.getPayload(2));
+            assertEquals("{\"gc\":\"N3 G1 Y2 F100\"}\n", chunk.getPayload(3));
+        }
+    }
+
+    /**
+     * A range is split into whole chunks in line order, every line encoded
+     * like a range of its own would be.
+     */
+    @Test
+    public void testChunks() throws IOException {
+        System.out.println("chunks");
+        GcodePreprocessor preprocessor = new GcodePreprocessor(4);
+        int lines = 5 * GcodePreprocessor.CHUNK_LINES + 10;
+        StringBuilder gcode = new StringBuilder();
+        for (int i = 0; i < lines; i++) {
+            gcode.append("G1 X").append(i).append("\r\n");
+        }
+        try (GcodeDocument doc = GcodeFiles.open(gcode.toString())) {
+            List<EncodedGcode> chunks = preprocessor.encode(doc, 10, lines);
+            assertEquals(5, chunks.size());
+            int line = 10;
+            for (EncodedGcode chunk : chunks) {
+                assertEquals(line, chunk.getFirstLine());
+                for (int i = 0; i < chunk.getLineCount(); i++, line++) {
+                    assertEquals("{\"gc\":\"N" + line + " G1 X" + line + "\"}\n", chunk.getPayload(i));
+                }
+            }
+            assertEquals(lines, line);
+        }
+    }
+}
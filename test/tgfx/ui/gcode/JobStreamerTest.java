@@ -0,0 +1,80 @@
+/*
+ * Copyright (C) 2014 Synthetos LLC. All Rights reserved.
+ * http://www.synthetos.com
+ */
+package tgfx.ui.gcode;
+
+import java.io.IOException;
+import java.util.Arrays;
+import org.junit.Test;
+import tgfx.tinyg.TinygCommand;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+/**
+ * Junit test for JobStreamer
+ */
+public class JobStreamerTest {
+
+    private static GcodeDocument open(int lines) throws IOException {
+        StringBuilder gcode = new StringBuilder();
+        for (int i = 0; i < lines; i++) {
+            gcode.append(i == 1 ? "(roughing)\n" : "G1 X" + i + "\n");
+        }
+        return GcodeFiles.open(gcode.toString());
+    }
+
+    /**
+     * Every line comes out once and in order across runs, then FILE_DONE,
+     * then nothing.
+     */
+    @Test
+    public void testStream() throws IOException {
+        System.out.println("stream");
+        int lines = 2 * JobStreamer.STREAM_LINES + 3;
+        try (GcodeDocument doc = open(lines)) {
+            JobStreamer streamer = new JobStreamer(doc, new GcodePreprocessor(2));
+            for (int i = 0; i < lines; i++) {
+                TinygCommand cmd = streamer.next();
+                if (i == 1) {
+                    assertSame(TinygCommand.Type.COMMENT, cmd.getType());
+                    assertEquals("N1 (roughing)", cmd.toString());
+                } else {
+                    assertEquals("{\"gc\":\"N" + i + " G1 X" + i + "\"}\n", cmd.toString());
+                }
+            }
+            assertSame(TinygCommand.FILE_DONE, streamer.next());
+            assertEquals(null, streamer.next());
+        }
+    }
+
+    /**
+     * A job started at a line sends its preamble, then the file from there.
+     */
+    @Test
+    public void testResume() throws IOException {
+        System.out.println("resume");
+        try (GcodeDocument doc = open(10)) {
+            JobStreamer streamer = new JobStreamer(doc, new GcodePreprocessor(2), 8, Arrays.asList("G90", "G0 X7"));
+            assertEquals("{\"gc\":\"G90\"}\n", streamer.next().toString());
+            assertEquals("{\"gc\":\"G0 X7\"}\n", streamer.next().toString());
+            assertEquals("{\"gc\":\"N8 G1 X8\"}\n", streamer.next().toString());
+            assertEquals("{\"gc\":\"N9 G1 X9\"}\n", streamer.next().toString());
+            assertSame(TinygCommand.FILE_DONE, streamer.next());
+        }
+    }
+
+    /**
+     * Nothing more comes out once the job is cancelled.
+     */
+    @Test
+    public void testCancel() throws IOException {
+        System.out.println("cancel");
+        try (GcodeDocument doc = open(JobStreamer.STREAM_LINES * 3)) {
+            JobStreamer streamer = new JobStreamer(doc, new GcodePreprocessor(2));
+            streamer.next();
+            streamer.cancel();
+            assertEquals(null, streamer.next());
+        }
+    }
+}
@@ -0,0 +1,100 @@
+/*
+ * Copyright (C) 2014 Synthetos LLC. All Rights reserved.
+ * http://www.synthetos.com
+ */
+package tgfx.ui.gcode;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+import org.junit.Test;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Junit test for ModalCheckpoints
+ */
+public class ModalCheckpointsTest {
+
+    /**
+     * The state at any line is the same from a checkpoint as from a replay
+     * of every line before it.
+     */
+    @Test
+    public void testStateAt() throws IOException {
+        System.out.println("stateAt");
+        StringBuilder gcode = new StringBuilder("G21 G17 G90\nG55\nM3 S12000\nG0 Z5\n");
+        for (int i = 0; i < 50; i++) {
+            gcode.append("G1 X").append(i).append(" Y-").append(i).append(".5 F").append(100 + i).append('\n');
+            gcode.append(i % 7 == 0 ? "G91\nZ-0.25 (step down)\nG90\n" : "Z-1\n");
+        }
+        try (GcodeDocument doc = GcodeFiles.open(gcode.toString())) {
+            ModalCheckpoints checkpoints = ModalCheckpoints.build(doc, 16, null);
+            assertEquals((doc.getLineCount() + 15) / 16, checkpoints.getCount());
+            ModalState replayed = new ModalState();
+            for (int line = 0; line <= doc.getLineCount(); line++) {
+                assertEquals("line " + line, replayed.preamble(), checkpoints.stateAt(doc, line).preamble());
+                if (line < doc.getLineCount()) {
+                    replayed.apply(doc, line);
+                }
+            }
+        }
+    }
+
+    /**
+     * G28.1, G28.2 and G28.3 lose the position like G28 does, whatever
+     * axes they name.
+     */
+    @Test
+    public void testHomingLosesPosition() throws IOException {
+        System.out.println("homingLosesPosition");
+        for (String homing : new String[]{"G28 X0", "G28.1 X0", "G28.2 X0", "G28.3 X0"}) {
+            try (GcodeDocument doc = GcodeFiles.open("G0 X1 Y2 Z3\n" + homing + "\n")) {
+                ModalCheckpoints checkpoints = ModalCheckpoints.build(doc, ModalCheckpoints.DEFAULT_INTERVAL, null);
+                ModalState state = checkpoints.stateAt(doc, 2);
+                for (int axis = 0; axis < 3; axis++) {
+                    assertTrue(homing, Double.isNaN(state.getPosition(axis)));
+                }
+                assertEquals(homing, Arrays.asList("G90", "G53 G0 Z0"), state.preamble());
+            }
+        }
+    }
+
+    /**
+     * The preamble restores what the file set, the distance mode last.
+     */
+    @Test
+    public void testPreamble() throws IOException {
+        System.out.println("preamble");
+        try (GcodeDocument doc = GcodeFiles.open("G20 G18 G54\nM4 S900\nG0 X1 Y2 Z0.5\nG91\nG1 X0.25 Z-.1 F30.5\nX1\n")) {
+            ModalCheckpoints checkpoints = ModalCheckpoints.build(doc, ModalCheckpoints.DEFAULT_INTERVAL, null);
+            ModalState state = checkpoints.stateAt(doc, 5);
+            assertEquals(0, state.getUnits());
+            assertEquals(1, state.getDistanceMode());
+            assertEquals(1.25, state.getPosition(0), 1e-9);
+            assertEquals(Arrays.asList("G20 G18 G54 G90", "G53 G0 Z0", "G0 X1.25 Y2", "M4 S900",
+                    "G1 Z0.4 F30.5", "G91"), state.preamble());
+            assertEquals(Arrays.asList("G90", "G53 G0 Z0"), checkpoints.stateAt(doc, 0).preamble());
+        }
+    }
+
+    /**
+     * The tool retracts before anything moves sideways, the spindle starts
+     * over the spot and Z plunges last.
+     */
+    @Test
+    public void testPreambleOrder() throws IOException {
+        System.out.println("preambleOrder");
+        try (GcodeDocument doc = GcodeFiles.open("G21\nG0 Z-2 A90\nM3 S10000\nG1 X10 Y-4 F200\n")) {
+            ModalCheckpoints checkpoints = ModalCheckpoints.build(doc, ModalCheckpoints.DEFAULT_INTERVAL, null);
+            List<String> preamble = checkpoints.stateAt(doc, 4).preamble(5);
+            assertEquals(Arrays.asList("G21 G90", "G0 Z5", "G0 X10 Y-4 A90", "M3 S10000",
+                    "G1 Z-2 F200"), preamble);
+            int retract = preamble.indexOf("G0 Z5");
+            int rapid = preamble.indexOf("G0 X10 Y-4 A90");
+            int spindle = preamble.indexOf("M3 S10000");
+            int plunge = preamble.indexOf("G1 Z-2 F200");
+            assertTrue(retract < rapid && rapid < spindle && spindle < plunge);
+        }
+    }
+}
@@ -0,0 +1,52 @@
+/*
+ * Copyright (C) 2014 Synthetos LLC. All Rights reserved.
+ * http://www.synthetos.com
+ */
+package tgfx.utility;
+
+import org.junit.Test;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Junit test for LatencyHistogram
+ */
+public class LatencyHistogramTest {
+
+    /**
+     * Every bucket holds what index() puts in it.
+     */
+    @Test
+    public void testBuckets() {
+        System.out.println("buckets");
+        long[] values = {0, 1, 63, 64, 65, 127, 128, 1000, 123456789, Long.MAX_VALUE};
+        for (long value : values) {
+            int index = LatencyHistogram.index(value);
+            assertTrue(value <= LatencyHistogram.highestValue(index));
+            assertTrue(index == 0 || value > LatencyHistogram.highestValue(index - 1));
+        }
+    }
+
+    /**
+     * Percentiles of 1..10000 are within the 3% the buckets promise.
+     */
+    @Test
+    public void testPercentiles() {
+        System.out.println("percentiles");
+        LatencyHistogram histogram = new LatencyHistogram();
+        assertEquals(0, histogram.getValueAtPercentile(50));
+        for (int i = 1; i <= 10000; i++) {
+            histogram.record(i);
+        }
+        assertEquals(10000, histogram.getCount());
+        assertEquals(10000, histogram.getMax());
+        double[][] expected = {{50, 5000}, {99, 9900}, {99.9, 9990}, {100, 10000}};
+        for (double[] e : expected) {
+            long value = histogram.getValueAtPercentile(e[0]);
+            assertTrue(value >= e[1] && value <= e[1] * 1.04);
+        }
+        histogram.reset();
+        assertEquals(0, histogram.getCount());
+        assertEquals(0, histogram.getMax());
+    }
+}
@@ -0,0 +1,84 @@
+/*
+ * Copyright (C) 2014 Synthetos LLC. All Rights reserved.
+ * http://www.synthetos.com
+ */
+package tgfx.utility;
+
+import org.junit.Test;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Junit test for SpscLineRing
+ */
+public class SpscLineRingTest {
+
+    private static String takeLine(SpscLineRing ring) throws InterruptedException {
+        int length = ring.take();
+        String line = new String(ring.buffer(), 0, length);
+        ring.release();
+        return line;
+    }
+
+    /**
+     * A full ring drops the line and counts it instead of throwing.
+     */
+    @Test
+    public void testOverflow() throws InterruptedException {
+        System.out.println("overflow");
+        SpscLineRing ring = new SpscLineRing(4, 8, SpscLineRing.WaitStrategy.YIELD);
+        for (int i = 0; i < 4; i++) {
+            byte[] line = ("line" + i).getBytes();
+            assertTrue(ring.offer(line, 0, line.length));
+        }
+        byte[] extra = "extra".getBytes();
+        assertFalse(ring.offer(extra, 0, extra.length, 1000000L));
+        assertEquals(1, ring.getOverflowCount());
+        assertEquals(1, ring.getBackpressureCount());
+        assertEquals(4, ring.getHighWaterMark());
+        assertEquals("line0", takeLine(ring));
+        assertTrue(ring.offer(extra, 0, extra.length));
+        assertEquals(4, ring.size());
+    }
+
+    /**
+     * Lines longer than the slot size grow the slot.
+     */
+    @Test
+    public void testLongLine() throws InterruptedException {
+        System.out.println("long line");
+        SpscLineRing ring = new SpscLineRing(2, 4, SpscLineRing.WaitStrategy.SPIN);
+        byte[] line = "{\"r\":{\"sr\":{\"posx\":1.000}},\"f\":[1,0,10,885]}".getBytes();
+        assertTrue(ring.offer(line, 0, line.length));
+        assertEquals(new String(line), takeLine(ring));
+    }
+
+    /**
+     * Every line arrives once and in order for each wait strategy.
+     */
+    @Test
+    public void testHandOff() throws InterruptedException {
+        for (final SpscLineRing.WaitStrategy strategy : SpscLineRing.WaitStrategy.values()) {
+            System.out.println("hand off " + strategy);
+            final SpscLineRing ring = new SpscLineRing(16, 16, strategy);
+            final int count = 100000;
+            Thread producer = new Thread() {
+                @Override
+                public void run() {
+                    for (int i = 0; i < count; i++) {
+                        byte[] line = Integer.toString(i).getBytes();
+                        ring.offer(line, 0, line.length, Long.MAX_VALUE / 2);
+                    }
+                }
+            };
+            producer.start();
+            for (int i = 0; i < count; i++) {
+                assertEquals(Integer.toString(i), takeLine(ring));
+            }
+            producer.join();
+            assertEquals(count, ring.getOfferedCount());
+            assertEquals(0, ring.getOverflowCount());
+        }
+    }
+}